@@ -0,0 +1,89 @@
+package com.swinglayoutbuilder.benchmark;
+
+import com.swinglayoutbuilder.FormLayoutBuilder;
+import com.swinglayoutbuilder.SwingLayoutBuilder;
+import com.swinglayoutbuilder.mig.MigLayoutBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building of forms with the builders. Container and fields are created before every invocation, so only the builders and
+ * the layouts are measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BuilderBenchmark {
+    @Param({"10", "100", "1000"})
+    int rowCount;
+
+    private JPanel panel;
+    private Component[] fields;
+
+    @Setup(Level.Invocation)
+    public void createComponents() {
+        panel = new JPanel();
+        fields = new Component[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            fields[i] = new JTextField("field " + i);
+        }
+    }
+
+    /**
+     * Rule layout form from {@link com.swinglayoutbuilder.RuleLayoutBuilder#templateForm}, with calculation of preferred size and
+     * layout of the form
+     */
+    @Benchmark
+    public Dimension templateForm() {
+        new SwingLayoutBuilder(panel).ruleLayout()
+                .templateForm(5, (template, builder) -> {
+                    for (int i = 0; i < rowCount; i++) {
+                        template.addRow("label " + i, fields[i]);
+                    }
+                })
+                .finish();
+        Dimension size = panel.getPreferredSize();
+        panel.setSize(size);
+        panel.doLayout();
+        return size;
+    }
+
+    @Benchmark
+    public Container formLayoutFinish() {
+        FormLayoutBuilder builder = new SwingLayoutBuilder(panel).formLayout();
+        for (int i = 0; i < rowCount; i++) {
+            builder.add("label " + i, fields[i]);
+        }
+        return builder.finish();
+    }
+
+    @Benchmark
+    public Container migLayoutConstraints() {
+        MigLayoutBuilder builder = new SwingLayoutBuilder(panel).migLayout().layoutFillX().layoutGapY(5);
+        for (int i = 0; i < rowCount; i++) {
+            builder.label("label " + i).alignX("right")
+                    .add(fields[i]).growX().width(100).spanX(2).wrap();
+        }
+        return builder.finish();
+    }
+}
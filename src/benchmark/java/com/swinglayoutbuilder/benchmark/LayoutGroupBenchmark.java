@@ -0,0 +1,72 @@
+package com.swinglayoutbuilder.benchmark;
+
+import com.swinglayoutbuilder.rulelayout.ComponentRect;
+import com.swinglayoutbuilder.rulelayout.ComponentWrapper;
+import com.swinglayoutbuilder.rulelayout.Edge;
+import com.swinglayoutbuilder.rulelayout.HeadlessRuleLayout;
+import com.swinglayoutbuilder.rulelayout.LayoutGroup;
+import com.swinglayoutbuilder.rulelayout.LayoutNode;
+import com.swinglayoutbuilder.rulelayout.Rule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds of a group of laid out nodes, and layout of the group centered in the parent, where the group is moved as a whole
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LayoutGroupBenchmark {
+    @Param({"10", "100", "1000"})
+    int componentCount;
+
+    private LayoutNode parent;
+    private HeadlessRuleLayout layout;
+    private LayoutGroup<LayoutNode> group;
+    private LayoutNode last;
+    private boolean toggle;
+
+    @Setup
+    public void setup() {
+        parent = new LayoutNode("parent");
+        layout = new HeadlessRuleLayout(parent);
+        RuleLayoutEngineBenchmark.createGrid(layout, componentCount, false);
+        group = layout.createGroup();
+        for (LayoutNode node : parent.getChildren()) {
+            group.addComponent(new ComponentWrapper<>(node));
+        }
+        ComponentWrapper<LayoutNode> groupWrapper = new ComponentWrapper<>(group);
+        layout.addRule(new Rule(Edge.HOR_CENTER, parent, 0, Edge.HOR_CENTER, groupWrapper));
+        layout.addRule(new Rule(Edge.VER_CENTER, parent, 0, Edge.VER_CENTER, groupWrapper));
+        last = parent.getChildren().get(componentCount - 1);
+        parent.setSize(2000, 1000);
+        layout.layout();
+    }
+
+    @Benchmark
+    public ComponentRect bounds() {
+        return group.getRect();
+    }
+
+    @Benchmark
+    public int resize() {
+        toggle = !toggle;
+        parent.setSize(toggle ? 2001 : 2000, toggle ? 1001 : 1000);
+        layout.layout();
+        return last.getX();
+    }
+}
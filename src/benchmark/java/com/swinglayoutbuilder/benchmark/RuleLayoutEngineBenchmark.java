@@ -0,0 +1,106 @@
+package com.swinglayoutbuilder.benchmark;
+
+import com.swinglayoutbuilder.rulelayout.Edge;
+import com.swinglayoutbuilder.rulelayout.HeadlessRuleLayout;
+import com.swinglayoutbuilder.rulelayout.LayoutNode;
+import com.swinglayoutbuilder.rulelayout.Rule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preferred size and layout passes of the rule layout engine for a grid of nodes: rows of {@link #COLUMNS} nodes placed each
+ * after other and aligned by top or baseline, rows placed one under other, the last node of every row is stretched by the
+ * parent. Every invocation changes either the first node or the size of the parent, so every pass is calculated, not taken
+ * from cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RuleLayoutEngineBenchmark {
+    static final int COLUMNS = 10;
+
+    @Param({"10", "100", "1000", "10000"})
+    int componentCount;
+
+    private LayoutNode parent;
+    private HeadlessRuleLayout layout;
+    private LayoutNode first;
+    private LayoutNode last;
+    private boolean toggle;
+
+    @Setup
+    public void setup() {
+        parent = new LayoutNode("parent");
+        layout = new HeadlessRuleLayout(parent);
+        createGrid(layout, componentCount, true);
+        first = parent.getChildren().get(0);
+        last = parent.getChildren().get(componentCount - 1);
+        parent.setSize(2000, 1000);
+        layout.layout();
+    }
+
+    static void createGrid(HeadlessRuleLayout layout, int componentCount, boolean stretchLastColumn) {
+        LayoutNode parent = layout.getParent();
+        LayoutNode[] nodes = new LayoutNode[componentCount];
+        for (int i = 0; i < componentCount; i++) {
+            nodes[i] = new LayoutNode("node" + i, 40 + i % 7, 20 + i % 3)
+                    .setBaseline(14 + i % 3, Component.BaselineResizeBehavior.CONSTANT_ASCENT);
+            parent.add(nodes[i]);
+        }
+        for (int i = 0; i < componentCount; i++) {
+            int column = i % COLUMNS;
+            if (column != 0) {
+                layout.addRule(new Rule(Edge.RIGHT, nodes[i - 1], 5, Edge.LEFT, nodes[i]));
+                Edge verticalEdge = column % 2 == 0 ? Edge.TOP : Edge.BASELINE;
+                layout.addRule(new Rule(verticalEdge, nodes[i - 1], 0, verticalEdge, nodes[i]));
+            } else if (i != 0) {
+                layout.addRule(new Rule(Edge.BOTTOM, nodes[i - COLUMNS], 5, Edge.TOP, nodes[i]));
+            }
+            if (stretchLastColumn && (column == COLUMNS - 1 || i == componentCount - 1)) {
+                layout.setComponentEdgeAnchoredToParentMovingEdge(nodes[i], false, false, true, false, 1, 1, 1, 1);
+            }
+        }
+    }
+
+    private void changeFirstNode() {
+        toggle = !toggle;
+        first.setPreferredSize(toggle ? 41 : 40, 20);
+    }
+
+    @Benchmark
+    public Dimension preferredSize() {
+        changeFirstNode();
+        return layout.getPreferredSize();
+    }
+
+    @Benchmark
+    public int layout() {
+        changeFirstNode();
+        layout.layout();
+        return last.getX();
+    }
+
+    @Benchmark
+    public int resize() {
+        toggle = !toggle;
+        parent.setSize(toggle ? 2001 : 2000, 1000);
+        layout.layout();
+        return last.getWidth();
+    }
+}
@@ -2,9 +2,12 @@ package com.swinglayoutbuilder;
 
 import com.swinglayoutbuilder.rulelayout.ComponentWrapper;
 import com.swinglayoutbuilder.rulelayout.Edge;
+import com.swinglayoutbuilder.rulelayout.LayoutForm;
 import com.swinglayoutbuilder.rulelayout.LayoutGroup;
+import com.swinglayoutbuilder.rulelayout.LayoutTraceRecorder;
 import com.swinglayoutbuilder.rulelayout.Rule;
 import com.swinglayoutbuilder.rulelayout.RuleLayout;
+import com.swinglayoutbuilder.rulelayout.RuleLayoutBlueprint;
 
 import javax.swing.JLabel;
 import java.awt.Component;
@@ -12,8 +15,10 @@ import java.awt.Container;
 import java.awt.Dimension;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 @SuppressWarnings({"unused", "UnusedReturnValue"})
 public class RuleLayoutBuilder<T> extends AbstractBuilder<RuleLayoutBuilder<T>> {
@@ -26,6 +31,7 @@ public class RuleLayoutBuilder<T> extends AbstractBuilder<RuleLayoutBuilder<T>>
     private ComponentWrapper<T> anchor2Component;
     private ComponentWrapper<T> anchor3Component;
     private LayoutGroup<T> currentGroup;
+    private int templateFormCount;
 
     protected RuleLayoutBuilder(Container container) {
         super(container);
@@ -95,6 +101,54 @@ public class RuleLayoutBuilder<T> extends AbstractBuilder<RuleLayoutBuilder<T>>
         return this;
     }
 
+    /**
+     * Handler that is notified about rules that depend on each other cyclically. Such rules are executed in the order they were added.
+     * Name of the parameter type is qualified, because simple name Consumer is {@link AbstractBuilder.Consumer} in builders
+     */
+    public RuleLayoutBuilder<T> ruleCycleHandler(java.util.function.Consumer<List<Rule>> ruleCycleHandler) {
+        layout.setRuleCycleHandler(ruleCycleHandler);
+        return this;
+    }
+
+    /**
+     * Remove overwritten, duplicate and no-op rules before the first calculation, enabled by default
+     */
+    public RuleLayoutBuilder<T> ruleOptimization(boolean ruleOptimization) {
+        layout.setRuleOptimization(ruleOptimization);
+        return this;
+    }
+
+    /**
+     * Registers layout metrics of the container under the name, so they can be monitored through JMX
+     */
+    public RuleLayoutBuilder<T> metricsName(String containerName) {
+        layout.registerMetrics(containerName);
+        return this;
+    }
+
+    /**
+     * Records rules and passes of the layout, so the layout can be replayed offline by LayoutTraceReplayer
+     */
+    public RuleLayoutBuilder<T> traceRecorder(LayoutTraceRecorder traceRecorder) {
+        layout.setTraceRecorder(traceRecorder);
+        return this;
+    }
+
+    /**
+     * Blueprint of the built layout with ids of children, see {@link RuleLayout#createBlueprint(Map)}. Child with several ids
+     * gets the first of them in alphabetical order, so the ids do not depend on order of builder calls
+     */
+    public RuleLayoutBlueprint createBlueprint() {
+        Map<Component, String> childIds = new IdentityHashMap<>();
+        for (Map.Entry<String, ComponentWrapper<T>> entry : new TreeMap<>(id2ComponentMap).entrySet()) {
+            Object component = entry.getValue().getComponent();
+            if (component instanceof Component) {
+                childIds.putIfAbsent((Component) component, entry.getKey());
+            }
+        }
+        return layout.createBlueprint(childIds);
+    }
+
     public RuleLayoutBuilder<T> id(String id) {
         checkCurrentComponent();
         if (id2ComponentMap.containsKey(id)) {
@@ -450,10 +504,14 @@ public class RuleLayoutBuilder<T> extends AbstractBuilder<RuleLayoutBuilder<T>>
         int rowsGap = 10;
         int rowIndex = 0;
         private boolean alignLabelsLeft = true;
+        //ids of groups of the first form are "formGroup", "formLabelsGroup", "formFieldsGroup", "formRowGroup0"..., next forms have number after "form"
+        private final String idPrefix;
 
         public FormTemplate(RuleLayoutBuilder<T> layoutBuilder, int labelToComponentDistance) {
             this.labelToComponentDistance = labelToComponentDistance;
             this.layoutBuilder = layoutBuilder;
+            idPrefix = layoutBuilder.templateFormCount == 0 ? "form" : "form" + layoutBuilder.templateFormCount;
+            layoutBuilder.templateFormCount++;
         }
 
         public void setLabelToComponentDistance(int labelToComponentDistance) {
@@ -466,7 +524,7 @@ public class RuleLayoutBuilder<T> extends AbstractBuilder<RuleLayoutBuilder<T>>
 
         private String getFormGroupId() {
             if (formGroupId == null) {
-                formGroupId = "FormGroup" + Math.random() * 99999;
+                formGroupId = idPrefix + "Group";
             }
             if (!layoutBuilder.id2ComponentMap.containsKey(formGroupId)) {
                 layoutBuilder.createGroup(formGroupId);
@@ -483,7 +541,7 @@ public class RuleLayoutBuilder<T> extends AbstractBuilder<RuleLayoutBuilder<T>>
 
         private String getLabelGroupId() {
             if (labelGroupId == null) {
-                labelGroupId = "FormLabelsGroup" + Math.random() * 99999;
+                labelGroupId = idPrefix + "LabelsGroup";
             }
             if (!layoutBuilder.id2ComponentMap.containsKey(labelGroupId)) {
                 layoutBuilder.createGroup(labelGroupId);
@@ -500,7 +558,7 @@ public class RuleLayoutBuilder<T> extends AbstractBuilder<RuleLayoutBuilder<T>>
 
         private String getFieldGroupId() {
             if (fieldGroupId == null) {
-                fieldGroupId = "FormFieldGroup" + Math.random() * 99999;
+                fieldGroupId = idPrefix + "FieldsGroup";
             }
             if (!layoutBuilder.id2ComponentMap.containsKey(fieldGroupId)) {
                 layoutBuilder.createGroup(fieldGroupId);
@@ -520,7 +578,7 @@ public class RuleLayoutBuilder<T> extends AbstractBuilder<RuleLayoutBuilder<T>>
         }
 
         public Row addRow(String label, T field) {
-            String rowGroup = "formRowGroup" + rowIndex;
+            String rowGroup = idPrefix + "RowGroup" + rowIndex;
             layoutBuilder.createGroup(rowGroup);
 
             T labelComponent = createLabel(layoutBuilder.container, label);
@@ -536,41 +594,28 @@ public class RuleLayoutBuilder<T> extends AbstractBuilder<RuleLayoutBuilder<T>>
             return (T) new JLabel(text);
         }
 
+        /**
+         * Rows are placed by {@link LayoutForm} before rules: width of the labels column is calculated once and rows are stacked
+         * with running offset, so a rule added later for one row does not move other rows
+         */
         public void finish() {
-            //first - align labels and fields horizontally
-            for (Row row : rows) {
-                if (alignLabelsLeft) {
-                    layoutBuilder.move(row.label, Edge.LEFT, layoutBuilder.id2ComponentMap.get(getLabelGroupId()), Edge.LEFT, 0);
-                } else {
-                    layoutBuilder.move(row.label, Edge.RIGHT, layoutBuilder.id2ComponentMap.get(getLabelGroupId()), Edge.RIGHT, 0);
-                }
-                layoutBuilder.move(row.field, Edge.LEFT, layoutBuilder.id2ComponentMap.get(getLabelGroupId()), Edge.RIGHT, labelToComponentDistance);
-            }
-            //align labels to fields
+            LayoutForm form = new LayoutForm(labelToComponentDistance, rowsGap, alignLabelsLeft);
             for (Row row : rows) {
                 switch (row.alignment) {
                     case BASELINE:
-                        layoutBuilder.move(row.label, Edge.BASELINE, row.field, Edge.BASELINE, 0);
+                        form.addRow(row.label, row.field, Edge.BASELINE);
                         break;
                     case TOP:
-                        layoutBuilder.move(row.label, Edge.TOP, row.field, Edge.TOP, 0);
+                        form.addRow(row.label, row.field, Edge.TOP);
                         break;
                     case BOTTOM:
-                        layoutBuilder.move(row.label, Edge.BOTTOM, row.field, Edge.BOTTOM, 0);
+                        form.addRow(row.label, row.field, Edge.BOTTOM);
                         break;
                     case CENTER:
-                        layoutBuilder.move(row.label, Edge.VER_CENTER, row.field, Edge.VER_CENTER, 0);
-                }
-
-            }
-            //place groups each after other
-            Row previousRow = null;
-            for (Row row : rows) {
-                if (previousRow != null) {//we ignore first field, because it is already on top
-                    layoutBuilder.move(layoutBuilder.getComponentById(row.rowGroupId), Edge.TOP, layoutBuilder.getComponentById(previousRow.rowGroupId), Edge.BOTTOM, rowsGap);
+                        form.addRow(row.label, row.field, Edge.VER_CENTER);
                 }
-                previousRow = row;
             }
+            layoutBuilder.layout.addForm(form);
             layoutBuilder.setCurrentComponent(layoutBuilder.getComponentById(getFormGroupId()));
         }
 
@@ -0,0 +1,380 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rules of compiled program executed once symbolically, with every edge kept as affine function a*W + b*H + c of width W
+ * and height H of the parent. After that layout for other size of the parent is only evaluation of these functions.<br>
+ * Rules are executed exactly like in the engine, so where the engine result is not affine (division of odd width by 2,
+ * width that becomes negative and is flipped) the branch taken for the size the layout was compiled for is recorded as guard:
+ * sign or parity of some affine value. Functions are valid only for sizes that satisfy all guards.<br>
+ * Layouts with groups or forms, with components that are not children of the parent, or with baseline of component which size
+ * depends on the parent are not affine, for them {@link #compile} returns null.
+ */
+final class AffineLayout {
+    //coefficients are scaled, so halving of odd values(allowed by parity guard) stays exact integer arithmetic
+    private static final int SCALE_BITS = 20;
+    private static final long SCALE = 1L << SCALE_BITS;
+
+    private static final byte X1_SET = 1;
+    private static final byte Y1_SET = 1 << 1;
+    private static final byte X2_SET = 1 << 2;
+    private static final byte Y2_SET = 1 << 3;
+
+    private static final int NOT_NEGATIVE = 0;
+    private static final int NEGATIVE = 1;
+    private static final int EVEN = 2;
+    private static final int ODD = 3;
+
+    private final int slotCount;
+    //x, y, width, height of every slot, each as 3 coefficients
+    private final long[] coefficients;
+    private final long[] guardCoefficients;
+    private final int[] guardKinds;
+
+    private AffineLayout(int slotCount, long[] coefficients, long[] guardCoefficients, int[] guardKinds) {
+        this.slotCount = slotCount;
+        this.coefficients = coefficients;
+        this.guardCoefficients = guardCoefficients;
+        this.guardKinds = guardKinds;
+    }
+
+    interface BaselineSource {
+        int getBaseLine(int slot, int width, int height);
+    }
+
+    /**
+     * @param widths preferred widths of children by slot
+     * @param parentWidth width of the parent to choose branches of not affine operations
+     * @return null if the layout is not affine
+     */
+    static AffineLayout compile(CompiledRuleProgram program, int[] widths, int[] heights, BaselineSource baselines,
+                                int parentWidth, int parentHeight) {
+        if (program.getSlotCount() != program.childCount + 1 || program.getFormCount() != 0) {
+            return null;
+        }
+        Compiler compiler = new Compiler(program, baselines, parentWidth, parentHeight);
+        for (int slot = 1; slot <= program.childCount; slot++) {
+            compiler.x[slot] = Value.constant(0);
+            compiler.y[slot] = Value.constant(0);
+            compiler.w[slot] = Value.constant(widths[slot]);
+            compiler.h[slot] = Value.constant(heights[slot]);
+        }
+        for (int position = 0; position < program.ruleCount; position++) {
+            Value value = compiler.getPosition(program.sourceSlot[position], program.sourceEdge[position]);
+            if (value == null || !compiler.setPosition(program.targetSlot[position], program.targetEdge[position],
+                    value.add(Value.constant(program.offset[position])))) {
+                return null;
+            }
+        }
+        return compiler.build();
+    }
+
+    /**
+     * Stores rects of the parent and all children for the size of the parent, flags of rects are not changed
+     *
+     * @return false if the size does not satisfy guards, rects are not changed in such case
+     */
+    boolean evaluate(int parentWidth, int parentHeight, SlotRects rects) {
+        for (int i = 0; i < guardKinds.length; i++) {
+            long scaled = evaluateScaled(guardCoefficients, i * 3, parentWidth, parentHeight);
+            if ((scaled & (SCALE - 1)) != 0) {
+                return false;
+            }
+            long value = scaled >> SCALE_BITS;
+            switch (guardKinds[i]) {
+                case NOT_NEGATIVE:
+                    if (value < 0) return false;
+                    break;
+                case NEGATIVE:
+                    if (value >= 0) return false;
+                    break;
+                case EVEN:
+                    if ((value & 1) != 0) return false;
+                    break;
+                default:
+                    if ((value & 1) == 0) return false;
+            }
+        }
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = slot * 12;
+            rects.setBounds(slot,
+                    evaluate(offset, parentWidth, parentHeight),
+                    evaluate(offset + 3, parentWidth, parentHeight),
+                    evaluate(offset + 6, parentWidth, parentHeight),
+                    evaluate(offset + 9, parentWidth, parentHeight));
+        }
+        return true;
+    }
+
+    private int evaluate(int offset, int parentWidth, int parentHeight) {
+        return (int) (evaluateScaled(coefficients, offset, parentWidth, parentHeight) >> SCALE_BITS);
+    }
+
+    private static long evaluateScaled(long[] coefficients, int offset, int parentWidth, int parentHeight) {
+        return coefficients[offset] * parentWidth + coefficients[offset + 1] * parentHeight + coefficients[offset + 2];
+    }
+
+    /**
+     * Scaled affine value a*W + b*H + c
+     */
+    private static final class Value {
+        private final long a;
+        private final long b;
+        private final long c;
+
+        private Value(long a, long b, long c) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+        }
+
+        private static Value constant(int value) {
+            return new Value(0, 0, value * SCALE);
+        }
+
+        private boolean isConstant() {
+            return a == 0 && b == 0;
+        }
+
+        private Value add(Value other) {
+            return new Value(a + other.a, b + other.b, c + other.c);
+        }
+
+        private Value subtract(Value other) {
+            return new Value(a - other.a, b - other.b, c - other.c);
+        }
+
+        private Value negate() {
+            return new Value(-a, -b, -c);
+        }
+
+        private long at(int parentWidth, int parentHeight) {
+            return (a * parentWidth + b * parentHeight + c) >> SCALE_BITS;
+        }
+    }
+
+    /**
+     * Symbolic execution of rules with the same semantics as {@link SlotRects} and the engine
+     */
+    private static final class Compiler {
+        private final BaselineSource baselines;
+        private final int parentWidth;
+        private final int parentHeight;
+        private final Value[] x;
+        private final Value[] y;
+        private final Value[] w;
+        private final Value[] h;
+        private final byte[] flags;
+        private final List<Value> guards = new ArrayList<>();
+        private final IntList guardKinds = new IntList();
+
+        private Compiler(CompiledRuleProgram program, BaselineSource baselines, int parentWidth, int parentHeight) {
+            this.baselines = baselines;
+            this.parentWidth = parentWidth;
+            this.parentHeight = parentHeight;
+            int slotCount = program.getSlotCount();
+            x = new Value[slotCount];
+            y = new Value[slotCount];
+            w = new Value[slotCount];
+            h = new Value[slotCount];
+            flags = new byte[slotCount];
+            int parent = CompiledRuleProgram.PARENT_SLOT;
+            x[parent] = Value.constant(0);
+            y[parent] = Value.constant(0);
+            w[parent] = new Value(SCALE, 0, 0);
+            h[parent] = new Value(0, SCALE, 0);
+            flags[parent] = X1_SET | Y1_SET;
+        }
+
+        private AffineLayout build() {
+            long[] coefficients = new long[x.length * 12];
+            for (int slot = 0; slot < x.length; slot++) {
+                Value[] values = {x[slot], y[slot], w[slot], h[slot]};
+                for (int i = 0; i < 4; i++) {
+                    int offset = slot * 12 + i * 3;
+                    coefficients[offset] = values[i].a;
+                    coefficients[offset + 1] = values[i].b;
+                    coefficients[offset + 2] = values[i].c;
+                }
+            }
+            long[] guardCoefficients = new long[guards.size() * 3];
+            for (int i = 0; i < guards.size(); i++) {
+                guardCoefficients[i * 3] = guards.get(i).a;
+                guardCoefficients[i * 3 + 1] = guards.get(i).b;
+                guardCoefficients[i * 3 + 2] = guards.get(i).c;
+            }
+            return new AffineLayout(x.length, coefficients, guardCoefficients, guardKinds.toArray());
+        }
+
+        private void addGuard(Value value, int kind) {
+            guards.add(value);
+            guardKinds.add(kind);
+        }
+
+        private boolean isNegative(Value value) {
+            if (value.isConstant()) {
+                return value.c < 0;
+            }
+            boolean negative = value.at(parentWidth, parentHeight) < 0;
+            addGuard(value, negative ? NEGATIVE : NOT_NEGATIVE);
+            return negative;
+        }
+
+        /**
+         * value / 2 with rounding toward zero, like integer division in the engine
+         */
+        private Value half(Value value) {
+            if (value.isConstant()) {
+                return Value.constant((int) ((value.c >> SCALE_BITS) / 2));
+            }
+            long reference = value.at(parentWidth, parentHeight);
+            int remainder = (int) (reference & 1);
+            addGuard(value, reference < 0 ? NEGATIVE : NOT_NEGATIVE);
+            addGuard(value, remainder == 0 ? EVEN : ODD);
+            Value even = reference < 0 ? value.add(Value.constant(remainder)) : value.subtract(Value.constant(remainder));
+            if ((even.a & 1) != 0 || (even.b & 1) != 0 || (even.c & 1) != 0) {
+                return null;
+            }
+            return new Value(even.a / 2, even.b / 2, even.c / 2);
+        }
+
+        private Value baseline(int slot) {
+            if (!w[slot].isConstant() || !h[slot].isConstant()) {
+                return null;
+            }
+            int width = (int) (w[slot].c >> SCALE_BITS);
+            int height = (int) (h[slot].c >> SCALE_BITS);
+            return Value.constant(baselines.getBaseLine(slot, width, height));
+        }
+
+        private Value getPosition(int slot, int edge) {
+            switch (edge) {
+                case CompiledRuleProgram.LEFT:
+                    return x[slot];
+                case CompiledRuleProgram.RIGHT:
+                    return x[slot].add(w[slot]);
+                case CompiledRuleProgram.TOP:
+                    return y[slot];
+                case CompiledRuleProgram.BOTTOM:
+                    return y[slot].add(h[slot]);
+                case CompiledRuleProgram.WIDTH:
+                    return w[slot];
+                case CompiledRuleProgram.HEIGHT:
+                    return h[slot];
+                case CompiledRuleProgram.HOR_CENTER: {
+                    Value half = half(w[slot]);
+                    return half == null ? null : x[slot].add(half);
+                }
+                case CompiledRuleProgram.VER_CENTER: {
+                    Value half = half(h[slot]);
+                    return half == null ? null : y[slot].add(half);
+                }
+                case CompiledRuleProgram.BASELINE: {
+                    if (slot == CompiledRuleProgram.PARENT_SLOT) {
+                        return null;
+                    }
+                    Value baseline = baseline(slot);
+                    return baseline == null ? null : baseline.add(y[slot]);
+                }
+                default:
+                    throw new RuntimeException("Unknown edge " + edge);
+            }
+        }
+
+        /**
+         * @return false if result is not affine
+         */
+        private boolean setPosition(int slot, int edge, Value value) {
+            switch (edge) {
+                case CompiledRuleProgram.LEFT: {
+                    if ((flags[slot] & X2_SET) != 0) {
+                        w[slot] = x[slot].add(w[slot]).subtract(value);
+                    }
+                    x[slot] = value;
+                    flags[slot] |= X1_SET;
+                    return normalize(slot);
+                }
+                case CompiledRuleProgram.TOP: {
+                    if ((flags[slot] & Y2_SET) != 0) {
+                        h[slot] = y[slot].add(h[slot]).subtract(value);
+                    }
+                    y[slot] = value;
+                    flags[slot] |= Y1_SET;
+                    return normalize(slot);
+                }
+                case CompiledRuleProgram.RIGHT: {
+                    if ((flags[slot] & X1_SET) != 0) {
+                        w[slot] = value.subtract(x[slot]);
+                    } else {
+                        x[slot] = value.subtract(w[slot]);
+                    }
+                    flags[slot] |= X2_SET;
+                    return true;
+                }
+                case CompiledRuleProgram.BOTTOM: {
+                    if ((flags[slot] & Y1_SET) != 0) {
+                        h[slot] = value.subtract(y[slot]);
+                    } else {
+                        y[slot] = value.subtract(h[slot]);
+                    }
+                    flags[slot] |= Y2_SET;
+                    return true;
+                }
+                case CompiledRuleProgram.WIDTH: {
+                    if ((flags[slot] & X2_SET) != 0) {
+                        x[slot] = x[slot].add(w[slot]).subtract(value);
+                    }
+                    w[slot] = value;
+                    return true;
+                }
+                case CompiledRuleProgram.HEIGHT: {
+                    if ((flags[slot] & Y2_SET) != 0) {
+                        y[slot] = y[slot].add(h[slot]).subtract(value);
+                    }
+                    h[slot] = value;
+                    return true;
+                }
+                case CompiledRuleProgram.HOR_CENTER: {
+                    Value half = half(w[slot]);
+                    if (half == null) {
+                        return false;
+                    }
+                    x[slot] = value.subtract(half);
+                    return true;
+                }
+                case CompiledRuleProgram.VER_CENTER: {
+                    Value half = half(h[slot]);
+                    if (half == null) {
+                        return false;
+                    }
+                    y[slot] = value.subtract(half);
+                    return true;
+                }
+                case CompiledRuleProgram.BASELINE: {
+                    Value baseline = slot == CompiledRuleProgram.PARENT_SLOT ? null : baseline(slot);
+                    if (baseline == null) {
+                        return false;
+                    }
+                    y[slot] = value.subtract(baseline);
+                    return true;
+                }
+                default:
+                    throw new RuntimeException("Unknown edge " + edge);
+            }
+        }
+
+        private boolean normalize(int slot) {
+            if (isNegative(w[slot])) {
+                w[slot] = w[slot].negate();
+                x[slot] = x[slot].subtract(w[slot]);
+            }
+            if (isNegative(h[slot])) {
+                h[slot] = h[slot].negate();
+                y[slot] = y[slot].subtract(h[slot]);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.awt.Component;
+import java.util.Arrays;
+
+/**
+ * Baselines of children of the parent, indexed by slot of compiled program.<br>
+ * Baseline is cached for the size it was calculated for, and is forgotten when component is invalidated(its text, font or
+ * other property that affects size is changed). If component reports that its baseline is constant from top or from bottom,
+ * cached value is also used for other sizes.
+ */
+final class BaselineCache {
+    static final byte UNKNOWN = 0;
+    static final byte EXACT_SIZE = 1;
+    static final byte CONSTANT_ASCENT = 2;
+    static final byte CONSTANT_DESCENT = 3;
+    //cached only for exact size, but reported baseline keeps its distance from the center for other sizes
+    static final byte CENTER_OFFSET = 4;
+
+    private final ComponentActionsWrapper componentActionsWrapper;
+    private CompiledRuleProgram program;
+    private byte[] kind = new byte[0];
+    private int[] widths = new int[0];
+    private int[] heights = new int[0];
+    private int[] baselines = new int[0];
+    private long requestCount;
+    private long hitCount;
+
+    BaselineCache(ComponentActionsWrapper componentActionsWrapper) {
+        this.componentActionsWrapper = componentActionsWrapper;
+    }
+
+    /**
+     * Moves baselines of components that are still children of the parent to their new slots
+     */
+    void setProgram(CompiledRuleProgram newProgram) {
+        int slotCount = newProgram.getSlotCount();
+        byte[] newKind = new byte[slotCount];
+        int[] newWidths = new int[slotCount];
+        int[] newHeights = new int[slotCount];
+        int[] newBaselines = new int[slotCount];
+        for (int slot = 1; slot <= newProgram.childCount; slot++) {
+            int oldSlot = program == null ? -1 : program.getSlot(newProgram.slotObjects[slot]);
+            if (oldSlot != -1 && program.isChild(oldSlot)) {
+                newKind[slot] = kind[oldSlot];
+                newWidths[slot] = widths[oldSlot];
+                newHeights[slot] = heights[oldSlot];
+                newBaselines[slot] = baselines[oldSlot];
+            }
+        }
+        program = newProgram;
+        kind = newKind;
+        widths = newWidths;
+        heights = newHeights;
+        baselines = newBaselines;
+    }
+
+    void invalidate() {
+        Arrays.fill(kind, UNKNOWN);
+    }
+
+    void invalidateComponent(Object component) {
+        int slot = program == null ? -1 : program.getSlot(component);
+        if (program != null && program.isChild(slot)) {
+            kind[slot] = UNKNOWN;
+        }
+    }
+
+    /**
+     * Checks that baseline for the size can be returned without access to the component
+     */
+    boolean isCached(int slot, int width, int height) {
+        if (!program.isChild(slot) || width < 0 || height < 0) {
+            return false;
+        }
+        switch (kind[slot]) {
+            case CONSTANT_ASCENT:
+            case CONSTANT_DESCENT:
+                return true;
+            case EXACT_SIZE:
+            case CENTER_OFFSET:
+                return widths[slot] == width && heights[slot] == height;
+            default:
+                return false;
+        }
+    }
+
+    int getBaseLine(int slot, int width, int height) {
+        Object component = program.slotObjects[slot];
+        //negative sizes are passed to the component as is, it decides how to handle them
+        if (!program.isChild(slot) || width < 0 || height < 0) {
+            return componentActionsWrapper.getBaseLine(component, width, height);
+        }
+        requestCount++;
+        switch (kind[slot]) {
+            case CONSTANT_ASCENT:
+                hitCount++;
+                return baselines[slot];
+            case CONSTANT_DESCENT:
+                hitCount++;
+                return height - heights[slot] + baselines[slot];
+            case EXACT_SIZE:
+            case CENTER_OFFSET:
+                if (widths[slot] == width && heights[slot] == height) {
+                    hitCount++;
+                    return baselines[slot];
+                }
+                break;
+        }
+
+        int baseline = componentActionsWrapper.getBaseLine(component, width, height);
+        Component.BaselineResizeBehavior behavior = baseline < 0
+                ? Component.BaselineResizeBehavior.OTHER
+                : componentActionsWrapper.getBaselineResizeBehavior(component);
+        if (behavior == Component.BaselineResizeBehavior.CONSTANT_ASCENT) {
+            kind[slot] = CONSTANT_ASCENT;
+        } else if (behavior == Component.BaselineResizeBehavior.CONSTANT_DESCENT) {
+            kind[slot] = CONSTANT_DESCENT;
+        } else if (behavior == Component.BaselineResizeBehavior.CENTER_OFFSET) {
+            kind[slot] = CENTER_OFFSET;
+        } else {
+            kind[slot] = EXACT_SIZE;
+        }
+        widths[slot] = width;
+        heights[slot] = height;
+        baselines[slot] = baseline;
+        return baseline;
+    }
+
+    /**
+     * Copy of cached baselines for calculation on other thread. The copy does not have access to components,
+     * so only cached baselines can be requested from it
+     */
+    BaselineCache copy() {
+        BaselineCache copy = new BaselineCache(null);
+        copy.program = program;
+        copy.kind = kind.clone();
+        copy.widths = widths.clone();
+        copy.heights = heights.clone();
+        copy.baselines = baselines.clone();
+        return copy;
+    }
+
+    /**
+     * How cached baseline of the slot is reused for other sizes, UNKNOWN if baseline is not cached
+     */
+    byte getCachedKind(int slot) {
+        return kind[slot];
+    }
+
+    /**
+     * Size the cached baseline was calculated for
+     */
+    int getCachedWidth(int slot) {
+        return widths[slot];
+    }
+
+    int getCachedHeight(int slot) {
+        return heights[slot];
+    }
+
+    int getCachedBaseline(int slot) {
+        return baselines[slot];
+    }
+
+    long getRequestCount() {
+        return requestCount;
+    }
+
+    long getHitCount() {
+        return hitCount;
+    }
+}
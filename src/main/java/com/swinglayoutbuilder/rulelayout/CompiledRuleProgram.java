@@ -0,0 +1,496 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rules compiled to flat arrays of slots and edge codes in execution order.<br>
+ * Every component, the parent and every group referenced by rules get dense integer slot:
+ * slot 0 is the parent, slots 1..childCount are children in container order, then other components referenced in rules,
+ * then groups. Program is rebuilt only when rules, groups or children are changed.
+ */
+final class CompiledRuleProgram {
+    static final int LEFT = 0;
+    static final int TOP = 1;
+    static final int RIGHT = 2;
+    static final int BOTTOM = 3;
+    static final int BASELINE = 4;
+    static final int HOR_CENTER = 5;
+    static final int VER_CENTER = 6;
+    static final int WIDTH = 7;
+    static final int HEIGHT = 8;
+
+    static final int PARENT_SLOT = 0;
+
+    private final Map<Object, Integer> slotIndexes = new IdentityHashMap<>();
+    final Object[] slotObjects;
+    final int childCount;
+    final int firstGroupSlot;
+    //component slots of group with slot (firstGroupSlot + i) are groupLeafs[groupLeafStart[i]..groupLeafStart[i + 1])
+    final int[] groupLeafStart;
+    final int[] groupLeafs;
+    //groups(index from firstGroupSlot) that contain slot are slotGroups[slotGroupStart[slot]..slotGroupStart[slot + 1])
+    final int[] slotGroupStart;
+    final int[] slotGroups;
+    //non-empty groups which components are all in group i are groupSubgroups[groupSubgroupStart[i]..groupSubgroupStart[i + 1])
+    final int[] groupSubgroupStart;
+    final int[] groupSubgroups;
+
+    final int ruleCount;
+    final int[] sourceSlot;
+    final int[] sourceEdge;
+    final int[] targetSlot;
+    final int[] targetEdge;
+    final int[] offset;
+    final RulePriority[] priority;
+
+    //rows(only rows of children) of form i are formLabels/formFields/formAlignments[formRowStart[i]..formRowStart[i + 1])
+    final int[] formRowStart;
+    final int[] formLabels;
+    final int[] formFields;
+    final int[] formAlignments;
+    final int[] formDistances;
+    final int[] formRowsGaps;
+    final boolean[] formLabelsLeft;
+    //form that places the slot, -1 if the slot is not in a form
+    private final int[] slotForm;
+    private final boolean[] formAffected;
+
+    //rules are recalculated in sets: all rules of one dependency cycle form one set, other rules are sets of one rule
+    //rules(by position) of set are setRules[setRuleStart[set]..setRuleStart[set + 1])
+    private final int[] setRuleStart;
+    private final int[] setRules;
+    //sets that read or move slot are slotSets[slotSetStart[slot]..slotSetStart[slot + 1]), sets that read a group are registered
+    //on the slot of the group, not on slots of its components
+    private final int[] slotSetStart;
+    private final int[] slotSets;
+    //component slots and slots of read groups that should be recalculated if set is recalculated
+    private final int[] setSlotStart;
+    private final int[] setSlots;
+    private final boolean[] slotAffected;
+    private final boolean[] setAffected;
+    private final int[] affectedSets;
+    //program of the blueprint this program is bound from, resolves slots of objects used in rules of the blueprint
+    private final CompiledRuleProgram blueprintProgram;
+
+    CompiledRuleProgram(Object parent, Object[] children, RuleDependencyGraph graph, List<LayoutForm> forms) {
+        blueprintProgram = null;
+        List<Rule> rules = graph.getOrderedRules();
+        ruleCount = rules.size();
+        childCount = children.length;
+
+        slotIndexes.put(parent, PARENT_SLOT);
+        for (Object child : children) {
+            slotIndexes.putIfAbsent(child, slotIndexes.size());
+        }
+        Object[] graphObjects = graph.getObjects();
+        for (Object object : graphObjects) {
+            slotIndexes.putIfAbsent(object, slotIndexes.size());
+        }
+        firstGroupSlot = slotIndexes.size();
+        for (Rule rule : rules) {
+            addGroupSlot(rule.getAnchorComponent());
+            addGroupSlot(rule.getComponent());
+        }
+        slotObjects = new Object[slotIndexes.size()];
+        for (Map.Entry<Object, Integer> entry : slotIndexes.entrySet()) {
+            slotObjects[entry.getValue()] = entry.getKey();
+        }
+
+        LayoutGroup<?>[] readGroups = graph.getReadGroups();
+        int[] graphObjectSlots = new int[graphObjects.length + readGroups.length];
+        for (int i = 0; i < graphObjects.length; i++) {
+            graphObjectSlots[i] = slotIndexes.get(graphObjects[i]);
+        }
+        for (int i = 0; i < readGroups.length; i++) {
+            //group read only by removed rules has no slot
+            graphObjectSlots[graphObjects.length + i] = getSlot(readGroups[i]);
+        }
+
+        int groupCount = slotObjects.length - firstGroupSlot;
+        groupLeafStart = new int[groupCount + 1];
+        IntList leafs = new IntList();
+        for (int i = 0; i < groupCount; i++) {
+            groupLeafStart[i] = leafs.size();
+            for (int leafIndex : graph.getGroupLeafIndexes((LayoutGroup<?>) slotObjects[firstGroupSlot + i])) {
+                leafs.add(graphObjectSlots[leafIndex]);
+            }
+        }
+        groupLeafStart[groupCount] = leafs.size();
+        groupLeafs = leafs.toArray();
+
+        slotGroupStart = new int[slotObjects.length + 1];
+        for (int leaf : groupLeafs) {
+            slotGroupStart[leaf + 1]++;
+        }
+        for (int slot = 0; slot < slotObjects.length; slot++) {
+            slotGroupStart[slot + 1] += slotGroupStart[slot];
+        }
+        slotGroups = new int[groupLeafs.length];
+        int[] slotGroupFill = Arrays.copyOf(slotGroupStart, slotObjects.length);
+        for (int group = 0; group < groupCount; group++) {
+            for (int i = groupLeafStart[group]; i < groupLeafStart[group + 1]; i++) {
+                slotGroups[slotGroupFill[groupLeafs[i]]++] = group;
+            }
+        }
+
+        //only groups which first component is in the group can be nested in it
+        groupSubgroupStart = new int[groupCount + 1];
+        IntList subgroups = new IntList();
+        boolean[] inGroup = new boolean[slotObjects.length];
+        for (int group = 0; group < groupCount; group++) {
+            groupSubgroupStart[group] = subgroups.size();
+            for (int i = groupLeafStart[group]; i < groupLeafStart[group + 1]; i++) {
+                inGroup[groupLeafs[i]] = true;
+            }
+            for (int i = groupLeafStart[group]; i < groupLeafStart[group + 1]; i++) {
+                int leaf = groupLeafs[i];
+                for (int j = slotGroupStart[leaf]; j < slotGroupStart[leaf + 1]; j++) {
+                    int candidate = slotGroups[j];
+                    if (candidate != group && groupLeafs[groupLeafStart[candidate]] == leaf
+                            && containsAll(inGroup, candidate)) {
+                        subgroups.add(candidate);
+                    }
+                }
+            }
+            for (int i = groupLeafStart[group]; i < groupLeafStart[group + 1]; i++) {
+                inGroup[groupLeafs[i]] = false;
+            }
+        }
+        groupSubgroupStart[groupCount] = subgroups.size();
+        groupSubgroups = subgroups.toArray();
+
+        sourceSlot = new int[ruleCount];
+        sourceEdge = new int[ruleCount];
+        targetSlot = new int[ruleCount];
+        targetEdge = new int[ruleCount];
+        offset = new int[ruleCount];
+        priority = new RulePriority[ruleCount];
+        for (int i = 0; i < ruleCount; i++) {
+            Rule rule = rules.get(i);
+            sourceSlot[i] = getSlot(rule.getAnchorComponent());
+            sourceEdge[i] = edgeCode(rule.getAnchorEdge());
+            targetSlot[i] = getSlot(rule.getComponent());
+            targetEdge[i] = edgeCode(rule.getEdge());
+            offset[i] = rule.getOffset();
+            priority[i] = rule.getPriority();
+        }
+
+        formRowStart = new int[forms.size() + 1];
+        formDistances = new int[forms.size()];
+        formRowsGaps = new int[forms.size()];
+        formLabelsLeft = new boolean[forms.size()];
+        slotForm = new int[slotObjects.length];
+        Arrays.fill(slotForm, -1);
+        IntList labelSlots = new IntList();
+        IntList fieldSlots = new IntList();
+        IntList alignments = new IntList();
+        for (int i = 0; i < forms.size(); i++) {
+            LayoutForm form = forms.get(i);
+            formRowStart[i] = labelSlots.size();
+            formDistances[i] = form.getLabelToFieldDistance();
+            formRowsGaps[i] = form.getRowsGap();
+            formLabelsLeft[i] = form.isLabelsAlignedLeft();
+            for (int row = 0; row < form.getRowCount(); row++) {
+                int label = getSlot(form.getLabel(row));
+                int field = getSlot(form.getField(row));
+                if (isChild(label) && isChild(field)) {
+                    setForm(label, i);
+                    setForm(field, i);
+                    labelSlots.add(label);
+                    fieldSlots.add(field);
+                    alignments.add(edgeCode(form.getAlignment(row)));
+                }
+            }
+        }
+        formRowStart[forms.size()] = labelSlots.size();
+        formLabels = labelSlots.toArray();
+        formFields = fieldSlots.toArray();
+        formAlignments = alignments.toArray();
+        formAffected = new boolean[forms.size()];
+
+        //rules of one cycle share the array of objects, so a cycle through a big group is registered once and not per rule
+        int[][] ruleObjects = graph.getRuleObjects();
+        Map<int[], Integer> setIndexes = new IdentityHashMap<>();
+        int[] ruleSet = new int[ruleCount];
+        IntList firstRuleOfSet = new IntList();
+        for (int i = 0; i < ruleCount; i++) {
+            Integer set = setIndexes.get(ruleObjects[i]);
+            if (set == null) {
+                set = setIndexes.size();
+                setIndexes.put(ruleObjects[i], set);
+                firstRuleOfSet.add(i);
+            }
+            ruleSet[i] = set;
+        }
+        int setCount = setIndexes.size();
+        setRuleStart = new int[setCount + 1];
+        for (int i = 0; i < ruleCount; i++) {
+            setRuleStart[ruleSet[i] + 1]++;
+        }
+        for (int set = 0; set < setCount; set++) {
+            setRuleStart[set + 1] += setRuleStart[set];
+        }
+        setRules = new int[ruleCount];
+        int[] setRuleFill = Arrays.copyOf(setRuleStart, setCount);
+        for (int i = 0; i < ruleCount; i++) {
+            setRules[setRuleFill[ruleSet[i]]++] = i;
+        }
+
+        setSlotStart = new int[setCount + 1];
+        IntList slotsOfSets = new IntList();
+        int[] slotSetCount = new int[slotObjects.length + 1];
+        for (int set = 0; set < setCount; set++) {
+            setSlotStart[set] = slotsOfSets.size();
+            for (int object : ruleObjects[firstRuleOfSet.get(set)]) {
+                slotsOfSets.add(graphObjectSlots[object]);
+                slotSetCount[graphObjectSlots[object]]++;
+            }
+        }
+        setSlotStart[setCount] = slotsOfSets.size();
+        setSlots = slotsOfSets.toArray();
+
+        slotSetStart = new int[slotObjects.length + 1];
+        for (int slot = 0; slot < slotObjects.length; slot++) {
+            slotSetStart[slot + 1] = slotSetStart[slot] + slotSetCount[slot];
+        }
+        slotSets = new int[setSlots.length];
+        int[] fill = Arrays.copyOf(slotSetStart, slotObjects.length);
+        for (int set = 0; set < setCount; set++) {
+            for (int j = setSlotStart[set]; j < setSlotStart[set + 1]; j++) {
+                slotSets[fill[setSlots[j]]++] = set;
+            }
+        }
+        slotAffected = new boolean[slotObjects.length];
+        setAffected = new boolean[setCount];
+        affectedSets = new int[setCount];
+    }
+
+    /**
+     * Program of a blueprint bound to the parent and children of a container. Compiled arrays are shared with the blueprint,
+     * only slots of objects and buffers for recalculation belong to the new program
+     */
+    private CompiledRuleProgram(CompiledRuleProgram blueprintProgram, Object parent, Object[] children) {
+        this.blueprintProgram = blueprintProgram;
+        childCount = children.length;
+        firstGroupSlot = blueprintProgram.firstGroupSlot;
+        slotObjects = blueprintProgram.slotObjects.clone();
+        slotObjects[PARENT_SLOT] = parent;
+        System.arraycopy(children, 0, slotObjects, 1, childCount);
+        for (int slot = 0; slot < firstGroupSlot; slot++) {
+            slotIndexes.put(slotObjects[slot], slot);
+        }
+        groupLeafStart = blueprintProgram.groupLeafStart;
+        groupLeafs = blueprintProgram.groupLeafs;
+        slotGroupStart = blueprintProgram.slotGroupStart;
+        slotGroups = blueprintProgram.slotGroups;
+        groupSubgroupStart = blueprintProgram.groupSubgroupStart;
+        groupSubgroups = blueprintProgram.groupSubgroups;
+        ruleCount = blueprintProgram.ruleCount;
+        sourceSlot = blueprintProgram.sourceSlot;
+        sourceEdge = blueprintProgram.sourceEdge;
+        targetSlot = blueprintProgram.targetSlot;
+        targetEdge = blueprintProgram.targetEdge;
+        offset = blueprintProgram.offset;
+        priority = blueprintProgram.priority;
+        formRowStart = blueprintProgram.formRowStart;
+        formLabels = blueprintProgram.formLabels;
+        formFields = blueprintProgram.formFields;
+        formAlignments = blueprintProgram.formAlignments;
+        formDistances = blueprintProgram.formDistances;
+        formRowsGaps = blueprintProgram.formRowsGaps;
+        formLabelsLeft = blueprintProgram.formLabelsLeft;
+        slotForm = blueprintProgram.slotForm;
+        formAffected = new boolean[blueprintProgram.formAffected.length];
+        setRuleStart = blueprintProgram.setRuleStart;
+        setRules = blueprintProgram.setRules;
+        slotSetStart = blueprintProgram.slotSetStart;
+        slotSets = blueprintProgram.slotSets;
+        setSlotStart = blueprintProgram.setSlotStart;
+        setSlots = blueprintProgram.setSlots;
+        slotAffected = new boolean[slotObjects.length];
+        setAffected = new boolean[blueprintProgram.setAffected.length];
+        affectedSets = new int[blueprintProgram.affectedSets.length];
+    }
+
+    /**
+     * Binds program compiled for slots of a blueprint to the container, children should be in the order of slots
+     */
+    CompiledRuleProgram bind(Object parent, Object[] children) {
+        if (children.length != childCount) {
+            throw new IllegalStateException("Container has " + children.length + " children, but blueprint was compiled for " + childCount);
+        }
+        return new CompiledRuleProgram(this, parent, children);
+    }
+
+    private void setForm(int slot, int form) {
+        if (slotForm[slot] != -1) {
+            throw new IllegalStateException("Component " + Rule.describe(slotObjects[slot]) + " is in more than one form row");
+        }
+        slotForm[slot] = form;
+    }
+
+    private boolean containsAll(boolean[] inGroup, int group) {
+        for (int i = groupLeafStart[group]; i < groupLeafStart[group + 1]; i++) {
+            if (!inGroup[groupLeafs[i]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int edgeCode(Edge edge) {
+        switch (edge) {
+            case LEFT:
+                return LEFT;
+            case TOP:
+                return TOP;
+            case RIGHT:
+                return RIGHT;
+            case BOTTOM:
+                return BOTTOM;
+            case BASELINE:
+                return BASELINE;
+            case HOR_CENTER:
+                return HOR_CENTER;
+            case VER_CENTER:
+                return VER_CENTER;
+            case WIDTH:
+                return WIDTH;
+            case HEIGHT:
+                return HEIGHT;
+            default:
+                throw new RuntimeException("Unknown edge " + edge);
+        }
+    }
+
+    private void addGroupSlot(Object object) {
+        object = RuleLayoutCalculationEngine.unwrapComponentWrapper(object);
+        if (object instanceof LayoutGroup) {
+            slotIndexes.putIfAbsent(object, slotIndexes.size());
+        }
+    }
+
+    /**
+     * @return slot of component/group/parent or -1 if object is not used in the program
+     */
+    int getSlot(Object object) {
+        Integer slot = slotIndexes.get(RuleLayoutCalculationEngine.unwrapComponentWrapper(object));
+        if (slot == null && blueprintProgram != null) {
+            return blueprintProgram.getSlot(object);
+        }
+        return slot == null ? -1 : slot;
+    }
+
+    int getFormCount() {
+        return formDistances.length;
+    }
+
+    int getSlotCount() {
+        return slotObjects.length;
+    }
+
+    boolean isGroup(int slot) {
+        return slot >= firstGroupSlot;
+    }
+
+    boolean isChild(int slot) {
+        return slot > PARENT_SLOT && slot <= childCount;
+    }
+
+    /**
+     * Checks that program was compiled for the same list of children
+     */
+    boolean hasChildren(Object[] children) {
+        if (children.length != childCount) {
+            return false;
+        }
+        for (int i = 0; i < childCount; i++) {
+            if (slotObjects[i + 1] != children[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds rules downstream of the changed slots.<br>
+     * Every component that is moved by affected rule should be recalculated from scratch, so such slots are added
+     * to changedSlots, and all rules that move them are also affected. Changed component also affects rules that read groups
+     * containing it, so slots of such groups are added to changedSlots too. Form is placed again as a whole, so all its
+     * components are added if one of them is changed.
+     *
+     * @param changedSlots slots which rect was reset, receives all slots that should be reset
+     * @param affectedRules receives positions of affected rules, sorted
+     * @param affectedForms receives forms that should be placed again
+     */
+    void collectAffectedRules(IntList changedSlots, IntList affectedRules, IntList affectedForms) {
+        for (int i = 0; i < changedSlots.size(); i++) {
+            slotAffected[changedSlots.get(i)] = true;
+        }
+        int affectedSetCount = 0;
+        for (int i = 0; i < changedSlots.size(); i++) {
+            int slot = changedSlots.get(i);
+            int form = slotForm[slot];
+            if (form != -1 && !formAffected[form]) {
+                formAffected[form] = true;
+                affectedForms.add(form);
+                for (int row = formRowStart[form]; row < formRowStart[form + 1]; row++) {
+                    addChangedSlot(formLabels[row], changedSlots);
+                    addChangedSlot(formFields[row], changedSlots);
+                }
+            }
+            for (int j = slotSetStart[slot]; j < slotSetStart[slot + 1]; j++) {
+                int set = slotSets[j];
+                if (setAffected[set]) {
+                    continue;
+                }
+                setAffected[set] = true;
+                affectedSets[affectedSetCount++] = set;
+                for (int k = setRuleStart[set]; k < setRuleStart[set + 1]; k++) {
+                    affectedRules.add(setRules[k]);
+                }
+                for (int k = setSlotStart[set]; k < setSlotStart[set + 1]; k++) {
+                    addChangedSlot(setSlots[k], changedSlots);
+                }
+            }
+            if (!isGroup(slot)) {
+                for (int j = slotGroupStart[slot]; j < slotGroupStart[slot + 1]; j++) {
+                    int groupSlot = firstGroupSlot + slotGroups[j];
+                    if (slotSetStart[groupSlot] < slotSetStart[groupSlot + 1]) {
+                        addChangedSlot(groupSlot, changedSlots);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < changedSlots.size(); i++) {
+            slotAffected[changedSlots.get(i)] = false;
+        }
+        for (int i = 0; i < affectedSetCount; i++) {
+            setAffected[affectedSets[i]] = false;
+        }
+        for (int i = 0; i < affectedForms.size(); i++) {
+            formAffected[affectedForms.get(i)] = false;
+        }
+        affectedRules.sort();
+    }
+
+    /**
+     * Group is only read by rules, so its components are added with it
+     */
+    private void addChangedSlot(int slot, IntList changedSlots) {
+        if (slotAffected[slot]) {
+            return;
+        }
+        slotAffected[slot] = true;
+        changedSlots.add(slot);
+        if (isGroup(slot)) {
+            for (int i = groupLeafStart[slot - firstGroupSlot]; i < groupLeafStart[slot - firstGroupSlot + 1]; i++) {
+                addChangedSlot(groupLeafs[i], changedSlots);
+            }
+        }
+    }
+}
@@ -1,15 +1,42 @@
 package com.swinglayoutbuilder.rulelayout;
 
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 
 public interface ComponentActionsWrapper {
     Rectangle getComponentRect(Object component);
 
+    default int getComponentWidth(Object component) {
+        return getComponentRect(component).width;
+    }
+
+    default int getComponentHeight(Object component) {
+        return getComponentRect(component).height;
+    }
+
     int getBaseLine(Object component, int width, int height);
 
+    /**
+     * How baseline of the component changes when the component is resized. Used to reuse calculated baselines
+     */
+    default Component.BaselineResizeBehavior getBaselineResizeBehavior(Object component) {
+        return Component.BaselineResizeBehavior.OTHER;
+    }
+
     void setComponentRect(Object component, Rectangle rect);
 
+    default void setComponentBounds(Object component, int x, int y, int width, int height) {
+        setComponentRect(component, new Rectangle(x, y, width, height));
+    }
+
+    /**
+     * Called once per layout with union of old and new bounds of moved children. By default does nothing,
+     * because Swing components request repaint of changed regions themselves and RepaintManager merges these requests
+     */
+    default void repaint(Object component, int x, int y, int width, int height) {
+    }
+
     Object[] getChildren(Object component);
 
     Dimension getMinimumSize(Object component);
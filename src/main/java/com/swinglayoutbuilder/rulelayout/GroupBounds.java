@@ -0,0 +1,198 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.util.Arrays;
+
+/**
+ * Bounding boxes of all groups of compiled program, maintained while components of the groups are moved.<br>
+ * For every side of the box it is also kept how many components touch this side. When a component leaves the side
+ * and it was the last one, only then the box of the group is calculated again from all its components.
+ * Nested groups are flattened to components, so change of a component updates all groups that contain it directly or through nested groups.
+ */
+final class GroupBounds {
+    private final CompiledRuleProgram program;
+    private final SlotRects rects;
+    private final int[] minX;
+    private final int[] minY;
+    private final int[] maxX;
+    private final int[] maxY;
+    private final int[] minXCount;
+    private final int[] minYCount;
+    private final int[] maxXCount;
+    private final int[] maxYCount;
+    private final boolean[] valid;
+    //groups which bounds are already shifted while group is moved, marked with current moveStamp
+    private final int[] movedStamp;
+    private int moveStamp;
+    private boolean moving;
+
+    GroupBounds(CompiledRuleProgram program, SlotRects rects) {
+        this.program = program;
+        this.rects = rects;
+        int groupCount = program.getSlotCount() - program.firstGroupSlot;
+        minX = new int[groupCount];
+        minY = new int[groupCount];
+        maxX = new int[groupCount];
+        maxY = new int[groupCount];
+        minXCount = new int[groupCount];
+        minYCount = new int[groupCount];
+        maxXCount = new int[groupCount];
+        maxYCount = new int[groupCount];
+        valid = new boolean[groupCount];
+        movedStamp = new int[groupCount];
+    }
+
+    void invalidateAll() {
+        Arrays.fill(valid, false);
+    }
+
+    /**
+     * Stores bounding box of the group to the slot of the group in rects
+     */
+    void storeRect(int groupSlot) {
+        int group = groupSlot - program.firstGroupSlot;
+        if (!valid[group]) {
+            calculate(group);
+        }
+        rects.reset(groupSlot, minX[group], minY[group], maxX[group] - minX[group], maxY[group] - minY[group]);
+    }
+
+    /**
+     * Should be called after rect of component is changed
+     */
+    void componentChanged(int slot, int oldX, int oldY, int oldX2, int oldY2) {
+        int x = rects.getX(slot);
+        int y = rects.getY(slot);
+        int x2 = rects.getX2(slot);
+        int y2 = rects.getY2(slot);
+        if (x == oldX && y == oldY && x2 == oldX2 && y2 == oldY2) {
+            return;
+        }
+        for (int i = program.slotGroupStart[slot]; i < program.slotGroupStart[slot + 1]; i++) {
+            int group = program.slotGroups[i];
+            if (!valid[group] || (moving && movedStamp[group] == moveStamp)) {
+                continue;
+            }
+            valid[group] = updateMin(minX, minXCount, group, oldX, x)
+                    && updateMin(minY, minYCount, group, oldY, y)
+                    && updateMax(maxX, maxXCount, group, oldX2, x2)
+                    && updateMax(maxY, maxYCount, group, oldY2, y2);
+        }
+    }
+
+    /**
+     * Moves all components of the group. Bounds of the group and of groups nested in it are just shifted,
+     * other groups that contain moved components are updated per component
+     */
+    void moveGroup(int groupSlot, int dx, int dy) {
+        int group = groupSlot - program.firstGroupSlot;
+        if (moveStamp == Integer.MAX_VALUE) {
+            Arrays.fill(movedStamp, 0);
+            moveStamp = 0;
+        }
+        moveStamp++;
+        moving = true;
+        shift(group, dx, dy);
+        for (int i = program.groupSubgroupStart[group]; i < program.groupSubgroupStart[group + 1]; i++) {
+            shift(program.groupSubgroups[i], dx, dy);
+        }
+        for (int i = program.groupLeafStart[group]; i < program.groupLeafStart[group + 1]; i++) {
+            int leaf = program.groupLeafs[i];
+            int oldX = rects.getX(leaf);
+            int oldY = rects.getY(leaf);
+            rects.moveX(leaf, oldX + dx);
+            rects.moveY(leaf, oldY + dy);
+            componentChanged(leaf, oldX, oldY, oldX + rects.getWidth(leaf), oldY + rects.getHeight(leaf));
+        }
+        moving = false;
+    }
+
+    private void shift(int group, int dx, int dy) {
+        movedStamp[group] = moveStamp;
+        if (valid[group]) {
+            minX[group] += dx;
+            maxX[group] += dx;
+            minY[group] += dy;
+            maxY[group] += dy;
+        }
+    }
+
+    private static boolean updateMin(int[] min, int[] count, int group, int oldValue, int value) {
+        if (value < min[group]) {
+            min[group] = value;
+            count[group] = 1;
+        } else if (value == min[group]) {
+            if (oldValue != value) {
+                count[group]++;
+            }
+        } else if (oldValue == min[group]) {
+            count[group]--;
+            return count[group] > 0;
+        }
+        return true;
+    }
+
+    private static boolean updateMax(int[] max, int[] count, int group, int oldValue, int value) {
+        if (value > max[group]) {
+            max[group] = value;
+            count[group] = 1;
+        } else if (value == max[group]) {
+            if (oldValue != value) {
+                count[group]++;
+            }
+        } else if (oldValue == max[group]) {
+            count[group]--;
+            return count[group] > 0;
+        }
+        return true;
+    }
+
+    private void calculate(int group) {
+        int groupMinX = Integer.MAX_VALUE, groupMinY = Integer.MAX_VALUE, groupMaxX = Integer.MIN_VALUE, groupMaxY = Integer.MIN_VALUE;
+        int groupMinXCount = 0, groupMinYCount = 0, groupMaxXCount = 0, groupMaxYCount = 0;
+        for (int i = program.groupLeafStart[group]; i < program.groupLeafStart[group + 1]; i++) {
+            int leaf = program.groupLeafs[i];
+            int x = rects.getX(leaf);
+            int y = rects.getY(leaf);
+            int x2 = rects.getX2(leaf);
+            int y2 = rects.getY2(leaf);
+            if (x < groupMinX) {
+                groupMinX = x;
+                groupMinXCount = 0;
+            }
+            if (x == groupMinX) {
+                groupMinXCount++;
+            }
+            if (y < groupMinY) {
+                groupMinY = y;
+                groupMinYCount = 0;
+            }
+            if (y == groupMinY) {
+                groupMinYCount++;
+            }
+            if (x2 > groupMaxX) {
+                groupMaxX = x2;
+                groupMaxXCount = 0;
+            }
+            if (x2 == groupMaxX) {
+                groupMaxXCount++;
+            }
+            if (y2 > groupMaxY) {
+                groupMaxY = y2;
+                groupMaxYCount = 0;
+            }
+            if (y2 == groupMaxY) {
+                groupMaxYCount++;
+            }
+        }
+        minX[group] = groupMinX;
+        minY[group] = groupMinY;
+        maxX[group] = groupMaxX;
+        maxY[group] = groupMaxY;
+        minXCount[group] = groupMinXCount;
+        minYCount[group] = groupMinYCount;
+        maxXCount[group] = groupMaxXCount;
+        maxYCount[group] = groupMaxYCount;
+        //bounds of empty group never change and are never updated
+        valid[group] = groupMinXCount > 0;
+    }
+}
@@ -0,0 +1,256 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Rule layout of {@link LayoutNode} tree. Works like {@link RuleLayout}, but does not need AWT components, so it can be
+ * used on any thread, in tests and in batch calculations. One instance should be used by one thread at a time.
+ */
+@SuppressWarnings("UnusedReturnValue")
+public class HeadlessRuleLayout {
+    private final LayoutNode parent;
+    private final RuleLayoutCalculationEngine engine;
+
+    public HeadlessRuleLayout(LayoutNode parent) {
+        if (parent.layout != null) {
+            throw new IllegalStateException("Node " + parent.getName() + " already has layout");
+        }
+        this.parent = parent;
+        parent.layout = this;
+        engine = new RuleLayoutCalculationEngine(parent, new NodeActions());
+    }
+
+    public LayoutNode getParent() {
+        return parent;
+    }
+
+    public LayoutGroup<LayoutNode> createGroup() {
+        return engine.createGroup();
+    }
+
+    public HeadlessRuleLayout addRule(Rule... rules) {
+        engine.addRule(rules);
+        return this;
+    }
+
+    /**
+     * Form is placed before rules are executed, see {@link LayoutForm}
+     */
+    public HeadlessRuleLayout addForm(LayoutForm form) {
+        engine.addForm(form);
+        return this;
+    }
+
+    public HeadlessRuleLayout setRuleCycleHandler(Consumer<List<Rule>> ruleCycleHandler) {
+        engine.setRuleCycleHandler(ruleCycleHandler);
+        return this;
+    }
+
+    /**
+     * Remove no-op, duplicate and overridden rules before first calculation, enabled by default, see {@link #getRemovedRules()}
+     */
+    public HeadlessRuleLayout setRuleOptimization(boolean ruleOptimization) {
+        engine.setRuleOptimization(ruleOptimization);
+        return this;
+    }
+
+    /**
+     * Rules that were removed because they cannot change the layout, orders the rules if they were changed
+     */
+    public List<RemovedRule> getRemovedRules() {
+        return engine.getRemovedRules();
+    }
+
+    /**
+     * Solve rules together as linear constraints with priorities(see {@link Rule#getPriority()}) instead of executing them
+     * one by one. Rules can form cycles and conflict with each other, resize of the parent is solved incrementally.
+     * Groups cannot be used in rules in solver mode.
+     */
+    public HeadlessRuleLayout setSolverMode(boolean solverMode) {
+        engine.setSolverMode(solverMode);
+        return this;
+    }
+
+    public HeadlessRuleLayout setPadding(int left, int top, int right, int bottom) {
+        engine.setPadding(left, top, right, bottom);
+        return this;
+    }
+
+    public HeadlessRuleLayout setComponentEdgeAnchoredToParentMovingEdge(Object component,
+                                                                         boolean left, boolean top, boolean right, boolean bottom,
+                                                                         float leftMultiplier, float topMultiplier, float rightMultiplier, float bottomMultiplier) {
+        engine.setComponentAnchoredToParentEdges(new AnchoredToParentEdges(component, left, top, right, bottom)
+                .setMultipliers(leftMultiplier, topMultiplier, rightMultiplier, bottomMultiplier));
+        return this;
+    }
+
+    public Dimension getPreferredSize() {
+        return engine.getPreferredSize();
+    }
+
+    public Dimension getMinimumSize() {
+        return engine.getMinimumSize();
+    }
+
+    /**
+     * Sets bounds of all children of the parent node for current size of the parent node
+     */
+    public void layout() {
+        engine.layoutContainer();
+    }
+
+    /**
+     * Calculates layout with solveExecutor and sets bounds with applyExecutor, which should run tasks on the thread that owns
+     * the nodes. The result is dropped if nodes are changed before it is applied.
+     *
+     * @return future that is completed with true when bounds are set, or with false if the result was dropped
+     */
+    public CompletableFuture<Boolean> layoutAsync(Executor solveExecutor, Executor applyExecutor) {
+        return engine.layoutContainerAsync(solveExecutor, applyExecutor);
+    }
+
+    public LayoutMetrics getMetrics() {
+        return engine.getMetrics();
+    }
+
+    /**
+     * Records rules and every pass of this layout to the trace, null stops recording
+     */
+    public HeadlessRuleLayout setTraceRecorder(LayoutTraceRecorder traceRecorder) {
+        engine.setTraceRecorder(traceRecorder);
+        return this;
+    }
+
+    RuleLayoutCalculationEngine getEngine() {
+        return engine;
+    }
+
+    void childrenChanged() {
+        engine.childrenChanged();
+    }
+
+    void componentChanged(LayoutNode node) {
+        engine.invalidateComponent(node);
+    }
+
+    private static class NodeActions implements ComponentActionsWrapper {
+        /**
+         * Node itself or null if it is a group
+         */
+        private LayoutNode toNode(Object component) {
+            if (component instanceof ComponentWrapper) {
+                ComponentWrapper<?> wrapper = (ComponentWrapper<?>) component;
+                return wrapper.isGroup() ? null : (LayoutNode) wrapper.getComponent();
+            }
+            return (LayoutNode) component;
+        }
+
+        private ComponentRect getGroupRect(Object component) {
+            return ((ComponentWrapper<?>) component).getGroup().getRect();
+        }
+
+        @Override
+        public Rectangle getComponentRect(Object component) {
+            LayoutNode node = toNode(component);
+            if (node == null) {
+                ComponentRect rect = getGroupRect(component);
+                return new Rectangle(rect.getX(), rect.getY(), rect.getWidth(), rect.getHeight());
+            }
+            return node.getBounds();
+        }
+
+        @Override
+        public int getComponentWidth(Object component) {
+            LayoutNode node = toNode(component);
+            return node == null ? getGroupRect(component).getWidth() : node.getWidth();
+        }
+
+        @Override
+        public int getComponentHeight(Object component) {
+            LayoutNode node = toNode(component);
+            return node == null ? getGroupRect(component).getHeight() : node.getHeight();
+        }
+
+        @Override
+        public int getBaseLine(Object component, int width, int height) {
+            LayoutNode node = toNode(component);
+            if (node == null) {
+                throw new IllegalArgumentException("Cannot get base line from group");
+            }
+            if (width < 0 || height < 0) {
+                throw new IllegalArgumentException("Width and height must be >= 0");
+            }
+            return node.getBaseline(width, height);
+        }
+
+        @Override
+        public Component.BaselineResizeBehavior getBaselineResizeBehavior(Object component) {
+            LayoutNode node = toNode(component);
+            return node == null ? Component.BaselineResizeBehavior.OTHER : node.getBaselineResizeBehavior();
+        }
+
+        @Override
+        public void setComponentRect(Object component, Rectangle rect) {
+            setComponentBounds(component, rect.x, rect.y, rect.width, rect.height);
+        }
+
+        @Override
+        public void setComponentBounds(Object component, int x, int y, int width, int height) {
+            LayoutNode node = toNode(component);
+            if (node != null) {
+                node.setBounds(x, y, width, height);
+            }
+        }
+
+        @Override
+        public Object[] getChildren(Object component) {
+            LayoutNode node = toNode(component);
+            if (node == null) {
+                return ((ComponentWrapper<?>) component).getGroup().getChildren().toArray();
+            }
+            return node.getChildren().toArray();
+        }
+
+        @Override
+        public Dimension getMinimumSize(Object component) {
+            LayoutNode node = toNode(component);
+            if (node == null) {
+                ComponentRect rect = getGroupRect(component);
+                return new Dimension(rect.getWidth(), rect.getHeight());
+            }
+            return new Dimension(node.getMinimumWidth(), node.getMinimumHeight());
+        }
+
+        @Override
+        public Dimension getPreferredSize(Object component) {
+            LayoutNode node = toNode(component);
+            if (node == null) {
+                ComponentRect rect = getGroupRect(component);
+                return new Dimension(rect.getWidth(), rect.getHeight());
+            }
+            return new Dimension(node.getPreferredWidth(), node.getPreferredHeight());
+        }
+
+        @Override
+        public void setPreferredSize(Object component, Dimension dimension) {
+            LayoutNode node = toNode(component);
+            if (node != null) {
+                node.setPreferredSize(dimension.width, dimension.height);
+            }
+        }
+
+        @Override
+        public void setMinimumSize(Object component, Dimension dimension) {
+            LayoutNode node = toNode(component);
+            if (node != null) {
+                node.setMinimumSize(dimension.width, dimension.height);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used while compiling rules to avoid boxing
+ */
+final class IntList {
+    private int[] values;
+    private int size;
+
+    IntList() {
+        this(8);
+    }
+
+    IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void sort() {
+        Arrays.sort(values, 0, size);
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
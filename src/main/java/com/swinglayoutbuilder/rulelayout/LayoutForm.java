@@ -0,0 +1,74 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rows of label and field placed by one pass before rules are executed: width of the labels column is calculated once, rows are
+ * stacked with running offset and label of every row is aligned to its field. The result is the same as of rules
+ * label.LEFT(or RIGHT) = labels.LEFT(or RIGHT), field.LEFT = labels.RIGHT + distance, label.alignment = field.alignment and
+ * row.TOP = previous row.BOTTOM + gap, but rows do not depend on each other through groups, so the pass is linear in row count
+ * and there is no dependency cycle.<br>
+ * Rules can move the form, a row or a component of a row, they are executed after the form. Rows should be added before the form
+ * is added to the layout, rows which label or field is not a child of the parent are skipped.
+ */
+public final class LayoutForm {
+    private final int labelToFieldDistance;
+    private final int rowsGap;
+    private final boolean labelsAlignedLeft;
+    private final List<Object> labels = new ArrayList<>();
+    private final List<Object> fields = new ArrayList<>();
+    private final List<Edge> alignments = new ArrayList<>();
+
+    public LayoutForm(int labelToFieldDistance, int rowsGap, boolean labelsAlignedLeft) {
+        this.labelToFieldDistance = labelToFieldDistance;
+        this.rowsGap = rowsGap;
+        this.labelsAlignedLeft = labelsAlignedLeft;
+    }
+
+    /**
+     * @param alignment edge of the label aligned to the same edge of the field: BASELINE, TOP, BOTTOM or VER_CENTER
+     */
+    public LayoutForm addRow(Object label, Object field, Edge alignment) {
+        if (alignment != Edge.BASELINE && alignment != Edge.TOP && alignment != Edge.BOTTOM && alignment != Edge.VER_CENTER) {
+            throw new IllegalArgumentException("Label cannot be aligned to field by " + alignment);
+        }
+        label = RuleLayoutCalculationEngine.unwrapComponentWrapper(label);
+        field = RuleLayoutCalculationEngine.unwrapComponentWrapper(field);
+        if (label instanceof LayoutGroup || field instanceof LayoutGroup) {
+            throw new IllegalArgumentException("Groups cannot be used in form rows");
+        }
+        labels.add(label);
+        fields.add(field);
+        alignments.add(alignment);
+        return this;
+    }
+
+    public int getLabelToFieldDistance() {
+        return labelToFieldDistance;
+    }
+
+    public int getRowsGap() {
+        return rowsGap;
+    }
+
+    public boolean isLabelsAlignedLeft() {
+        return labelsAlignedLeft;
+    }
+
+    public int getRowCount() {
+        return labels.size();
+    }
+
+    public Object getLabel(int row) {
+        return labels.get(row);
+    }
+
+    public Object getField(int row) {
+        return fields.get(row);
+    }
+
+    public Edge getAlignment(int row) {
+        return alignments.get(row);
+    }
+}
@@ -14,6 +14,10 @@ public class LayoutGroup<T> {
 
     public void addComponent(ComponentWrapper<T> component) {
         children.add(component);
+        //groups of blueprints are not owned by an engine
+        if (owner != null) {
+            owner.rulesChanged();
+        }
     }
 
     public ComponentRect getRect() {
@@ -40,9 +44,7 @@ public class LayoutGroup<T> {
 
     public void moveChildren(int x, int y) {
         for (Object component : children) {
-            ComponentRect rect = owner.getRect(component);
-            rect.moveX(rect.getX() + x);
-            rect.moveY(rect.getY() + y);
+            owner.moveRect(component, x, y);
         }
     }
 
@@ -0,0 +1,138 @@
+package com.swinglayoutbuilder.rulelayout;
+
+/**
+ * Counters of work done by one rule layout: calculation passes, executed rules, queries to components and time of passes.<br>
+ * Counters are updated by the thread that lays out the container without synchronization, so values read from other thread
+ * (for example through {@link LayoutMetricsRegistry}) can be slightly behind.
+ */
+public final class LayoutMetrics {
+    /**
+     * Bucket i of time histogram counts passes that took less than 2^(i + 10) nanoseconds(and not less than previous bucket),
+     * the last bucket counts all longer passes
+     */
+    public static final int TIME_BUCKET_COUNT = 16;
+    private static final int FIRST_BUCKET_BITS = 10;
+
+    private final BaselineCache baselineCache;
+    long preferredPasses;
+    long minimumPasses;
+    long layoutPasses;
+    long sizeRequests;
+    long sizeCacheHits;
+    long rulesEvaluated;
+    long preferredSizeQueries;
+    long minimumSizeQueries;
+    long rendererCacheHits;
+    private long passNanos;
+    private final long[] timeHistogram = new long[TIME_BUCKET_COUNT];
+
+    LayoutMetrics(BaselineCache baselineCache) {
+        this.baselineCache = baselineCache;
+    }
+
+    void recordPassTime(long nanos) {
+        passNanos += nanos;
+        int bucket = 64 - Long.numberOfLeadingZeros(nanos) - FIRST_BUCKET_BITS;
+        timeHistogram[Math.max(0, Math.min(TIME_BUCKET_COUNT - 1, bucket))]++;
+    }
+
+    /**
+     * Calculations of preferred size, requests answered from cache are not counted
+     */
+    public long getPreferredPasses() {
+        return preferredPasses;
+    }
+
+    /**
+     * Calculations of minimum size, requests answered from cache are not counted
+     */
+    public long getMinimumPasses() {
+        return minimumPasses;
+    }
+
+    public long getLayoutPasses() {
+        return layoutPasses;
+    }
+
+    public long getRulesEvaluated() {
+        return rulesEvaluated;
+    }
+
+    /**
+     * Calls of getPreferredSize of children
+     */
+    public long getPreferredSizeQueries() {
+        return preferredSizeQueries;
+    }
+
+    /**
+     * Calls of getMinimumSize of children
+     */
+    public long getMinimumSizeQueries() {
+        return minimumSizeQueries;
+    }
+
+    /**
+     * Layout and preferred passes answered from renderer cache, they are also counted in passes, see {@link RuleLayout#setRendererMode(int)}
+     */
+    public long getRendererCacheHits() {
+        return rendererCacheHits;
+    }
+
+    /**
+     * Requests of baseline of children, including requests answered from cache
+     */
+    public long getBaselineRequests() {
+        return baselineCache.getRequestCount();
+    }
+
+    public double getBaselineCacheHitRate() {
+        long requests = baselineCache.getRequestCount();
+        return requests == 0 ? 0 : (double) baselineCache.getHitCount() / requests;
+    }
+
+    /**
+     * Requests of preferred/minimum size of the layout
+     */
+    public long getSizeRequests() {
+        return sizeRequests;
+    }
+
+    public double getSizeCacheHitRate() {
+        return sizeRequests == 0 ? 0 : (double) sizeCacheHits / sizeRequests;
+    }
+
+    /**
+     * Total time of all preferred, minimum and layout passes
+     */
+    public long getPassNanos() {
+        return passNanos;
+    }
+
+    /**
+     * Copy of pass time histogram, see {@link #TIME_BUCKET_COUNT}
+     */
+    public long[] getPassTimeHistogram() {
+        return timeHistogram.clone();
+    }
+
+    /**
+     * Upper bound of the bucket of pass time histogram in nanoseconds, Long.MAX_VALUE for the last bucket
+     */
+    public static long getBucketUpperBoundNanos(int bucket) {
+        return bucket >= TIME_BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << (bucket + FIRST_BUCKET_BITS);
+    }
+
+    @Override
+    public String toString() {
+        long passes = preferredPasses + minimumPasses + layoutPasses;
+        return "passes[preferred:" + preferredPasses + " minimum:" + minimumPasses + " layout:" + layoutPasses + "]"
+                + " rules:" + rulesEvaluated
+                + " sizeQueries[preferred:" + preferredSizeQueries + " minimum:" + minimumSizeQueries + "]"
+                + " baselineRequests:" + getBaselineRequests()
+                + " rendererHits:" + rendererCacheHits
+                + String.format(" baselineHitRate:%.2f sizeCacheHitRate:%.2f", getBaselineCacheHitRate(), getSizeCacheHitRate())
+                + " timeMs:" + passNanos / 1_000_000
+                + " avgUs:" + (passes == 0 ? 0 : passNanos / passes / 1000);
+    }
+}
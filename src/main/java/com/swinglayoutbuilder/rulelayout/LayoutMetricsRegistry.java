@@ -0,0 +1,147 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Metrics of rule layouts of named containers, aggregated for monitoring through JMX. The registry is registered in the
+ * platform MBean server on first use, so it can be seen in JConsole or VisualVM without attaching a profiler.<br>
+ * Metrics are referenced weakly, registration does not keep containers in memory.
+ */
+public final class LayoutMetricsRegistry implements LayoutMetricsRegistryMBean {
+    public static final String OBJECT_NAME = "com.swinglayoutbuilder:type=LayoutMetrics";
+    private static LayoutMetricsRegistry instance;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private LayoutMetricsRegistry() {
+    }
+
+    public static synchronized LayoutMetricsRegistry getInstance() {
+        if (instance == null) {
+            instance = new LayoutMetricsRegistry();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+            } catch (InstanceAlreadyExistsException e) {
+                //registry of other class loader is already registered, this one is available only through getInstance
+            } catch (JMException e) {
+                throw new IllegalStateException("Cannot register layout metrics MBean", e);
+            }
+        }
+        return instance;
+    }
+
+    public synchronized void register(String name, LayoutMetrics metrics) {
+        entries.add(new Entry(name, metrics));
+    }
+
+    /**
+     * Metrics of registered containers that are still in memory
+     */
+    private synchronized List<Entry> getLiveEntries() {
+        List<Entry> result = new ArrayList<>();
+        for (Iterator<Entry> iterator = entries.iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (entry.metrics.get() == null) {
+                iterator.remove();
+            } else {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int getContainerCount() {
+        return getLiveEntries().size();
+    }
+
+    @Override
+    public long getTotalLayoutPasses() {
+        long passes = 0;
+        for (Entry entry : getLiveEntries()) {
+            LayoutMetrics metrics = entry.metrics.get();
+            if (metrics != null) {
+                passes += metrics.getPreferredPasses() + metrics.getMinimumPasses() + metrics.getLayoutPasses();
+            }
+        }
+        return passes;
+    }
+
+    @Override
+    public long getTotalPassTimeMillis() {
+        long nanos = 0;
+        for (Entry entry : getLiveEntries()) {
+            LayoutMetrics metrics = entry.metrics.get();
+            if (metrics != null) {
+                nanos += metrics.getPassNanos();
+            }
+        }
+        return nanos / 1_000_000;
+    }
+
+    @Override
+    public String[] getContainerReports() {
+        List<Entry> live = getLiveEntries();
+        List<LayoutMetrics> metricsList = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (Entry entry : live) {
+            LayoutMetrics metrics = entry.metrics.get();
+            if (metrics != null) {
+                int index = 0;
+                while (index < metricsList.size() && metricsList.get(index).getPassNanos() >= metrics.getPassNanos()) {
+                    index++;
+                }
+                metricsList.add(index, metrics);
+                names.add(index, entry.name);
+            }
+        }
+        String[] reports = new String[metricsList.size()];
+        for (int i = 0; i < reports.length; i++) {
+            reports[i] = names.get(i) + ": " + metricsList.get(i);
+        }
+        return reports;
+    }
+
+    @Override
+    public String[] getPassTimeHistogram() {
+        long[] histogram = new long[LayoutMetrics.TIME_BUCKET_COUNT];
+        for (Entry entry : getLiveEntries()) {
+            LayoutMetrics metrics = entry.metrics.get();
+            if (metrics != null) {
+                long[] containerHistogram = metrics.getPassTimeHistogram();
+                for (int i = 0; i < histogram.length; i++) {
+                    histogram[i] += containerHistogram[i];
+                }
+            }
+        }
+        String[] lines = new String[histogram.length];
+        for (int i = 0; i < histogram.length; i++) {
+            long bound = LayoutMetrics.getBucketUpperBoundNanos(i);
+            lines[i] = (bound == Long.MAX_VALUE ? ">= " + LayoutMetrics.getBucketUpperBoundNanos(i - 1) / 1000 + "us" : "< " + bound / 1000.0 + "us")
+                    + ": " + histogram[i];
+        }
+        return lines;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static class Entry {
+        private final String name;
+        private final WeakReference<LayoutMetrics> metrics;
+
+        private Entry(String name, LayoutMetrics metrics) {
+            this.name = name;
+            this.metrics = new WeakReference<>(metrics);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.swinglayoutbuilder.rulelayout;
+
+/**
+ * Management interface of {@link LayoutMetricsRegistry}, registered in platform MBean server as
+ * {@value LayoutMetricsRegistry#OBJECT_NAME}
+ */
+public interface LayoutMetricsRegistryMBean {
+    int getContainerCount();
+
+    long getTotalLayoutPasses();
+
+    long getTotalPassTimeMillis();
+
+    /**
+     * One line per registered container: name and its metrics, containers that spent more time in layout first
+     */
+    String[] getContainerReports();
+
+    /**
+     * Pass time histogram of all containers, one line per bucket
+     */
+    String[] getPassTimeHistogram();
+
+    /**
+     * Forgets all registered containers
+     */
+    void clear();
+}
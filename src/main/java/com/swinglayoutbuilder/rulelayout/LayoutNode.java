@@ -0,0 +1,177 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.awt.Component;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plain data component for {@link HeadlessRuleLayout}: sizes, baseline and bounds without any AWT component behind it.
+ * Nodes are not thread safe, but layouts of different node trees can be calculated in parallel.
+ */
+public class LayoutNode {
+    private final String name;
+    private final List<LayoutNode> children = new ArrayList<>();
+    private LayoutNode parent;
+    HeadlessRuleLayout layout;
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private int preferredWidth;
+    private int preferredHeight;
+    private int minimumWidth;
+    private int minimumHeight;
+    private int baseline = -1;
+    private Component.BaselineResizeBehavior baselineResizeBehavior = Component.BaselineResizeBehavior.CONSTANT_ASCENT;
+
+    public LayoutNode(String name) {
+        this.name = name;
+    }
+
+    public LayoutNode(String name, int preferredWidth, int preferredHeight) {
+        this(name);
+        setPreferredSize(preferredWidth, preferredHeight);
+        setMinimumSize(preferredWidth, preferredHeight);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LayoutNode add(LayoutNode child) {
+        if (child.parent != null) {
+            throw new IllegalStateException("Node " + child.name + " already has parent " + child.parent.name);
+        }
+        child.parent = this;
+        children.add(child);
+        if (layout != null) {
+            layout.childrenChanged();
+        }
+        return this;
+    }
+
+    public LayoutNode remove(LayoutNode child) {
+        if (children.remove(child)) {
+            child.parent = null;
+            if (layout != null) {
+                layout.childrenChanged();
+            }
+        }
+        return this;
+    }
+
+    public List<LayoutNode> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    public LayoutNode getParent() {
+        return parent;
+    }
+
+    public LayoutNode setPreferredSize(int width, int height) {
+        preferredWidth = width;
+        preferredHeight = height;
+        sizeChanged();
+        return this;
+    }
+
+    public LayoutNode setMinimumSize(int width, int height) {
+        minimumWidth = width;
+        minimumHeight = height;
+        sizeChanged();
+        return this;
+    }
+
+    /**
+     * @param baseline distance from top to baseline when node has preferred size, -1 if node does not have baseline
+     * @param resizeBehavior how baseline is moved when height of the node differs from preferred height
+     */
+    public LayoutNode setBaseline(int baseline, Component.BaselineResizeBehavior resizeBehavior) {
+        this.baseline = baseline;
+        this.baselineResizeBehavior = resizeBehavior;
+        sizeChanged();
+        return this;
+    }
+
+    private void sizeChanged() {
+        if (parent != null && parent.layout != null) {
+            parent.layout.componentChanged(this);
+        }
+    }
+
+    public int getPreferredWidth() {
+        return preferredWidth;
+    }
+
+    public int getPreferredHeight() {
+        return preferredHeight;
+    }
+
+    public int getMinimumWidth() {
+        return minimumWidth;
+    }
+
+    public int getMinimumHeight() {
+        return minimumHeight;
+    }
+
+    public int getBaseline(int width, int height) {
+        if (baseline < 0) {
+            return -1;
+        }
+        switch (baselineResizeBehavior) {
+            case CONSTANT_DESCENT:
+                return height - (preferredHeight - baseline);
+            case CENTER_OFFSET:
+                return baseline - preferredHeight / 2 + height / 2;
+            default:
+                return baseline;
+        }
+    }
+
+    public Component.BaselineResizeBehavior getBaselineResizeBehavior() {
+        return baselineResizeBehavior;
+    }
+
+    /**
+     * Bounds are set by the layout of the parent, size of the parent node should be set by user
+     */
+    public LayoutNode setBounds(int x, int y, int width, int height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    public LayoutNode setSize(int width, int height) {
+        return setBounds(x, y, width, height);
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Rectangle getBounds() {
+        return new Rectangle(x, y, width, height);
+    }
+
+    @Override
+    public String toString() {
+        return name + "[x:" + x + ", y:" + y + " w:" + width + " h:" + height + "]";
+    }
+}
@@ -0,0 +1,278 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.awt.Insets;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records rules, sizes and baselines of children, size of the parent and results of every pass of one rule layout as a text trace,
+ * which can be replayed without the application by {@link LayoutTraceReplayer}.<br>
+ * Trace is a sequence of lines:
+ * <pre>
+ * ruletrace 2
+ * program &lt;slot count&gt; &lt;child count&gt; &lt;first group slot&gt;  when rules or children are changed
+ * o &lt;slot&gt; &lt;name&gt;                       children(slots 1..child count), then other components referenced in rules
+ * g &lt;slot&gt; &lt;component slots...&gt;         groups
+ * r &lt;anchor slot&gt; &lt;anchor edge&gt; &lt;offset&gt; &lt;slot&gt; &lt;edge&gt; &lt;priority&gt;  rules in the order they were added
+ * f &lt;label to field distance&gt; &lt;rows gap&gt; left|right [&lt;label slot&gt; &lt;field slot&gt; &lt;alignment edge&gt;]...  forms, only rows of children
+ * a &lt;slot&gt; &lt;left&gt; &lt;top&gt; &lt;right&gt; &lt;bottom&gt; &lt;multipliers...&gt;  components anchored to parent edges
+ * d &lt;width&gt; &lt;height&gt;                    size of the parent on first layout
+ * pass preferred|minimum|layout [&lt;parent width&gt; &lt;parent height&gt;]
+ * padding &lt;left&gt; &lt;top&gt; &lt;right&gt; &lt;bottom&gt;, solver 0|1  when changed
+ * invalidate, i &lt;slot&gt;                    layout or component invalidated since previous pass
+ * s|m &lt;slot&gt; &lt;width&gt; &lt;height&gt;           preferred|minimum size of child, when changed
+ * b &lt;slot&gt; ascent|descent|exact &lt;width&gt; &lt;height&gt; &lt;baseline&gt;  cached baseline of child, when changed
+ * t &lt;rule&gt; &lt;nanos&gt; ...                  time of executed rules, rule is index of r line
+ * result &lt;width&gt; &lt;height&gt;               preferred or minimum size
+ * k &lt;slot&gt; &lt;x&gt; &lt;y&gt; &lt;width&gt; &lt;height&gt;     bounds set by layout pass, when changed
+ * end &lt;nanos&gt;
+ * </pre>
+ * Passes calculated on other thread(see {@link RuleLayout#layoutContainerAsync}) are not recorded. Measuring of every rule adds
+ * some time to recorded passes. Recorder is used by one layout, errors of the writer are not thrown, see {@link #checkError()}.
+ */
+public final class LayoutTraceRecorder implements Flushable, Closeable {
+    static final String HEADER = "ruletrace";
+    static final int VERSION = 2;
+    private static final int NOT_WRITTEN = Integer.MIN_VALUE;
+
+    private final PrintWriter out;
+    private CompiledRuleProgram program;
+    private int[] ruleOfPosition = new int[0];
+    private final StringBuilder events = new StringBuilder();
+    private int[] timedPositions = new int[16];
+    private long[] timedNanos = new long[16];
+    private int timedCount;
+    private int[] written = new int[0];
+    private Insets writtenPadding;
+    private int writtenSolverMode = -1;
+
+    public LayoutTraceRecorder(Writer writer) {
+        out = new PrintWriter(writer);
+        out.println(HEADER + " " + VERSION);
+    }
+
+    /**
+     * @return true if the writer has thrown exception
+     */
+    public boolean checkError() {
+        return out.checkError();
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        out.close();
+    }
+
+    void invalidated() {
+        events.append("invalidate\n");
+    }
+
+    void componentInvalidated(int slot) {
+        events.append("i ").append(slot).append('\n');
+    }
+
+    void ruleExecuted(int position, long nanos) {
+        if (timedCount == timedPositions.length) {
+            timedPositions = Arrays.copyOf(timedPositions, timedCount * 2);
+            timedNanos = Arrays.copyOf(timedNanos, timedCount * 2);
+        }
+        timedPositions[timedCount] = position;
+        timedNanos[timedCount] = nanos;
+        timedCount++;
+    }
+
+    /**
+     * Writes program if it is changed since previous pass, header of the pass and invalidations since previous pass
+     *
+     * @param parentWidth  size of the parent for layout pass, -1 for preferred and minimum size passes
+     */
+    void startPass(String kind, CompiledRuleProgram newProgram, List<Rule> rules, List<Rule> orderedRules, List<LayoutForm> forms,
+                   List<AnchoredToParentEdges> anchors, int defaultWidth, int defaultHeight, int parentWidth, int parentHeight) {
+        if (newProgram != program) {
+            writeProgram(newProgram, rules, orderedRules, forms, anchors, defaultWidth, defaultHeight);
+            //new program is replayed from scratch, so previous invalidations do not matter
+            events.setLength(0);
+        }
+        out.print("pass ");
+        out.print(kind);
+        if (parentWidth != -1) {
+            out.print(" " + parentWidth + " " + parentHeight);
+        }
+        out.println();
+        out.print(events);
+        events.setLength(0);
+    }
+
+    private void writeProgram(CompiledRuleProgram newProgram, List<Rule> rules, List<Rule> orderedRules, List<LayoutForm> forms,
+                              List<AnchoredToParentEdges> anchors, int defaultWidth, int defaultHeight) {
+        program = newProgram;
+        int slotCount = newProgram.getSlotCount();
+        out.println("program " + slotCount + " " + newProgram.childCount + " " + newProgram.firstGroupSlot);
+        for (int slot = 1; slot < newProgram.firstGroupSlot; slot++) {
+            out.println("o " + slot + " " + describe(newProgram.slotObjects[slot]));
+        }
+        for (int slot = newProgram.firstGroupSlot; slot < slotCount; slot++) {
+            int group = slot - newProgram.firstGroupSlot;
+            StringBuilder line = new StringBuilder("g ").append(slot);
+            for (int i = newProgram.groupLeafStart[group]; i < newProgram.groupLeafStart[group + 1]; i++) {
+                line.append(' ').append(newProgram.groupLeafs[i]);
+            }
+            out.println(line);
+        }
+        Map<Rule, Integer> ruleIndexes = new IdentityHashMap<>();
+        for (Rule rule : rules) {
+            int anchor = newProgram.getSlot(rule.getAnchorComponent());
+            int target = newProgram.getSlot(rule.getComponent());
+            //group read only by rules removed by the optimizer has no slot, such rules are not executed
+            if (anchor == -1 || target == -1) {
+                continue;
+            }
+            ruleIndexes.putIfAbsent(rule, ruleIndexes.size());
+            out.println("r " + anchor + " " + rule.getAnchorEdge() + " " + rule.getOffset() + " " + target + " " + rule.getEdge()
+                    + " " + rule.getPriority());
+        }
+        ruleOfPosition = new int[orderedRules.size()];
+        for (int position = 0; position < ruleOfPosition.length; position++) {
+            ruleOfPosition[position] = ruleIndexes.get(orderedRules.get(position));
+        }
+        for (LayoutForm form : forms) {
+            StringBuilder line = new StringBuilder("f ").append(form.getLabelToFieldDistance()).append(' ').append(form.getRowsGap())
+                    .append(form.isLabelsAlignedLeft() ? " left" : " right");
+            for (int row = 0; row < form.getRowCount(); row++) {
+                int label = newProgram.getSlot(form.getLabel(row));
+                int field = newProgram.getSlot(form.getField(row));
+                if (newProgram.isChild(label) && newProgram.isChild(field)) {
+                    line.append(' ').append(label).append(' ').append(field).append(' ').append(form.getAlignment(row));
+                }
+            }
+            out.println(line);
+        }
+        for (AnchoredToParentEdges anchor : anchors) {
+            int slot = newProgram.getSlot(anchor.getObject());
+            if (newProgram.isChild(slot)) {
+                out.println("a " + slot + " " + flag(anchor.isLeft()) + " " + flag(anchor.isTop()) + " " + flag(anchor.isRight())
+                        + " " + flag(anchor.isBottom()) + " " + anchor.getLeftMultiplier() + " " + anchor.getTopMultiplier()
+                        + " " + anchor.getRightMultiplier() + " " + anchor.getBottomMultiplier());
+            }
+        }
+        if (defaultWidth != -1) {
+            out.println("d " + defaultWidth + " " + defaultHeight);
+        }
+        //per child: preferred size, minimum size, baseline, bounds
+        written = new int[(newProgram.childCount + 1) * 12];
+        Arrays.fill(written, NOT_WRITTEN);
+        writtenPadding = null;
+        writtenSolverMode = -1;
+    }
+
+    void settings(Insets padding, boolean solverMode) {
+        if (!padding.equals(writtenPadding)) {
+            writtenPadding = (Insets) padding.clone();
+            out.println("padding " + padding.left + " " + padding.top + " " + padding.right + " " + padding.bottom);
+        }
+        if (writtenSolverMode != flag(solverMode)) {
+            writtenSolverMode = flag(solverMode);
+            out.println("solver " + writtenSolverMode);
+        }
+    }
+
+    void sizes(boolean minimum, int[] widths, int[] heights, boolean[] known) {
+        int offset = minimum ? 2 : 0;
+        for (int slot = 1; slot <= program.childCount; slot++) {
+            if (known[slot] && changed(slot, offset, widths[slot], heights[slot])) {
+                out.println((minimum ? "m " : "s ") + slot + " " + widths[slot] + " " + heights[slot]);
+            }
+        }
+    }
+
+    void baselines(BaselineCache baselineCache) {
+        for (int slot = 1; slot <= program.childCount; slot++) {
+            byte kind = baselineCache.getCachedKind(slot);
+            if (kind == BaselineCache.UNKNOWN) {
+                continue;
+            }
+            int index = slot * 12 + 4;
+            int width = baselineCache.getCachedWidth(slot);
+            int height = baselineCache.getCachedHeight(slot);
+            int baseline = baselineCache.getCachedBaseline(slot);
+            if (written[index] != kind || written[index + 1] != width || written[index + 2] != height || written[index + 3] != baseline) {
+                written[index] = kind;
+                written[index + 1] = width;
+                written[index + 2] = height;
+                written[index + 3] = baseline;
+                out.println("b " + slot + " " + baselineKindName(kind) + " " + width + " " + height + " " + baseline);
+            }
+        }
+    }
+
+    void ruleTimes() {
+        if (timedCount == 0) {
+            return;
+        }
+        StringBuilder line = new StringBuilder("t");
+        for (int i = 0; i < timedCount; i++) {
+            line.append(' ').append(ruleOfPosition[timedPositions[i]]).append(' ').append(timedNanos[i]);
+        }
+        out.println(line);
+        timedCount = 0;
+    }
+
+    void result(int width, int height) {
+        out.println("result " + width + " " + height);
+    }
+
+    void bounds(int slot, int x, int y, int width, int height) {
+        int index = slot * 12 + 8;
+        if (written[index] != x || written[index + 1] != y || written[index + 2] != width || written[index + 3] != height) {
+            written[index] = x;
+            written[index + 1] = y;
+            written[index + 2] = width;
+            written[index + 3] = height;
+            out.println("k " + slot + " " + x + " " + y + " " + width + " " + height);
+        }
+    }
+
+    void endPass(long nanos) {
+        out.println("end " + nanos);
+    }
+
+    private boolean changed(int slot, int offset, int width, int height) {
+        int index = slot * 12 + offset;
+        if (written[index] == width && written[index + 1] == height) {
+            return false;
+        }
+        written[index] = width;
+        written[index + 1] = height;
+        return true;
+    }
+
+    private static int flag(boolean value) {
+        return value ? 1 : 0;
+    }
+
+    static String baselineKindName(byte kind) {
+        switch (kind) {
+            case BaselineCache.CONSTANT_ASCENT:
+                return "ascent";
+            case BaselineCache.CONSTANT_DESCENT:
+                return "descent";
+            default:
+                return "exact";
+        }
+    }
+
+    private static String describe(Object object) {
+        return Rule.describe(object).replaceAll("\\s", "_");
+    }
+}
@@ -0,0 +1,378 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Replays trace written by {@link LayoutTraceRecorder} with {@link HeadlessRuleLayout}: children are replaced with nodes that
+ * have recorded sizes and baselines, and every recorded pass is calculated again and compared with the recorded result.
+ * It allows to profile layout of real application and to check that changes of the engine do not change the result.<br>
+ * Can be started from command line: {@code LayoutTraceReplayer <trace file> [repeat count]}
+ */
+public final class LayoutTraceReplayer {
+    private final List<String> lines;
+    private final List<String> ruleDescriptions = new ArrayList<>();
+    private long[] ruleNanos = new long[0];
+
+    private LayoutTraceReplayer(List<String> lines) {
+        this.lines = lines;
+    }
+
+    /**
+     * @throws IllegalArgumentException if it is not a trace or the trace was written by newer version of the recorder
+     */
+    public static LayoutTraceReplayer read(Reader reader) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        String header = bufferedReader.readLine();
+        if (header == null || !header.startsWith(LayoutTraceRecorder.HEADER + " ")) {
+            throw new IllegalArgumentException("Not a layout trace");
+        }
+        int version = Integer.parseInt(header.substring(LayoutTraceRecorder.HEADER.length() + 1).trim());
+        if (version > LayoutTraceRecorder.VERSION) {
+            throw new IllegalArgumentException("Unsupported layout trace version " + version);
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(header);
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            lines.add(line);
+        }
+        LayoutTraceReplayer replayer = new LayoutTraceReplayer(lines);
+        replayer.collectRuleTimes();
+        return replayer;
+    }
+
+    /**
+     * Calculates all recorded passes again
+     *
+     * @throws IllegalArgumentException if the trace is damaged
+     */
+    public Result replay() {
+        Replay replay = new Replay();
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            try {
+                replay.execute(line.split(" "));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Wrong line " + (i + 1) + " of layout trace: " + line, e);
+            }
+        }
+        return replay.result;
+    }
+
+    /**
+     * Rules with the biggest time spent in recorded passes, with the time in microseconds
+     */
+    public List<String> getSlowestRules(int count) {
+        Integer[] indexes = new Integer[ruleNanos.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = i;
+        }
+        Arrays.sort(indexes, (a, b) -> Long.compare(ruleNanos[b], ruleNanos[a]));
+        List<String> slowest = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, indexes.length) && ruleNanos[indexes[i]] > 0; i++) {
+            slowest.add(ruleNanos[indexes[i]] / 1000 + "us " + ruleDescriptions.get(indexes[i]));
+        }
+        return slowest;
+    }
+
+    private void collectRuleTimes() {
+        List<String> names = new ArrayList<>();
+        int firstRule = 0;
+        for (String line : lines) {
+            String[] tokens = line.split(" ");
+            switch (tokens[0]) {
+                case "program":
+                    firstRule = ruleDescriptions.size();
+                    names = new ArrayList<>(Collections.nCopies(Integer.parseInt(tokens[1]), "group"));
+                    names.set(CompiledRuleProgram.PARENT_SLOT, "parent");
+                    break;
+                case "o":
+                    names.set(Integer.parseInt(tokens[1]), tokens[2]);
+                    break;
+                case "r":
+                    ruleDescriptions.add(names.get(Integer.parseInt(tokens[1])) + "#" + tokens[1] + "." + tokens[2] + " + " + tokens[3]
+                            + " -> " + names.get(Integer.parseInt(tokens[4])) + "#" + tokens[4] + "." + tokens[5]);
+                    break;
+                case "t":
+                    if (ruleNanos.length < ruleDescriptions.size()) {
+                        ruleNanos = Arrays.copyOf(ruleNanos, ruleDescriptions.size());
+                    }
+                    for (int i = 1; i + 1 < tokens.length; i += 2) {
+                        ruleNanos[firstRule + Integer.parseInt(tokens[i])] += Long.parseLong(tokens[i + 1]);
+                    }
+                    break;
+            }
+        }
+        ruleNanos = Arrays.copyOf(ruleNanos, ruleDescriptions.size());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: LayoutTraceReplayer <trace file> [repeat count]");
+            return;
+        }
+        LayoutTraceReplayer replayer;
+        try (Reader reader = new InputStreamReader(new FileInputStream(args[0]), StandardCharsets.UTF_8)) {
+            replayer = read(reader);
+        }
+        int repeatCount = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        Result fastest = null;
+        for (int i = 0; i < repeatCount; i++) {
+            Result result = replayer.replay();
+            if (fastest == null || result.getNanos() < fastest.getNanos()) {
+                fastest = result;
+            }
+        }
+        System.out.println(fastest);
+        for (String mismatch : fastest.getMismatches().subList(0, Math.min(20, fastest.getMismatches().size()))) {
+            System.out.println("  " + mismatch);
+        }
+        System.out.println("Slowest rules in recorded passes:");
+        for (String rule : replayer.getSlowestRules(10)) {
+            System.out.println("  " + rule);
+        }
+    }
+
+    public static final class Result {
+        private int passCount;
+        private long nanos;
+        private long recordedNanos;
+        private final List<String> mismatches = new ArrayList<>();
+
+        public int getPassCount() {
+            return passCount;
+        }
+
+        /**
+         * Time of replayed passes
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Time of passes when they were recorded
+         */
+        public long getRecordedNanos() {
+            return recordedNanos;
+        }
+
+        /**
+         * Passes which result differs from recorded result, empty if the layout is the same
+         */
+        public List<String> getMismatches() {
+            return mismatches;
+        }
+
+        @Override
+        public String toString() {
+            return "passes:" + passCount + " mismatches:" + mismatches.size()
+                    + " recordedMs:" + recordedNanos / 1_000_000 + " replayedMs:" + nanos / 1_000_000;
+        }
+    }
+
+    private static final class Replay {
+        private final Result result = new Result();
+        private LayoutNode parent;
+        private HeadlessRuleLayout layout;
+        private Object[] slotObjects;
+        private int childCount;
+        private int defaultWidth;
+        private int defaultHeight;
+        private boolean laidOut;
+        private int[] expectedBounds;
+        private String passKind;
+        private int parentWidth;
+        private int parentHeight;
+        private Dimension expectedSize;
+
+        private void execute(String[] tokens) {
+            switch (tokens[0]) {
+                case "program":
+                    parent = new LayoutNode("parent");
+                    layout = new HeadlessRuleLayout(parent);
+                    slotObjects = new Object[Integer.parseInt(tokens[1])];
+                    slotObjects[CompiledRuleProgram.PARENT_SLOT] = parent;
+                    childCount = Integer.parseInt(tokens[2]);
+                    defaultWidth = -1;
+                    defaultHeight = -1;
+                    laidOut = false;
+                    expectedBounds = new int[(childCount + 1) * 4];
+                    Arrays.fill(expectedBounds, -1);
+                    break;
+                case "o":
+                    int slot = Integer.parseInt(tokens[1]);
+                    TraceNode node = new TraceNode(tokens[2]);
+                    slotObjects[slot] = node;
+                    if (slot <= childCount) {
+                        parent.add(node);
+                    }
+                    break;
+                case "g":
+                    LayoutGroup<LayoutNode> group = layout.createGroup();
+                    for (int i = 2; i < tokens.length; i++) {
+                        group.addComponent(new ComponentWrapper<>(getNode(tokens[i])));
+                    }
+                    slotObjects[Integer.parseInt(tokens[1])] = new ComponentWrapper<>(group);
+                    break;
+                case "r":
+                    layout.addRule(new Rule(Edge.valueOf(tokens[2]), slotObjects[Integer.parseInt(tokens[1])], Integer.parseInt(tokens[3]),
+                            Edge.valueOf(tokens[5]), slotObjects[Integer.parseInt(tokens[4])], RulePriority.valueOf(tokens[6])));
+                    break;
+                case "f":
+                    LayoutForm form = new LayoutForm(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]), "left".equals(tokens[3]));
+                    for (int i = 4; i + 2 < tokens.length; i += 3) {
+                        form.addRow(getNode(tokens[i]), getNode(tokens[i + 1]), Edge.valueOf(tokens[i + 2]));
+                    }
+                    layout.addForm(form);
+                    break;
+                case "a":
+                    layout.setComponentEdgeAnchoredToParentMovingEdge(getNode(tokens[1]),
+                            "1".equals(tokens[2]), "1".equals(tokens[3]), "1".equals(tokens[4]), "1".equals(tokens[5]),
+                            Float.parseFloat(tokens[6]), Float.parseFloat(tokens[7]), Float.parseFloat(tokens[8]), Float.parseFloat(tokens[9]));
+                    break;
+                case "d":
+                    defaultWidth = Integer.parseInt(tokens[1]);
+                    defaultHeight = Integer.parseInt(tokens[2]);
+                    break;
+                case "pass":
+                    passKind = tokens[1];
+                    if (tokens.length > 2) {
+                        parentWidth = Integer.parseInt(tokens[2]);
+                        parentHeight = Integer.parseInt(tokens[3]);
+                    }
+                    expectedSize = null;
+                    break;
+                case "padding":
+                    layout.setPadding(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]), Integer.parseInt(tokens[3]), Integer.parseInt(tokens[4]));
+                    break;
+                case "solver":
+                    layout.setSolverMode("1".equals(tokens[1]));
+                    break;
+                case "invalidate":
+                    layout.getEngine().invalidate();
+                    break;
+                case "i":
+                    layout.getEngine().invalidateComponent(getNode(tokens[1]));
+                    break;
+                case "s":
+                    getNode(tokens[1]).setPreferredSize(Integer.parseInt(tokens[2]), Integer.parseInt(tokens[3]));
+                    break;
+                case "m":
+                    getNode(tokens[1]).setMinimumSize(Integer.parseInt(tokens[2]), Integer.parseInt(tokens[3]));
+                    break;
+                case "b":
+                    ((TraceNode) getNode(tokens[1])).setRecordedBaseline(tokens[2], Integer.parseInt(tokens[4]), Integer.parseInt(tokens[5]));
+                    break;
+                case "result":
+                    expectedSize = new Dimension(Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]));
+                    break;
+                case "k":
+                    int index = Integer.parseInt(tokens[1]) * 4;
+                    for (int i = 0; i < 4; i++) {
+                        expectedBounds[index + i] = Integer.parseInt(tokens[i + 2]);
+                    }
+                    break;
+                case "end":
+                    runPass();
+                    result.recordedNanos += Long.parseLong(tokens[1]);
+                    break;
+                case "t":
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown record " + tokens[0]);
+            }
+        }
+
+        private LayoutNode getNode(String slot) {
+            return (LayoutNode) slotObjects[Integer.parseInt(slot)];
+        }
+
+        private void runPass() {
+            result.passCount++;
+            if ("layout".equals(passKind)) {
+                //components anchored to parent edges are moved relative to the size of the parent on first layout
+                if (!laidOut && defaultWidth != -1 && (defaultWidth != parentWidth || defaultHeight != parentHeight)) {
+                    parent.setSize(defaultWidth, defaultHeight);
+                    layout.layout();
+                }
+                laidOut = true;
+                parent.setSize(parentWidth, parentHeight);
+                long start = System.nanoTime();
+                layout.layout();
+                result.nanos += System.nanoTime() - start;
+                for (int slot = 1; slot <= childCount; slot++) {
+                    LayoutNode node = (LayoutNode) slotObjects[slot];
+                    int index = slot * 4;
+                    if (expectedBounds[index + 2] != -1 && (node.getX() != expectedBounds[index] || node.getY() != expectedBounds[index + 1]
+                            || node.getWidth() != expectedBounds[index + 2] || node.getHeight() != expectedBounds[index + 3])) {
+                        result.mismatches.add("pass " + result.passCount + " layout: " + node.getName()
+                                + " expected " + Arrays.toString(Arrays.copyOfRange(expectedBounds, index, index + 4))
+                                + " but was [" + node.getX() + ", " + node.getY() + ", " + node.getWidth() + ", " + node.getHeight() + "]");
+                    }
+                }
+            } else {
+                long start = System.nanoTime();
+                Dimension size = "preferred".equals(passKind) ? layout.getPreferredSize() : layout.getMinimumSize();
+                result.nanos += System.nanoTime() - start;
+                if (expectedSize != null && !expectedSize.equals(size)) {
+                    result.mismatches.add("pass " + result.passCount + " " + passKind + ": expected " + expectedSize.width + "x"
+                            + expectedSize.height + " but was " + size.width + "x" + size.height);
+                }
+            }
+        }
+    }
+
+    /**
+     * Node that returns recorded baseline: for any height if baseline has constant ascent or descent, otherwise the baseline of
+     * the last size it was requested for
+     */
+    private static final class TraceNode extends LayoutNode {
+        private Component.BaselineResizeBehavior behavior = Component.BaselineResizeBehavior.OTHER;
+        private int baselineHeight;
+        private int baseline = -1;
+
+        private TraceNode(String name) {
+            super(name);
+        }
+
+        private void setRecordedBaseline(String kind, int height, int baseline) {
+            switch (kind) {
+                case "ascent":
+                    behavior = Component.BaselineResizeBehavior.CONSTANT_ASCENT;
+                    break;
+                case "descent":
+                    behavior = Component.BaselineResizeBehavior.CONSTANT_DESCENT;
+                    break;
+                default:
+                    behavior = Component.BaselineResizeBehavior.OTHER;
+            }
+            this.baselineHeight = height;
+            this.baseline = baseline;
+        }
+
+        @Override
+        public int getBaseline(int width, int height) {
+            if (baseline < 0) {
+                return baseline;
+            }
+            return behavior == Component.BaselineResizeBehavior.CONSTANT_DESCENT ? height - baselineHeight + baseline : baseline;
+        }
+
+        @Override
+        public Component.BaselineResizeBehavior getBaselineResizeBehavior() {
+            return behavior;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.LayoutManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Validates component tree like {@link Container#validate()}, but layouts of invalid containers with {@link RuleLayout}
+ * on the same level of the tree are calculated in parallel.<br>
+ * The tree is processed level by level, because size of a container is known only after layout of its parent.
+ * For every level sizes of children are read on the calling thread, layouts are calculated in the pool, and then
+ * bounds are applied on the calling thread. Containers with other layouts are validated by Swing with their whole subtree.
+ * Should be called on the event dispatch thread, as any other validation.
+ */
+public class ParallelLayoutValidator {
+    private final ForkJoinPool pool;
+
+    public ParallelLayoutValidator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelLayoutValidator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void validate(Container root) {
+        List<Container> level = new ArrayList<>();
+        if (!root.isValid()) {
+            level.add(root);
+        }
+        List<RuleLayout> layouts = new ArrayList<>();
+        List<RuleLayoutCalculationEngine> engines = new ArrayList<>();
+        while (!level.isEmpty()) {
+            layouts.clear();
+            engines.clear();
+            for (Container container : level) {
+                LayoutManager layout = container.getLayout();
+                if (layout instanceof RuleLayout && ((RuleLayout) layout).getEngine().getParent() == container) {
+                    RuleLayout ruleLayout = (RuleLayout) layout;
+                    ruleLayout.prepareDetachedLayout();
+                    layouts.add(ruleLayout);
+                    engines.add(ruleLayout.getEngine());
+                } else if (container.isDisplayable()) {
+                    container.validate();
+                } else {
+                    //validate does nothing without peer
+                    container.doLayout();
+                }
+            }
+            boolean[] solved = solve(engines);
+            for (int i = 0; i < engines.size(); i++) {
+                if (solved[i]) {
+                    engines.get(i).applyDetachedLayout();
+                } else {
+                    engines.get(i).layoutContainer();
+                }
+                layouts.get(i).setDetachedLayoutApplied();
+            }
+
+            List<Container> nextLevel = new ArrayList<>();
+            for (Container container : level) {
+                for (Component child : container.getComponents()) {
+                    if (child instanceof Container && !child.isValid()) {
+                        nextLevel.add((Container) child);
+                    }
+                }
+            }
+            level = nextLevel;
+        }
+        //all layouts are applied, validate only marks the tree as valid and lays out containers invalidated meanwhile
+        root.validate();
+    }
+
+    private boolean[] solve(List<RuleLayoutCalculationEngine> engines) {
+        boolean[] solved = new boolean[engines.size()];
+        if (engines.size() < 2) {
+            for (int i = 0; i < engines.size(); i++) {
+                solved[i] = engines.get(i).solveDetachedLayout();
+            }
+            return solved;
+        }
+
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (RuleLayoutCalculationEngine engine : engines) {
+            tasks.add(engine::solveDetachedLayout);
+        }
+        List<Future<Boolean>> results = pool.invokeAll(tasks);
+        try {
+            for (int i = 0; i < results.size(); i++) {
+                solved[i] = results.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for layout calculation", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Layout calculation failed", e.getCause());
+        }
+        return solved;
+    }
+}
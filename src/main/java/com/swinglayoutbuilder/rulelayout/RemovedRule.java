@@ -0,0 +1,53 @@
+package com.swinglayoutbuilder.rulelayout;
+
+/**
+ * Rule that was removed from the rule set because it cannot change the result of the layout,
+ * see {@link RuleLayout#getRemovedRules()}
+ */
+public final class RemovedRule {
+    public enum Reason {
+        /**
+         * Rule moves an edge to its current position, for example edge of the component to itself with zero offset
+         */
+        NO_OP,
+        /**
+         * The same rule was already executed and nothing has moved the edge since then
+         */
+        DUPLICATE,
+        /**
+         * Later rule moves the same edge to a position that does not depend on the removed rule, and no other rule moves
+         * the edge in between
+         */
+        OVERRIDDEN
+    }
+
+    private final Rule rule;
+    private final Reason reason;
+    private final Rule cause;
+
+    RemovedRule(Rule rule, Reason reason, Rule cause) {
+        this.rule = rule;
+        this.reason = reason;
+        this.cause = cause;
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Rule that is kept instead of the removed one: the first of duplicates or the overriding rule, null for no-op rule
+     */
+    public Rule getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return reason + " " + rule + (cause == null ? "" : " (" + cause + ")");
+    }
+}
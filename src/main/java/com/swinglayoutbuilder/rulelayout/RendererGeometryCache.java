@@ -0,0 +1,122 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of calculations of one layout keyed by everything they depend on besides rules: size of the parent, preferred sizes of
+ * children and baselines of children that are read by rules. Used in renderer mode, where the container is laid out again for
+ * every cell with new content, but the content gives only a few different vectors of sizes.<br>
+ * Bounds of children are stored for layout keys, preferred size of the layout for keys with parent size -1. Entries are valid
+ * for one compiled program and padding, least recently used entries are dropped when the cache is full.
+ */
+final class RendererGeometryCache {
+    static final int NO_BASELINE = Integer.MIN_VALUE;
+
+    private final int capacity;
+    private final Map<Key, int[]> entries;
+    private CompiledRuleProgram program;
+    //children which baselines are read by rules
+    private int[] baselineSlots = new int[0];
+    //key of the current lookup, copied only when a result is stored
+    private final Key probe = new Key(new int[0]);
+
+    RendererGeometryCache(int capacity) {
+        this.capacity = capacity;
+        entries = new LinkedHashMap<Key, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+                return size() > RendererGeometryCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Drops entries calculated by other program
+     */
+    void setProgram(CompiledRuleProgram newProgram) {
+        if (program == newProgram) {
+            return;
+        }
+        program = newProgram;
+        entries.clear();
+        boolean[] reads = new boolean[newProgram.getSlotCount()];
+        int count = 0;
+        for (int position = 0; position < newProgram.ruleCount; position++) {
+            count += markBaseline(newProgram, reads, newProgram.sourceSlot[position], newProgram.sourceEdge[position]);
+            count += markBaseline(newProgram, reads, newProgram.targetSlot[position], newProgram.targetEdge[position]);
+        }
+        baselineSlots = new int[count];
+        for (int slot = 1, i = 0; slot <= newProgram.childCount; slot++) {
+            if (reads[slot]) {
+                baselineSlots[i++] = slot;
+            }
+        }
+    }
+
+    private static int markBaseline(CompiledRuleProgram program, boolean[] reads, int slot, int edge) {
+        if (edge == CompiledRuleProgram.BASELINE && program.isChild(slot) && !reads[slot]) {
+            reads[slot] = true;
+            return 1;
+        }
+        return 0;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    int[] getBaselineSlots() {
+        return baselineSlots;
+    }
+
+    /**
+     * Key of the next lookup: parent size, then width, height and baseline(or {@link #NO_BASELINE}) of every child
+     */
+    int[] startKey(int parentWidth, int parentHeight) {
+        int length = 2 + program.childCount * 3;
+        if (probe.values.length != length) {
+            probe.values = new int[length];
+        }
+        probe.values[0] = parentWidth;
+        probe.values[1] = parentHeight;
+        return probe.values;
+    }
+
+    /**
+     * Result stored for the key filled after {@link #startKey}, null if it is not cached
+     */
+    int[] get() {
+        probe.hash = Arrays.hashCode(probe.values);
+        return entries.get(probe);
+    }
+
+    /**
+     * Stores result for the key of the last {@link #get()}
+     */
+    void put(int[] result) {
+        Key key = new Key(probe.values.clone());
+        key.hash = probe.hash;
+        entries.put(key, result);
+    }
+
+    private static final class Key {
+        private int[] values;
+        private int hash;
+
+        private Key(int[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(values, ((Key) o).values);
+        }
+    }
+}
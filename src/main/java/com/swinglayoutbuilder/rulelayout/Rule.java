@@ -1,19 +1,30 @@
 package com.swinglayoutbuilder.rulelayout;
 
+import java.awt.Component;
+
 public class Rule {
     private final Edge anchorEdge;
     private final Object anchorComponent;
     private final Edge edge;
     private final Object component;
     private final int offset;
+    private final RulePriority priority;
 
 
     public Rule(Edge anchorEdge, Object anchorComponent, int offset, Edge edge, Object component) {
+        this(anchorEdge, anchorComponent, offset, edge, component, RulePriority.STRONG);
+    }
+
+    /**
+     * @param priority used only in solver mode(see {@link RuleLayout#setSolverMode(boolean)}), where rules can conflict with each other
+     */
+    public Rule(Edge anchorEdge, Object anchorComponent, int offset, Edge edge, Object component, RulePriority priority) {
         this.anchorEdge = anchorEdge;
         this.anchorComponent = anchorComponent;
         this.edge = edge;
         this.component = component;
         this.offset = offset;
+        this.priority = priority;
     }
 
     public int getOffset() {
@@ -35,4 +46,33 @@ public class Rule {
     public Object getComponent() {
         return component;
     }
-}
\ No newline at end of file
+
+    public RulePriority getPriority() {
+        return priority;
+    }
+
+    @Override
+    public String toString() {
+        return describe(component) + "." + edge + " = " + describe(anchorComponent) + "." + anchorEdge
+                + (offset < 0 ? " - " + -offset : " + " + offset);
+    }
+
+    /**
+     * Name of the component, the node or the slot of blueprint, or class name if it has no name
+     */
+    static String describe(Object object) {
+        object = RuleLayoutCalculationEngine.unwrapComponentWrapper(object);
+        String name = null;
+        if (object instanceof LayoutNode) {
+            name = ((LayoutNode) object).getName();
+        } else if (object instanceof Component) {
+            name = ((Component) object).getName();
+        } else if (object instanceof RuleLayoutBlueprint.Slot) {
+            name = object.toString();
+        }
+        if (name == null || name.isEmpty()) {
+            name = object == null ? "null" : object.getClass().getSimpleName();
+        }
+        return name.isEmpty() ? "-" : name;
+    }
+}
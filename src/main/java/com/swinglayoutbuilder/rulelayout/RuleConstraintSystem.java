@@ -0,0 +1,156 @@
+package com.swinglayoutbuilder.rulelayout;
+
+/**
+ * Rules of compiled program as linear constraints of {@link SimplexSolver}, used in solver mode of the engine.<br>
+ * Every component slot gets variables x, y, width and height. Rule "anchor edge + offset = edge" becomes equality with priority
+ * of the rule. Width and height of the parent and preferred sizes of components are edit variables, so resize of the parent
+ * or change of preferred size is solved incrementally from previous solution.<br>
+ * Baseline of the component is taken for its preferred size, system should be rebuilt if it is changed.
+ */
+final class RuleConstraintSystem {
+    //size of the parent is stronger than any not required rule
+    private static final double PARENT_SIZE_STRENGTH = 100_000_000;
+    private static final double PREFERRED_SIZE_STRENGTH = 10;
+    //position of component that is not moved by rules is 0,0, like in rule mode
+    private static final double POSITION_STRENGTH = 0.01;
+
+    private final SimplexSolver solver = new SimplexSolver();
+    private final CompiledRuleProgram program;
+    private final SimplexSolver.Variable[] x;
+    private final SimplexSolver.Variable[] y;
+    private final SimplexSolver.Variable[] width;
+    private final SimplexSolver.Variable[] height;
+    private final int[] baselines;
+    private final boolean[] baselineSlots;
+
+    /**
+     * @param baselines baselines of components at their preferred size, used only for components which baseline is used in rules
+     * @param baselineSlots slots which baselines are used in rules, see {@link #findBaselineSlots(CompiledRuleProgram)}
+     * @throws IllegalStateException if rules use groups, the layout has forms, or required rules cannot be satisfied
+     */
+    RuleConstraintSystem(CompiledRuleProgram program, int[] widths, int[] heights, int[] baselines, boolean[] baselineSlots,
+                         int parentWidth, int parentHeight) {
+        if (program.getFormCount() != 0) {
+            throw new IllegalStateException("Forms cannot be used in solver mode");
+        }
+        this.program = program;
+        this.baselines = baselines.clone();
+        this.baselineSlots = baselineSlots;
+        int slotCount = program.firstGroupSlot;
+        x = new SimplexSolver.Variable[slotCount];
+        y = new SimplexSolver.Variable[slotCount];
+        width = new SimplexSolver.Variable[slotCount];
+        height = new SimplexSolver.Variable[slotCount];
+        for (int slot = 0; slot < slotCount; slot++) {
+            x[slot] = solver.createVariable();
+            y[slot] = solver.createVariable();
+            width[slot] = solver.createVariable();
+            height[slot] = solver.createVariable();
+        }
+
+        int parent = CompiledRuleProgram.PARENT_SLOT;
+        solver.addConstraint(new SimplexSolver.Expression().add(x[parent], 1), SimplexSolver.EQ, SimplexSolver.REQUIRED);
+        solver.addConstraint(new SimplexSolver.Expression().add(y[parent], 1), SimplexSolver.EQ, SimplexSolver.REQUIRED);
+        solver.addEditVariable(width[parent], PARENT_SIZE_STRENGTH, parentWidth);
+        solver.addEditVariable(height[parent], PARENT_SIZE_STRENGTH, parentHeight);
+        for (int slot = 1; slot < slotCount; slot++) {
+            solver.addConstraint(new SimplexSolver.Expression().add(x[slot], 1), SimplexSolver.EQ, POSITION_STRENGTH);
+            solver.addConstraint(new SimplexSolver.Expression().add(y[slot], 1), SimplexSolver.EQ, POSITION_STRENGTH);
+            solver.addEditVariable(width[slot], PREFERRED_SIZE_STRENGTH, program.isChild(slot) ? widths[slot] : 0);
+            solver.addEditVariable(height[slot], PREFERRED_SIZE_STRENGTH, program.isChild(slot) ? heights[slot] : 0);
+        }
+
+        for (int position = 0; position < program.ruleCount; position++) {
+            SimplexSolver.Expression expression = new SimplexSolver.Expression();
+            addEdge(expression, program.targetSlot[position], program.targetEdge[position], 1);
+            addEdge(expression, program.sourceSlot[position], program.sourceEdge[position], -1);
+            expression.add(-program.offset[position]);
+            solver.addConstraint(expression, SimplexSolver.EQ, program.priority[position].getStrength());
+        }
+    }
+
+    private void addEdge(SimplexSolver.Expression expression, int slot, int edge, double sign) {
+        if (program.isGroup(slot)) {
+            throw new IllegalStateException("Groups cannot be used in rules in solver mode");
+        }
+        switch (edge) {
+            case CompiledRuleProgram.LEFT:
+                expression.add(x[slot], sign);
+                break;
+            case CompiledRuleProgram.TOP:
+                expression.add(y[slot], sign);
+                break;
+            case CompiledRuleProgram.RIGHT:
+                expression.add(x[slot], sign).add(width[slot], sign);
+                break;
+            case CompiledRuleProgram.BOTTOM:
+                expression.add(y[slot], sign).add(height[slot], sign);
+                break;
+            case CompiledRuleProgram.WIDTH:
+                expression.add(width[slot], sign);
+                break;
+            case CompiledRuleProgram.HEIGHT:
+                expression.add(height[slot], sign);
+                break;
+            case CompiledRuleProgram.HOR_CENTER:
+                expression.add(x[slot], sign).add(width[slot], sign / 2);
+                break;
+            case CompiledRuleProgram.VER_CENTER:
+                expression.add(y[slot], sign).add(height[slot], sign / 2);
+                break;
+            case CompiledRuleProgram.BASELINE:
+                expression.add(y[slot], sign).add(sign * baselines[slot]);
+                break;
+            default:
+                throw new RuntimeException("Unknown edge " + edge);
+        }
+    }
+
+    /**
+     * Slots which baselines are used in rules, found in one pass over the rules
+     */
+    static boolean[] findBaselineSlots(CompiledRuleProgram program) {
+        boolean[] baselineSlots = new boolean[program.getSlotCount()];
+        for (int position = 0; position < program.ruleCount; position++) {
+            if (program.sourceEdge[position] == CompiledRuleProgram.BASELINE) {
+                baselineSlots[program.sourceSlot[position]] = true;
+            }
+            if (program.targetEdge[position] == CompiledRuleProgram.BASELINE) {
+                baselineSlots[program.targetSlot[position]] = true;
+            }
+        }
+        return baselineSlots;
+    }
+
+    boolean usesBaseline(int slot) {
+        return baselineSlots[slot];
+    }
+
+    int getBaseline(int slot) {
+        return baselines[slot];
+    }
+
+    void suggestParentSize(int parentWidth, int parentHeight) {
+        solver.suggestValue(width[CompiledRuleProgram.PARENT_SLOT], parentWidth);
+        solver.suggestValue(height[CompiledRuleProgram.PARENT_SLOT], parentHeight);
+    }
+
+    void suggestSize(int slot, int slotWidth, int slotHeight) {
+        solver.suggestValue(width[slot], slotWidth);
+        solver.suggestValue(height[slot], slotHeight);
+    }
+
+    /**
+     * Stores solution to rects of all component slots, edges are rounded to nearest pixel
+     */
+    void storeRects(SlotRects rects) {
+        solver.updateVariables();
+        for (int slot = 0; slot < x.length; slot++) {
+            int x1 = (int) Math.round(x[slot].value);
+            int y1 = (int) Math.round(y[slot].value);
+            int x2 = (int) Math.round(x[slot].value + width[slot].value);
+            int y2 = (int) Math.round(y[slot].value + height[slot].value);
+            rects.reset(slot, x1, y1, x2 - x1, y2 - y1);
+        }
+    }
+}
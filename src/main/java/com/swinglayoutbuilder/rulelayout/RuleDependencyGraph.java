@@ -0,0 +1,612 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Dependency graph over (component, axis) nodes of a rule list.<br>
+ * Every rule that reads an edge is ordered after all rules that move that edge, rules that move the same edge keep
+ * their insertion order, so "later rule overwrites previous one" still works.<br>
+ * Rules that depend on each other in a cycle cannot be ordered, they are executed in insertion order and reported as cycle.<br>
+ * Group read by rules gets its own nodes, which go after all rules that move members of the group, and rules that read the group
+ * go after the node of the group. So a big group read by every row of a form adds edges linear in the number of rules.
+ */
+class RuleDependencyGraph {
+    static final int HORIZONTAL = 1;
+    static final int VERTICAL = 2;
+
+    private final List<Rule> rules;
+    private final Map<Object, Integer> objectIndexes = new IdentityHashMap<>();
+    private final Map<LayoutGroup<?>, int[]> groupLeafIndexes = new IdentityHashMap<>();
+    private final Map<LayoutGroup<?>, Integer> readGroupIndexes = new IdentityHashMap<>();
+    private final List<Rule> orderedRules = new ArrayList<>();
+    private final List<List<Rule>> cycles = new ArrayList<>();
+    private int[] order;
+    private Object[] objects;
+    private LayoutGroup<?>[] readGroups;
+    private int objectNodeCount;
+    //nodes of read groups that contain the node of object
+    private int[][] groupNodes;
+    private int[][] ruleObjects;
+    private IntList[] reads;
+    private IntList[] writes;
+    private int[] anchorNodeCount;
+    private boolean[] inCycle;
+
+    RuleDependencyGraph(List<Rule> rules) {
+        this.rules = rules;
+        build();
+    }
+
+    /**
+     * Rules sorted in execution order
+     */
+    List<Rule> getOrderedRules() {
+        return orderedRules;
+    }
+
+    /**
+     * Indexes of rules(in insertion order) in execution order
+     */
+    int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * Groups of rules that depend on each other cyclically. Each group is in insertion order.
+     */
+    List<List<Rule>> getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Components and parent used in rules, group members are expanded to components
+     */
+    Object[] getObjects() {
+        return objects;
+    }
+
+    /**
+     * Groups read by anchors of rules
+     */
+    LayoutGroup<?>[] getReadGroups() {
+        return readGroups;
+    }
+
+    /**
+     * Indexes of objects(see {@link #getObjects()}) read or moved by rule at each position in execution order, group read by rule
+     * has index objects.length + index in {@link #getReadGroups()}.
+     * Rule inside cycle can read edge before it is finally moved, so such rule gets objects of whole cycle.
+     */
+    int[][] getRuleObjects() {
+        return ruleObjects;
+    }
+
+    /**
+     * Number of (object, axis) nodes, node of object index i is i * 2 for horizontal axis and i * 2 + 1 for vertical.
+     * Nodes of read groups follow nodes of objects, group i of {@link #getReadGroups()} has nodes (objects.length + i) * 2 and
+     * (objects.length + i) * 2 + 1
+     */
+    int getNodeCount() {
+        return objectNodeCount + readGroups.length * 2;
+    }
+
+    /**
+     * Nodes of read groups that contain the node of object
+     */
+    int[] getGroupNodes(int node) {
+        return groupNodes[node];
+    }
+
+    /**
+     * Nodes read from the anchor of rule(index in insertion order)
+     */
+    int[] getAnchorNodes(int rule) {
+        return Arrays.copyOf(reads[rule].toArray(), anchorNodeCount[rule]);
+    }
+
+    /**
+     * Nodes read by rule(index in insertion order), including nodes of the moved component or group. Group in anchor is read as
+     * node of the group, not as nodes of its members
+     */
+    int[] getReadNodes(int rule) {
+        return reads[rule].toArray();
+    }
+
+    /**
+     * Nodes moved by rule(index in insertion order)
+     */
+    int[] getWrittenNodes(int rule) {
+        return writes[rule].toArray();
+    }
+
+    boolean isInCycle(int rule) {
+        return inCycle[rule];
+    }
+
+    /**
+     * Removes rules(flags by index in insertion order) from execution order. Other rules keep their order, so the result
+     * does not depend on constraints that only the removed rules added. Removed rules must not be in cycles.
+     */
+    void removeRules(boolean[] removed) {
+        int[] keptOrder = new int[order.length];
+        int[][] keptRuleObjects = new int[order.length][];
+        orderedRules.clear();
+        int keptCount = 0;
+        for (int position = 0; position < order.length; position++) {
+            int rule = order[position];
+            if (!removed[rule]) {
+                keptOrder[keptCount] = rule;
+                keptRuleObjects[keptCount] = ruleObjects[position];
+                orderedRules.add(rules.get(rule));
+                keptCount++;
+            }
+        }
+        order = Arrays.copyOf(keptOrder, keptCount);
+        ruleObjects = Arrays.copyOf(keptRuleObjects, keptCount);
+    }
+
+    static int readAxes(Edge edge) {
+        switch (edge) {
+            case LEFT:
+            case RIGHT:
+            case WIDTH:
+            case HOR_CENTER:
+                return HORIZONTAL;
+            case TOP:
+            case BOTTOM:
+            case HEIGHT:
+            case VER_CENTER:
+                return VERTICAL;
+            case BASELINE:
+                //baseline depends on width and height of the component
+                return HORIZONTAL | VERTICAL;
+            default:
+                throw new RuntimeException("Unknown edge " + edge);
+        }
+    }
+
+    static int writeAxes(Edge edge) {
+        return edge == Edge.BASELINE ? VERTICAL : readAxes(edge);
+    }
+
+    /**
+     * Group can only be moved, it does not support changing width/height/baseline
+     */
+    static int groupMoveAxes(Edge edge) {
+        switch (edge) {
+            case LEFT:
+            case RIGHT:
+            case HOR_CENTER:
+                return HORIZONTAL;
+            case TOP:
+            case BOTTOM:
+            case VER_CENTER:
+                return VERTICAL;
+            default:
+                return 0;
+        }
+    }
+
+    private void build() {
+        int ruleCount = rules.size();
+        //objects get indexes first, so nodes of read groups can follow nodes of all objects
+        for (Rule rule : rules) {
+            registerObjects(rule.getAnchorComponent());
+            registerObjects(rule.getComponent());
+        }
+        objectNodeCount = objectIndexes.size() * 2;
+        reads = new IntList[ruleCount];
+        writes = new IntList[ruleCount];
+        anchorNodeCount = new int[ruleCount];
+        for (int i = 0; i < ruleCount; i++) {
+            Rule rule = rules.get(i);
+            reads[i] = new IntList(4);
+            writes[i] = new IntList(2);
+            Object anchor = RuleLayoutCalculationEngine.unwrapComponentWrapper(rule.getAnchorComponent());
+            if (anchor instanceof LayoutGroup) {
+                addNodes(objectIndexes.size() + getReadGroupIndex((LayoutGroup<?>) anchor), readAxes(rule.getAnchorEdge()), reads[i]);
+            } else {
+                collectNodes(anchor, readAxes(rule.getAnchorEdge()), reads[i]);
+            }
+            anchorNodeCount[i] = reads[i].size();
+            Object target = RuleLayoutCalculationEngine.unwrapComponentWrapper(rule.getComponent());
+            if (target instanceof LayoutGroup) {
+                //group movement uses current bounds of the group
+                int axes = groupMoveAxes(rule.getEdge());
+                collectNodes(target, axes, reads[i]);
+                collectNodes(target, axes, writes[i]);
+            } else {
+                //moving one edge depends on state of other edges of the same component
+                collectNodes(target, readAxes(rule.getEdge()), reads[i]);
+                collectNodes(target, writeAxes(rule.getEdge()), writes[i]);
+            }
+        }
+        buildGroupNodes();
+
+        int nodeCount = getNodeCount();
+        int[] lastWriter = new int[nodeCount];
+        Arrays.fill(lastWriter, -1);
+        for (int i = 0; i < ruleCount; i++) {
+            for (int j = 0; j < writes[i].size(); j++) {
+                lastWriter[writes[i].get(j)] = i;
+            }
+        }
+
+        //rules are vertices 0..ruleCount - 1, nodes of read groups are next vertices
+        int vertexCount = ruleCount + nodeCount - objectNodeCount;
+        IntList[] successors = new IntList[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            successors[i] = new IntList(2);
+        }
+        int[] linkedTo = new int[vertexCount];
+        Arrays.fill(linkedTo, -1);
+        for (int node = 0; node < objectNodeCount; node++) {
+            for (int groupNode : groupNodes[node]) {
+                link(lastWriter[node], ruleCount + groupNode - objectNodeCount, successors, linkedTo);
+            }
+        }
+        int[] runningWriter = new int[nodeCount];
+        Arrays.fill(runningWriter, -1);
+        int[] writtenBy = new int[nodeCount];
+        Arrays.fill(writtenBy, -1);
+        for (int i = 0; i < ruleCount; i++) {
+            //rules that move the same edge keep insertion order
+            for (int j = 0; j < writes[i].size(); j++) {
+                int node = writes[i].get(j);
+                writtenBy[node] = i;
+                link(runningWriter[node], i, successors, linkedTo);
+            }
+            //rule that only reads the edge should see the final edge position
+            for (int j = 0; j < reads[i].size(); j++) {
+                int node = reads[i].get(j);
+                if (node >= objectNodeCount) {
+                    linkGroupReader(i, node, lastWriter, writtenBy, successors, linkedTo);
+                } else if (writtenBy[node] != i) {
+                    link(lastWriter[node], i, successors, linkedTo);
+                }
+            }
+            for (int j = 0; j < writes[i].size(); j++) {
+                runningWriter[writes[i].get(j)] = i;
+            }
+        }
+
+        int[] sccOfVertex = findStronglyConnectedComponents(successors);
+        sortStronglyConnectedComponents(sccOfVertex, successors, ruleCount);
+        buildObjectIndex(reads, writes, sccOfVertex);
+    }
+
+    /**
+     * Rule goes after the node of the group it reads. Rule that moves a member of the group, which is moved again by a later rule,
+     * should not wait for that later rule, so it is linked to last writers of the other members directly.
+     */
+    private void linkGroupReader(int rule, int groupNode, int[] lastWriter, int[] writtenBy, IntList[] successors, int[] linkedTo) {
+        boolean movesMemberMovedLater = false;
+        for (int j = 0; j < writes[rule].size() && !movesMemberMovedLater; j++) {
+            int node = writes[rule].get(j);
+            if (lastWriter[node] != rule) {
+                for (int containingGroupNode : groupNodes[node]) {
+                    movesMemberMovedLater |= containingGroupNode == groupNode;
+                }
+            }
+        }
+        if (!movesMemberMovedLater) {
+            link(rules.size() + groupNode - objectNodeCount, rule, successors, linkedTo);
+            return;
+        }
+        for (int leafIndex : getGroupLeafIndexes(readGroups[(groupNode - objectNodeCount) >> 1])) {
+            int node = leafIndex * 2 + (groupNode & 1);
+            if (writtenBy[node] != rule) {
+                link(lastWriter[node], rule, successors, linkedTo);
+            }
+        }
+    }
+
+    private void buildGroupNodes() {
+        readGroups = new LayoutGroup<?>[readGroupIndexes.size()];
+        for (Map.Entry<LayoutGroup<?>, Integer> entry : readGroupIndexes.entrySet()) {
+            readGroups[entry.getValue()] = entry.getKey();
+        }
+        IntList[] groupsOfNode = new IntList[objectNodeCount];
+        for (int group = 0; group < readGroups.length; group++) {
+            for (int leafIndex : getGroupLeafIndexes(readGroups[group])) {
+                for (int axis = 0; axis < 2; axis++) {
+                    int node = leafIndex * 2 + axis;
+                    if (groupsOfNode[node] == null) {
+                        groupsOfNode[node] = new IntList(1);
+                    }
+                    groupsOfNode[node].add(objectNodeCount + group * 2 + axis);
+                }
+            }
+        }
+        int[] noGroups = new int[0];
+        groupNodes = new int[objectNodeCount][];
+        for (int node = 0; node < objectNodeCount; node++) {
+            groupNodes[node] = groupsOfNode[node] == null ? noGroups : groupsOfNode[node].toArray();
+        }
+    }
+
+    private void buildObjectIndex(IntList[] reads, IntList[] writes, int[] sccOfRule) {
+        int ruleCount = order.length;
+        objects = new Object[objectIndexes.size()];
+        for (Map.Entry<Object, Integer> entry : objectIndexes.entrySet()) {
+            objects[entry.getValue()] = entry.getKey();
+        }
+
+        //only rules are counted, node of a group read by the rule does not make a cycle
+        int[] sccSize = new int[sccOfRule.length];
+        for (int rule = 0; rule < ruleCount; rule++) {
+            sccSize[sccOfRule[rule]]++;
+        }
+        inCycle = new boolean[ruleCount];
+        for (int rule = 0; rule < ruleCount; rule++) {
+            inCycle[rule] = sccSize[sccOfRule[rule]] > 1;
+        }
+        ruleObjects = new int[ruleCount][];
+        Map<Integer, IntList> cycleObjects = new HashMap<>();
+        int[] usedBy = new int[objects.length + readGroups.length];
+        Arrays.fill(usedBy, -1);
+        for (int position = 0; position < ruleCount; position++) {
+            int rule = order[position];
+            IntList used = new IntList(2);
+            for (IntList nodes : new IntList[]{reads[rule], writes[rule]}) {
+                for (int j = 0; j < nodes.size(); j++) {
+                    int object = nodes.get(j) >> 1;
+                    if (usedBy[object] != position) {
+                        usedBy[object] = position;
+                        used.add(object);
+                    }
+                }
+            }
+            ruleObjects[position] = used.toArray();
+            if (sccSize[sccOfRule[rule]] > 1) {
+                IntList objectsOfCycle = cycleObjects.computeIfAbsent(sccOfRule[rule], k -> new IntList());
+                for (int object : ruleObjects[position]) {
+                    objectsOfCycle.add(object);
+                }
+            }
+        }
+
+        //all rules of the cycle share one array of distinct objects, cycle through a big group would be quadratic otherwise
+        Map<Integer, int[]> distinctCycleObjects = new HashMap<>();
+        boolean[] collected = new boolean[objects.length + readGroups.length];
+        for (Map.Entry<Integer, IntList> entry : cycleObjects.entrySet()) {
+            IntList objectsOfCycle = entry.getValue();
+            IntList distinct = new IntList();
+            for (int j = 0; j < objectsOfCycle.size(); j++) {
+                int object = objectsOfCycle.get(j);
+                if (!collected[object]) {
+                    collected[object] = true;
+                    distinct.add(object);
+                }
+            }
+            int[] distinctObjects = distinct.toArray();
+            for (int object : distinctObjects) {
+                collected[object] = false;
+            }
+            distinctCycleObjects.put(entry.getKey(), distinctObjects);
+        }
+        for (int position = 0; position < ruleCount; position++) {
+            int[] objectsOfCycle = distinctCycleObjects.get(sccOfRule[order[position]]);
+            if (objectsOfCycle != null) {
+                ruleObjects[position] = objectsOfCycle;
+            }
+        }
+    }
+
+    private void link(int from, int to, IntList[] successors, int[] linkedTo) {
+        if (from < 0 || from == to || linkedTo[from] == to) {
+            return;
+        }
+        linkedTo[from] = to;
+        successors[from].add(to);
+    }
+
+    private void collectNodes(Object object, int axes, IntList nodes) {
+        object = RuleLayoutCalculationEngine.unwrapComponentWrapper(object);
+        if (object instanceof LayoutGroup) {
+            for (int leafIndex : getGroupLeafIndexes((LayoutGroup<?>) object)) {
+                addNodes(leafIndex, axes, nodes);
+            }
+        } else {
+            addNodes(getObjectIndex(object), axes, nodes);
+        }
+    }
+
+    private void addNodes(int objectIndex, int axes, IntList nodes) {
+        if ((axes & HORIZONTAL) != 0) {
+            nodes.add(objectIndex * 2);
+        }
+        if ((axes & VERTICAL) != 0) {
+            nodes.add(objectIndex * 2 + 1);
+        }
+    }
+
+    private void registerObjects(Object object) {
+        object = RuleLayoutCalculationEngine.unwrapComponentWrapper(object);
+        if (object instanceof LayoutGroup) {
+            getGroupLeafIndexes((LayoutGroup<?>) object);
+        } else {
+            getObjectIndex(object);
+        }
+    }
+
+    private int getReadGroupIndex(LayoutGroup<?> group) {
+        Integer index = readGroupIndexes.get(group);
+        if (index == null) {
+            index = readGroupIndexes.size();
+            readGroupIndexes.put(group, index);
+        }
+        return index;
+    }
+
+    private int getObjectIndex(Object object) {
+        Integer index = objectIndexes.get(object);
+        if (index == null) {
+            index = objectIndexes.size();
+            objectIndexes.put(object, index);
+        }
+        return index;
+    }
+
+    /**
+     * Indexes of objects(see {@link #getObjects()}) that are members of the group or its nested groups
+     */
+    int[] getGroupLeafIndexes(LayoutGroup<?> group) {
+        int[] leafIndexes = groupLeafIndexes.get(group);
+        if (leafIndexes == null) {
+            IntList leafs = new IntList();
+            collectGroupLeafs(group, leafs, new IdentityHashMap<>());
+            leafIndexes = leafs.toArray();
+            groupLeafIndexes.put(group, leafIndexes);
+        }
+        return leafIndexes;
+    }
+
+    private void collectGroupLeafs(LayoutGroup<?> group, IntList leafs, Map<Object, Boolean> visited) {
+        if (visited.put(group, Boolean.TRUE) != null) {
+            return;
+        }
+        for (ComponentWrapper<?> child : group.getChildren()) {
+            Object object = RuleLayoutCalculationEngine.unwrapComponentWrapper(child);
+            if (object instanceof LayoutGroup) {
+                collectGroupLeafs((LayoutGroup<?>) object, leafs, visited);
+            } else if (visited.put(object, Boolean.TRUE) == null) {
+                leafs.add(getObjectIndex(object));
+            }
+        }
+    }
+
+    /**
+     * Iterative Tarjan algorithm, returns index of strongly connected component for every vertex
+     */
+    private int[] findStronglyConnectedComponents(IntList[] successors) {
+        int count = successors.length;
+        int[] index = new int[count];
+        int[] lowLink = new int[count];
+        int[] scc = new int[count];
+        boolean[] onStack = new boolean[count];
+        int[] stack = new int[count];
+        int[] callStack = new int[count];
+        int[] edgePosition = new int[count];
+        Arrays.fill(index, -1);
+        int stackSize = 0;
+        int nextIndex = 0;
+        int nextScc = 0;
+        for (int root = 0; root < count; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+            int callStackSize = 0;
+            callStack[callStackSize++] = root;
+            index[root] = lowLink[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            edgePosition[root] = 0;
+            while (callStackSize > 0) {
+                int node = callStack[callStackSize - 1];
+                if (edgePosition[node] < successors[node].size()) {
+                    int next = successors[node].get(edgePosition[node]++);
+                    if (index[next] == -1) {
+                        index[next] = lowLink[next] = nextIndex++;
+                        stack[stackSize++] = next;
+                        onStack[next] = true;
+                        edgePosition[next] = 0;
+                        callStack[callStackSize++] = next;
+                    } else if (onStack[next]) {
+                        lowLink[node] = Math.min(lowLink[node], index[next]);
+                    }
+                } else {
+                    callStackSize--;
+                    if (callStackSize > 0) {
+                        int parentNode = callStack[callStackSize - 1];
+                        lowLink[parentNode] = Math.min(lowLink[parentNode], lowLink[node]);
+                    }
+                    if (lowLink[node] == index[node]) {
+                        int member;
+                        do {
+                            member = stack[--stackSize];
+                            onStack[member] = false;
+                            scc[member] = nextScc;
+                        } while (member != node);
+                        nextScc++;
+                    }
+                }
+            }
+        }
+        return scc;
+    }
+
+    /**
+     * Topological sort of strongly connected components. If several components are ready, the one that contains
+     * the earliest added rule goes first, so already correctly ordered rules keep their order.
+     * Components of group nodes only go first, they have no rules to execute.
+     */
+    private void sortStronglyConnectedComponents(int[] sccOfVertex, IntList[] successors, int ruleCount) {
+        int sccCount = 0;
+        for (int scc : sccOfVertex) {
+            sccCount = Math.max(sccCount, scc + 1);
+        }
+        IntList[] members = new IntList[sccCount];
+        int[] inDegree = new int[sccCount];
+        for (int i = 0; i < sccCount; i++) {
+            members[i] = new IntList(1);
+        }
+        for (int vertex = 0; vertex < sccOfVertex.length; vertex++) {
+            members[sccOfVertex[vertex]].add(vertex);
+            for (int j = 0; j < successors[vertex].size(); j++) {
+                int next = successors[vertex].get(j);
+                if (sccOfVertex[next] != sccOfVertex[vertex]) {
+                    inDegree[sccOfVertex[next]]++;
+                }
+            }
+        }
+
+        //members are filled in insertion order and rules go before group nodes, so first member is the earliest rule of component
+        int[] firstRule = new int[sccCount];
+        int[] ruleMemberCount = new int[sccCount];
+        for (int i = 0; i < sccCount; i++) {
+            firstRule[i] = members[i].get(0) < ruleCount ? members[i].get(0) : -1;
+        }
+        for (int rule = 0; rule < ruleCount; rule++) {
+            ruleMemberCount[sccOfVertex[rule]]++;
+        }
+        PriorityQueue<Integer> ready = new PriorityQueue<>(Math.max(sccCount, 1), (a, b) -> Integer.compare(firstRule[a], firstRule[b]));
+        for (int i = 0; i < sccCount; i++) {
+            if (inDegree[i] == 0) {
+                ready.add(i);
+            }
+        }
+        order = new int[ruleCount];
+        int position = 0;
+        while (!ready.isEmpty()) {
+            int scc = ready.poll();
+            IntList sccMembers = members[scc];
+            if (ruleMemberCount[scc] > 1) {
+                List<Rule> cycle = new ArrayList<>(ruleMemberCount[scc]);
+                for (int j = 0; j < ruleMemberCount[scc]; j++) {
+                    cycle.add(rules.get(sccMembers.get(j)));
+                }
+                cycles.add(cycle);
+            }
+            for (int j = 0; j < sccMembers.size(); j++) {
+                int vertex = sccMembers.get(j);
+                if (vertex < ruleCount) {
+                    order[position++] = vertex;
+                    orderedRules.add(rules.get(vertex));
+                }
+                for (int k = 0; k < successors[vertex].size(); k++) {
+                    int next = sccOfVertex[successors[vertex].get(k)];
+                    if (next != scc && --inDegree[next] == 0) {
+                        ready.add(next);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,17 +1,54 @@
 package com.swinglayoutbuilder.rulelayout;
 
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.LayoutManager2;
 import java.awt.Rectangle;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 @SuppressWarnings("UnusedReturnValue")
 public class RuleLayout implements LayoutManager2 {
+    /**
+     * Properties of child components that can change preferred/minimum size or baseline
+     */
+    private static final Set<String> SIZE_PROPERTIES = new HashSet<>(Arrays.asList(
+            "preferredSize", "minimumSize", "font", "text", "icon", "border", "iconTextGap",
+            "horizontalTextPosition", "verticalTextPosition", "columns", "rows", "margin"));
 
     private final RuleLayoutCalculationEngine engine;
     private final ComponentActionsWrapper componentActionsWrapper;
+    private final PropertyChangeListener childPropertyListener;
+    //ticks of frames while layouts are coalesced, null if every layoutContainer call is calculated immediately
+    private Timer frameTimer;
+    //layout was already calculated in current frame
+    private boolean laidOutInFrame;
+    //layout was requested in current frame after it was already calculated
+    private boolean layoutPending;
+    //layout of the frame tick is running, so it should not be coalesced
+    private boolean frameLayout;
+    //invalidateLayout was called and the container is not laid out yet
+    private boolean invalidated;
+    //invalid children were already looked up since invalidateLayout
+    private boolean invalidChildrenFound;
+    //layout was applied by ParallelLayoutValidator, the next layoutContainer only lets Swing mark the container valid
+    private boolean detachedLayoutApplied;
+    //invalidateLayout was called without resize of the parent, so it was not only the resize that invalidated the container
+    private boolean invalidatedExplicitly;
+    //size of the parent at the last invalidateLayout or size or layout request, resize of the parent also calls invalidateLayout
+    private int knownWidth = -1;
+    private int knownHeight = -1;
 
     public RuleLayout(Container parent) {
         componentActionsWrapper = new ComponentActionsWrapper() {
@@ -28,16 +65,47 @@ public class RuleLayout implements LayoutManager2 {
                 }
             }
 
+            /**
+             * Component itself or null if it is a group. Used by methods called on every layout, which should not allocate memory
+             */
+            private Component toComponent(Object component) {
+                if (component instanceof ComponentWrapper) {
+                    ComponentWrapper<Component> wrapper = (ComponentWrapper<Component>) component;
+                    return wrapper.isGroup() ? null : wrapper.getComponent();
+                }
+                return (Component) component;
+            }
+
             @Override
             public Rectangle getComponentRect(Object component) {
                 return (Rectangle) map(component, LayoutGroup::getRect, Component::getBounds);
             }
 
+            @Override
+            public int getComponentWidth(Object component) {
+                Component c = toComponent(component);
+                return c == null ? getComponentRect(component).width : c.getWidth();
+            }
+
+            @Override
+            public int getComponentHeight(Object component) {
+                Component c = toComponent(component);
+                return c == null ? getComponentRect(component).height : c.getHeight();
+            }
+
             @Override
             public int getBaseLine(Object component, int width, int height) {
-                return (int) map(component, (g) -> {
+                Component c = toComponent(component);
+                if (c == null) {
                     throw new IllegalArgumentException("Cannot get base line from group");
-                }, (c) -> c.getBaseline(width, height));
+                }
+                return c.getBaseline(width, height);
+            }
+
+            @Override
+            public Component.BaselineResizeBehavior getBaselineResizeBehavior(Object component) {
+                return (Component.BaselineResizeBehavior) map(component,
+                        (g) -> Component.BaselineResizeBehavior.OTHER, Component::getBaselineResizeBehavior);
             }
 
             @Override
@@ -48,6 +116,14 @@ public class RuleLayout implements LayoutManager2 {
                 });
             }
 
+            @Override
+            public void setComponentBounds(Object component, int x, int y, int width, int height) {
+                Component c = toComponent(component);
+                if (c != null) {
+                    c.setBounds(x, y, width, height);
+                }
+            }
+
             @Override
             public Object[] getChildren(Object component) {
                 return (Object[]) map(component, LayoutGroup::getChildren, (c) -> ((Container) c).getComponents());
@@ -80,6 +156,40 @@ public class RuleLayout implements LayoutManager2 {
             }
         };
         engine = new RuleLayoutCalculationEngine(parent, componentActionsWrapper);
+        childPropertyListener = event -> {
+            if (SIZE_PROPERTIES.contains(event.getPropertyName())) {
+                engine.invalidateComponent(event.getSource());
+            }
+        };
+        for (Component child : parent.getComponents()) {
+            child.addPropertyChangeListener(childPropertyListener);
+        }
+    }
+
+    /**
+     * Layout that takes rules, groups and settings from the blueprint, see {@link RuleLayoutBlueprint#createLayout(Container)}
+     */
+    public RuleLayout(Container parent, RuleLayoutBlueprint blueprint) {
+        this(parent);
+        engine.bindBlueprint(blueprint);
+    }
+
+    RuleLayoutCalculationEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Compiles rules of this layout for slots of current children, so they can be shared by other containers with the same children
+     */
+    public RuleLayoutBlueprint createBlueprint() {
+        return engine.createBlueprint();
+    }
+
+    /**
+     * Blueprint with stable ids of children, which can be stored in {@link RuleLayoutArchive} and bound to components by id
+     */
+    public RuleLayoutBlueprint createBlueprint(Map<? extends Component, String> childIds) {
+        return engine.createBlueprint(childIds);
     }
 
     public LayoutGroup<Component> createGroup() {
@@ -91,11 +201,98 @@ public class RuleLayout implements LayoutManager2 {
         return this;
     }
 
+    /**
+     * Form is placed before rules are executed, see {@link LayoutForm}
+     */
+    public RuleLayout addForm(LayoutForm form) {
+        engine.addForm(form);
+        return this;
+    }
+
+    public RuleLayout setRuleCycleHandler(Consumer<List<Rule>> ruleCycleHandler) {
+        engine.setRuleCycleHandler(ruleCycleHandler);
+        return this;
+    }
+
+    /**
+     * Remove no-op, duplicate and overridden rules before first calculation, enabled by default, see {@link #getRemovedRules()}
+     */
+    public RuleLayout setRuleOptimization(boolean ruleOptimization) {
+        engine.setRuleOptimization(ruleOptimization);
+        return this;
+    }
+
+    /**
+     * Rules that were removed because they cannot change the layout, orders the rules if they were changed
+     */
+    public List<RemovedRule> getRemovedRules() {
+        return engine.getRemovedRules();
+    }
+
+    /**
+     * Solve rules together as linear constraints with priorities(see {@link Rule#getPriority()}) instead of executing them
+     * one by one. Rules can form cycles and conflict with each other, resize of the parent is solved incrementally.
+     * Groups cannot be used in rules and forms cannot be added in solver mode.
+     */
+    public RuleLayout setSolverMode(boolean solverMode) {
+        engine.setSolverMode(solverMode);
+        return this;
+    }
+
     public RuleLayout setPadding(int left, int top, int right, int bottom) {
         engine.setPadding(left, top, right, bottom);
         return this;
     }
 
+    /**
+     * For containers used as cell renderers of lists and tables: layouts of cells whose children have the same preferred sizes
+     * reuse bounds solved for the first of them, without executing rules. Scrolled cells usually repeat a few size combinations.
+     *
+     * @param cacheSize number of remembered size combinations, 0 turns renderer mode off
+     */
+    public RuleLayout setRendererMode(int cacheSize) {
+        engine.setRendererMode(cacheSize);
+        return this;
+    }
+
+    /**
+     * Number of preferredLayoutSize/minimumLayoutSize/maximumLayoutSize calls
+     */
+    public long getSizeRequestCount() {
+        return engine.getSizeRequestCount();
+    }
+
+    /**
+     * Number of preferredLayoutSize/minimumLayoutSize/maximumLayoutSize calls answered from cache
+     */
+    public long getSizeCacheHitCount() {
+        return engine.getSizeCacheHitCount();
+    }
+
+    /**
+     * Counters of passes, executed rules, queries to children and time spent in this layout
+     */
+    public LayoutMetrics getMetrics() {
+        return engine.getMetrics();
+    }
+
+    /**
+     * Makes metrics of this layout visible through JMX, see {@link LayoutMetricsRegistry}
+     */
+    public RuleLayout registerMetrics(String containerName) {
+        LayoutMetricsRegistry.getInstance().register(containerName, engine.getMetrics());
+        return this;
+    }
+
+    /**
+     * Records rules and every pass of this layout to the trace, that can be replayed by {@link LayoutTraceReplayer}.
+     * Null stops recording
+     */
+    public RuleLayout setTraceRecorder(LayoutTraceRecorder traceRecorder) {
+        engine.setTraceRecorder(traceRecorder);
+        return this;
+    }
+
     public void setPreferredSize(Object component, Dimension dimension) {
         componentActionsWrapper.setPreferredSize(component, dimension);
     }
@@ -114,14 +311,20 @@ public class RuleLayout implements LayoutManager2 {
 
     @Override
     public void addLayoutComponent(Component comp, Object rule) {
+        comp.addPropertyChangeListener(childPropertyListener);
+        engine.childrenChanged();
     }
 
     @Override
     public void addLayoutComponent(String name, Component comp) {
+        comp.addPropertyChangeListener(childPropertyListener);
+        engine.childrenChanged();
     }
 
     @Override
     public void removeLayoutComponent(Component comp) {
+        comp.removePropertyChangeListener(childPropertyListener);
+        engine.childrenChanged();
     }
 
     @Override
@@ -134,33 +337,184 @@ public class RuleLayout implements LayoutManager2 {
         return 0;
     }
 
+    /**
+     * Swing invalidates the container when the first child is invalidated, children invalidated after it do not call this method
+     * again until the container is validated. So invalid children are looked up on every size or layout request until the next
+     * layout, and only they are recalculated. If no child is invalid and this method was called at least once without resize of
+     * the container, the container itself was invalidated and everything is recalculated.
+     * Changes of components that are not displayable yet cannot be tracked, so they are always recalculated.
+     */
     @Override
     public void invalidateLayout(Container target) {
-        engine.invalidate();
+        invalidated = true;
+        detachedLayoutApplied = false;
+        //children resized by the frame tick invalidate the container, but their sizes are not changed
+        invalidChildrenFound = frameLayout;
+        //resize of the container calls this method after the new size is set
+        invalidatedExplicitly |= !updateKnownSize();
+    }
+
+    /**
+     * @return true if the size of the parent was changed since the last call
+     */
+    private boolean updateKnownSize() {
+        Container parent = (Container) engine.getParent();
+        boolean resized = parent.getWidth() != knownWidth || parent.getHeight() != knownHeight;
+        knownWidth = parent.getWidth();
+        knownHeight = parent.getHeight();
+        return resized;
+    }
+
+    private void invalidateChangedChildren() {
+        Container parent = (Container) engine.getParent();
+        updateKnownSize();
+        if (!invalidated) {
+            return;
+        }
+        for (int i = 0, count = parent.getComponentCount(); i < count; i++) {
+            Component child = parent.getComponent(i);
+            if (!child.isValid()) {
+                engine.invalidateComponent(child);
+                invalidChildrenFound = true;
+            }
+        }
+        if (!invalidChildrenFound) {
+            if (invalidatedExplicitly) {
+                engine.invalidate();
+            }
+            invalidChildrenFound = true;
+        }
+        invalidatedExplicitly = false;
     }
 
     @Override
     public Dimension maximumLayoutSize(Container parent) {
         checkParent(parent);
+        invalidateChangedChildren();
         return engine.getPreferredSize();
     }
 
     @Override
     public Dimension preferredLayoutSize(Container parent) {
         checkParent(parent);
+        invalidateChangedChildren();
         return engine.getPreferredSize();
     }
 
     @Override
     public Dimension minimumLayoutSize(Container parent) {
         checkParent(parent);
+        invalidateChangedChildren();
         return engine.getMinimumSize();
     }
 
+    /**
+     * Coalesces layouts to at most one per frame, useful for heavy panels during live resize of the window: if Swing requests
+     * layout several times between frames, only the first request is calculated immediately, and the last one is calculated
+     * on the next frame tick. When resizing stops, the last tick calculates exact layout for the final size.
+     *
+     * @param framesPerSecond rate of frame ticks, 0 to calculate every layout immediately
+     */
+    public RuleLayout setFrameCoalescing(int framesPerSecond) {
+        if (framesPerSecond < 0) {
+            throw new IllegalArgumentException("Frames per second should be >= 0, but was " + framesPerSecond);
+        }
+        if (frameTimer != null) {
+            frameTimer.stop();
+            frameTimer = null;
+        }
+        laidOutInFrame = false;
+        if (layoutPending) {
+            layoutPending = false;
+            engine.layoutContainer();
+        }
+        if (framesPerSecond > 0) {
+            frameTimer = new Timer(Math.max(1, 1000 / framesPerSecond), e -> onFrameTick());
+        }
+        return this;
+    }
+
+    private void onFrameTick() {
+        laidOutInFrame = false;
+        if (!layoutPending) {
+            //nothing was requested during the whole frame, resizing is finished
+            frameTimer.stop();
+            return;
+        }
+        layoutPending = false;
+        Container parent = (Container) engine.getParent();
+        frameLayout = true;
+        try {
+            invalidateChangedChildren();
+            engine.layoutContainer();
+            if (parent.isDisplayable()) {
+                //only children resized by this layout are laid out, the container keeps its calculated rules and sizes
+                for (int i = 0, count = parent.getComponentCount(); i < count; i++) {
+                    Component child = parent.getComponent(i);
+                    if (!child.isValid()) {
+                        child.validate();
+                    }
+                }
+            }
+        } finally {
+            frameLayout = false;
+        }
+        laidOutInFrame = true;
+    }
+
     @Override
     public void layoutContainer(Container parent) {
         checkParent(parent);
+        if (detachedLayoutApplied) {
+            detachedLayoutApplied = false;
+            return;
+        }
+        invalidateChangedChildren();
+        invalidated = false;
+        if (frameTimer == null || frameLayout) {
+            engine.layoutContainer();
+            return;
+        }
+        if (laidOutInFrame) {
+            layoutPending = true;
+            return;
+        }
         engine.layoutContainer();
+        laidOutInFrame = true;
+        if (!frameTimer.isRunning()) {
+            frameTimer.start();
+        }
+    }
+
+    /**
+     * Reads sizes of children on the calling thread(should be the event dispatch thread), calculates the layout with
+     * solveExecutor and sets bounds of children on the event dispatch thread. The result is dropped if children, their sizes or
+     * size of the parent are changed before it is applied, in such case the container is already invalid and will be laid out again.
+     *
+     * @return future that is completed with true when bounds are set, or with false if the result was dropped
+     */
+    public CompletableFuture<Boolean> layoutContainerAsync(Executor solveExecutor) {
+        invalidateChangedChildren();
+        invalidated = false;
+        return engine.layoutContainerAsync(solveExecutor, SwingUtilities::invokeLater);
+    }
+
+    /**
+     * Reads changed children and their sizes for {@link ParallelLayoutValidator}, the layout is then calculated by the engine
+     * on other thread
+     */
+    void prepareDetachedLayout() {
+        invalidateChangedChildren();
+        invalidated = false;
+        engine.prepareDetachedLayout();
+    }
+
+    /**
+     * Bounds of children are already set by {@link ParallelLayoutValidator}, so validation of the container does not lay it out again
+     */
+    void setDetachedLayoutApplied() {
+        //container without peer is not validated by Swing
+        detachedLayoutApplied = ((Container) engine.getParent()).isDisplayable();
     }
 
     private void checkParent(Container container) {
@@ -0,0 +1,154 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named layout blueprints stored in one binary file, so layouts of many dialogs are built once at build time and only read at
+ * startup. The file is memory-mapped by {@link #open(Path)}, and an entry is decoded and compiled on first
+ * {@link #getBlueprint(String)}, other entries are not touched. Blueprints are bound to components by ids of children, see
+ * {@link RuleLayoutBlueprint#createLayout(java.awt.Container, Map)}.<br>
+ * Format(big-endian):
+ * <pre>
+ * int magic 0x524C4241("RLBA"), int version, int entry count
+ * entry index: string name, int offset from start of the file, int length   sorted by name
+ * entries:
+ *   int child count, byte flags(1 solver mode, 2 rule optimization), int padding left, top, right, bottom
+ *   string id of every child
+ *   int group count, per group: int member count, member refs
+ *   int rule count, per rule: int anchor ref, byte anchor edge, int offset, int ref, byte edge, byte priority
+ *   int form count, per form: int label to field distance, int rows gap, byte labels aligned left,
+ *     int row count, per row: int label ref, int field ref, byte alignment edge
+ *   int anchor count, per anchor: int child ref, byte edges(1 left, 2 top, 4 right, 8 bottom), float multipliers left, top, right, bottom
+ * </pre>
+ * Strings are int length of UTF-8 bytes(-1 for null) and the bytes. Refs are 0 for the parent, 1..child count for children and
+ * next numbers for groups, edges and priorities are ordinals of {@link Edge} and {@link RulePriority}.
+ */
+public final class RuleLayoutArchive {
+    static final int MAGIC = 0x524C4241;
+    static final int VERSION = 2;
+
+    private final ByteBuffer buffer;
+    private final Map<String, int[]> entries = new LinkedHashMap<>();
+    private final Map<String, RuleLayoutBlueprint> blueprints = new ConcurrentHashMap<>();
+
+    private RuleLayoutArchive(ByteBuffer buffer) {
+        this.buffer = buffer;
+        ByteBuffer in = buffer.duplicate();
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a rule layout archive");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported rule layout archive version " + version);
+        }
+        try {
+            for (int i = in.getInt(); i > 0; i--) {
+                byte[] name = new byte[in.getInt()];
+                in.get(name);
+                int offset = in.getInt();
+                int length = in.getInt();
+                if (offset < 0 || length < 0 || offset > buffer.limit() - length) {
+                    throw new IllegalArgumentException("Entry is outside of rule layout archive");
+                }
+                entries.put(new String(name, StandardCharsets.UTF_8), new int[]{offset, length});
+            }
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Damaged index of rule layout archive", e);
+        }
+    }
+
+    /**
+     * Maps the file to memory, the file should not be changed while the archive is used
+     */
+    public static RuleLayoutArchive open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new RuleLayoutArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Archive from bytes that are already in memory, for example read from a resource of the application
+     */
+    public static RuleLayoutArchive read(ByteBuffer bytes) {
+        return new RuleLayoutArchive(bytes.slice());
+    }
+
+    public static void write(Path file, Map<String, RuleLayoutBlueprint> blueprints) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            write(out, blueprints);
+        }
+    }
+
+    public static void write(OutputStream out, Map<String, RuleLayoutBlueprint> blueprints) throws IOException {
+        Map<String, byte[]> encoded = new TreeMap<>();
+        int indexSize = 12;
+        for (Map.Entry<String, RuleLayoutBlueprint> entry : blueprints.entrySet()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream entryOut = new DataOutputStream(bytes);
+            entry.getValue().write(entryOut);
+            entryOut.flush();
+            encoded.put(entry.getKey(), bytes.toByteArray());
+            indexSize += 12 + entry.getKey().getBytes(StandardCharsets.UTF_8).length;
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(encoded.size());
+        int offset = indexSize;
+        for (Map.Entry<String, byte[]> entry : encoded.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            data.writeInt(name.length);
+            data.write(name);
+            data.writeInt(offset);
+            data.writeInt(entry.getValue().length);
+            offset += entry.getValue().length;
+        }
+        for (byte[] entry : encoded.values()) {
+            data.write(entry);
+        }
+        data.flush();
+    }
+
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Blueprint of the entry, decoded and compiled on first request
+     */
+    public RuleLayoutBlueprint getBlueprint(String name) {
+        int[] entry = entries.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("Cannot find layout with name=" + name);
+        }
+        return blueprints.computeIfAbsent(name, key -> decode(key, entry[0], entry[1]));
+    }
+
+    private RuleLayoutBlueprint decode(String name, int offset, int length) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(offset);
+        in.limit(offset + length);
+        try {
+            return RuleLayoutBlueprint.read(in.slice());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Damaged entry " + name + " of rule layout archive", e);
+        }
+    }
+}
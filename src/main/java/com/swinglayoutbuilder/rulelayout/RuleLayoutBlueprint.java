@@ -0,0 +1,439 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Insets;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rules of a layout compiled once for many containers with the same children, like detail panels of records of one type.<br>
+ * Rules and groups of the blueprint reference slots instead of components: the parent and the children by their index in the
+ * container. Rules are ordered, optimized and compiled when the blueprint is created, and the blueprint is not changed after that,
+ * so it can be shared by containers on any thread. Layout created by {@link #createLayout(Container)} keeps only slots, sizes and
+ * positions of its own children.<br>
+ * Children can have stable ids, then the blueprint can be stored in {@link RuleLayoutArchive} and bound to components by id,
+ * see {@link #createLayout(Container, Map)}.
+ */
+public final class RuleLayoutBlueprint {
+    private final CompiledRuleProgram program;
+    private final RuleDependencyGraph graph;
+    private final List<Rule> rules;
+    private final List<LayoutForm> forms;
+    private final List<RemovedRule> removedRules;
+    private final List<List<Rule>> ruleCycles;
+    //objects of anchors are slots
+    private final List<AnchoredToParentEdges> anchors = new ArrayList<>();
+    private final Insets padding;
+    private final boolean solverMode;
+    private final boolean ruleOptimization;
+    //by child index, null for children without id
+    private final String[] childIds;
+
+    /**
+     * @param childIds ids of children by index, null if children have no ids
+     */
+    RuleLayoutBlueprint(Object parent, Object[] children, String[] childIds, List<Rule> sourceRules, List<LayoutForm> sourceForms,
+                        List<AnchoredToParentEdges> sourceAnchors, Insets padding, boolean solverMode, boolean ruleOptimization) {
+        Map<Object, Object> slots = new IdentityHashMap<>();
+        Slot parentSlot = new Slot(CompiledRuleProgram.PARENT_SLOT);
+        slots.put(RuleLayoutCalculationEngine.unwrapComponentWrapper(parent), parentSlot);
+        Slot[] childSlots = new Slot[children.length];
+        for (int i = 0; i < children.length; i++) {
+            childSlots[i] = new Slot(i + 1);
+            slots.put(children[i], childSlots[i]);
+        }
+        List<Rule> slotRules = new ArrayList<>(sourceRules.size());
+        for (Rule rule : sourceRules) {
+            slotRules.add(new Rule(rule.getAnchorEdge(), toSlot(rule.getAnchorComponent(), slots), rule.getOffset(),
+                    rule.getEdge(), toSlot(rule.getComponent(), slots), rule.getPriority()));
+        }
+        List<LayoutForm> slotForms = new ArrayList<>(sourceForms.size());
+        for (LayoutForm form : sourceForms) {
+            LayoutForm slotForm = new LayoutForm(form.getLabelToFieldDistance(), form.getRowsGap(), form.isLabelsAlignedLeft());
+            for (int row = 0; row < form.getRowCount(); row++) {
+                slotForm.addRow(toChildSlot(form.getLabel(row), slots), toChildSlot(form.getField(row), slots), form.getAlignment(row));
+            }
+            slotForms.add(slotForm);
+        }
+        //anchors of objects that are not children are not used by layout
+        for (AnchoredToParentEdges anchor : sourceAnchors) {
+            Object slot = slots.get(RuleLayoutCalculationEngine.unwrapComponentWrapper(anchor.getObject()));
+            if (slot instanceof Slot && slot != parentSlot) {
+                anchors.add(copy(anchor, slot));
+            }
+        }
+        rules = Collections.unmodifiableList(slotRules);
+        forms = Collections.unmodifiableList(slotForms);
+        this.padding = (Insets) padding.clone();
+        this.solverMode = solverMode;
+        this.ruleOptimization = ruleOptimization;
+        this.childIds = childIds == null ? new String[children.length] : childIds.clone();
+
+        graph = new RuleDependencyGraph(rules);
+        if (ruleOptimization && !solverMode) {
+            RuleSetOptimizer optimizer = new RuleSetOptimizer(parentSlot, rules, graph);
+            removedRules = Collections.unmodifiableList(optimizer.getRemovedRules());
+            if (!removedRules.isEmpty()) {
+                graph.removeRules(optimizer.getRemovedFlags());
+            }
+        } else {
+            removedRules = Collections.emptyList();
+        }
+        ruleCycles = graph.getCycles();
+        program = new CompiledRuleProgram(parentSlot, childSlots, graph, forms);
+    }
+
+    /**
+     * Component is replaced by slot, group by a copy of the group with slots
+     */
+    private static Object toSlot(Object object, Map<Object, Object> slots) {
+        object = RuleLayoutCalculationEngine.unwrapComponentWrapper(object);
+        Object slot = slots.get(object);
+        if (slot != null) {
+            return slot;
+        }
+        if (!(object instanceof LayoutGroup)) {
+            throw new IllegalStateException("Component " + Rule.describe(object) + " is used in rules, but it is not a child of the parent");
+        }
+        LayoutGroup<Object> group = new LayoutGroup<>(null);
+        slots.put(object, group);
+        for (ComponentWrapper<?> member : ((LayoutGroup<?>) object).getChildren()) {
+            Object memberSlot = toSlot(member, slots);
+            if (memberSlot instanceof LayoutGroup) {
+                //slots of groups are created only here, as groups of Object
+                @SuppressWarnings("unchecked")
+                LayoutGroup<Object> memberGroup = (LayoutGroup<Object>) memberSlot;
+                group.getChildren().add(new ComponentWrapper<>(memberGroup));
+            } else {
+                group.getChildren().add(new ComponentWrapper<>(memberSlot));
+            }
+        }
+        return group;
+    }
+
+    private static Object toChildSlot(Object component, Map<Object, Object> slots) {
+        Object slot = slots.get(component);
+        if (!(slot instanceof Slot) || ((Slot) slot).index == CompiledRuleProgram.PARENT_SLOT) {
+            throw new IllegalStateException("Component " + Rule.describe(component) + " is used in form, but it is not a child of the parent");
+        }
+        return slot;
+    }
+
+    /**
+     * Creates layout for the container and sets it to the container. Children of the container should be added in the same order
+     * as children of the container the blueprint was created from, they can be added after the layout is set.
+     */
+    public RuleLayout createLayout(Container container) {
+        RuleLayout layout = new RuleLayout(container, this);
+        container.setLayout(layout);
+        return layout;
+    }
+
+    /**
+     * Adds components to the empty container in the order of children of the blueprint, found by their ids, and sets layout
+     * created from the blueprint to the container
+     *
+     * @param components components by ids of children of the blueprint, can contain other components
+     */
+    public RuleLayout createLayout(Container container, Map<String, ? extends Component> components) {
+        if (container.getComponentCount() != 0) {
+            throw new IllegalStateException("Container should be empty, it has " + container.getComponentCount() + " children");
+        }
+        Component[] children = new Component[childIds.length];
+        for (int i = 0; i < childIds.length; i++) {
+            if (childIds[i] == null) {
+                throw new IllegalStateException("Child " + i + " of the blueprint has no id");
+            }
+            children[i] = components.get(childIds[i]);
+            if (children[i] == null) {
+                throw new IllegalArgumentException("Cannot find component with id=" + childIds[i]);
+            }
+        }
+        RuleLayout layout = createLayout(container);
+        for (Component child : children) {
+            container.add(child);
+        }
+        return layout;
+    }
+
+    /**
+     * Number of children the containers should have
+     */
+    public int getChildCount() {
+        return program.childCount;
+    }
+
+    /**
+     * Rules in the order they were added, components are replaced by slots
+     */
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Forms in the order they were added, components are replaced by slots
+     */
+    public List<LayoutForm> getForms() {
+        return forms;
+    }
+
+    /**
+     * Id of the child by its index, null if the child has no id
+     */
+    public String getChildId(int index) {
+        return childIds[index];
+    }
+
+    public List<RemovedRule> getRemovedRules() {
+        return removedRules;
+    }
+
+    public List<List<Rule>> getRuleCycles() {
+        return ruleCycles;
+    }
+
+    boolean isSolverMode() {
+        return solverMode;
+    }
+
+    Insets getPadding() {
+        return (Insets) padding.clone();
+    }
+
+    RuleDependencyGraph getGraph() {
+        return graph;
+    }
+
+    CompiledRuleProgram bind(Object parent, Object[] children) {
+        return program.bind(parent, children);
+    }
+
+    /**
+     * Anchors of slots bound to the children
+     */
+    List<AnchoredToParentEdges> bindAnchors(Object[] children) {
+        List<AnchoredToParentEdges> bound = new ArrayList<>(anchors.size());
+        for (AnchoredToParentEdges anchor : anchors) {
+            bound.add(copy(anchor, children[((Slot) anchor.getObject()).index - 1]));
+        }
+        return bound;
+    }
+
+    private static AnchoredToParentEdges copy(AnchoredToParentEdges anchor, Object object) {
+        return new AnchoredToParentEdges(object, anchor.isLeft(), anchor.isTop(), anchor.isRight(), anchor.isBottom())
+                .setMultipliers(anchor.getLeftMultiplier(), anchor.getTopMultiplier(), anchor.getRightMultiplier(), anchor.getBottomMultiplier());
+    }
+
+    /**
+     * Writes the blueprint as an entry of {@link RuleLayoutArchive}, objects are written as references: 0 is the parent,
+     * 1..child count are children, next numbers are groups
+     */
+    void write(DataOutputStream out) throws IOException {
+        Map<Object, Integer> groupRefs = new IdentityHashMap<>();
+        List<LayoutGroup<?>> groups = new ArrayList<>();
+        for (Rule rule : rules) {
+            collectGroup(rule.getAnchorComponent(), groupRefs, groups);
+            collectGroup(rule.getComponent(), groupRefs, groups);
+        }
+        out.writeInt(childIds.length);
+        out.writeByte((solverMode ? 1 : 0) | (ruleOptimization ? 2 : 0));
+        out.writeInt(padding.left);
+        out.writeInt(padding.top);
+        out.writeInt(padding.right);
+        out.writeInt(padding.bottom);
+        for (String id : childIds) {
+            writeString(out, id);
+        }
+        out.writeInt(groups.size());
+        for (LayoutGroup<?> group : groups) {
+            out.writeInt(group.getChildren().size());
+            for (ComponentWrapper<?> member : group.getChildren()) {
+                out.writeInt(toRef(member, groupRefs));
+            }
+        }
+        out.writeInt(rules.size());
+        for (Rule rule : rules) {
+            out.writeInt(toRef(rule.getAnchorComponent(), groupRefs));
+            out.writeByte(rule.getAnchorEdge().ordinal());
+            out.writeInt(rule.getOffset());
+            out.writeInt(toRef(rule.getComponent(), groupRefs));
+            out.writeByte(rule.getEdge().ordinal());
+            out.writeByte(rule.getPriority().ordinal());
+        }
+        out.writeInt(forms.size());
+        for (LayoutForm form : forms) {
+            out.writeInt(form.getLabelToFieldDistance());
+            out.writeInt(form.getRowsGap());
+            out.writeByte(form.isLabelsAlignedLeft() ? 1 : 0);
+            out.writeInt(form.getRowCount());
+            for (int row = 0; row < form.getRowCount(); row++) {
+                out.writeInt(((Slot) form.getLabel(row)).index);
+                out.writeInt(((Slot) form.getField(row)).index);
+                out.writeByte(form.getAlignment(row).ordinal());
+            }
+        }
+        out.writeInt(anchors.size());
+        for (AnchoredToParentEdges anchor : anchors) {
+            out.writeInt(((Slot) anchor.getObject()).index);
+            out.writeByte((anchor.isLeft() ? 1 : 0) | (anchor.isTop() ? 2 : 0) | (anchor.isRight() ? 4 : 0) | (anchor.isBottom() ? 8 : 0));
+            out.writeFloat(anchor.getLeftMultiplier());
+            out.writeFloat(anchor.getTopMultiplier());
+            out.writeFloat(anchor.getRightMultiplier());
+            out.writeFloat(anchor.getBottomMultiplier());
+        }
+    }
+
+    private void collectGroup(Object object, Map<Object, Integer> groupRefs, List<LayoutGroup<?>> groups) {
+        object = RuleLayoutCalculationEngine.unwrapComponentWrapper(object);
+        if (object instanceof LayoutGroup && !groupRefs.containsKey(object)) {
+            groupRefs.put(object, program.childCount + 1 + groups.size());
+            groups.add((LayoutGroup<?>) object);
+            for (ComponentWrapper<?> member : ((LayoutGroup<?>) object).getChildren()) {
+                collectGroup(member, groupRefs, groups);
+            }
+        }
+    }
+
+    private static int toRef(Object object, Map<Object, Integer> groupRefs) {
+        object = RuleLayoutCalculationEngine.unwrapComponentWrapper(object);
+        return object instanceof Slot ? ((Slot) object).index : groupRefs.get(object);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads entry written by {@link #write}, rules are ordered and compiled again for the placeholders of the parent and children
+     */
+    static RuleLayoutBlueprint read(ByteBuffer in) {
+        int childCount = in.getInt();
+        int flags = in.get();
+        Insets padding = new Insets(0, 0, 0, 0);
+        padding.left = in.getInt();
+        padding.top = in.getInt();
+        padding.right = in.getInt();
+        padding.bottom = in.getInt();
+        String[] childIds = new String[childCount];
+        for (int i = 0; i < childCount; i++) {
+            childIds[i] = readString(in);
+        }
+        Object[] objects = new Object[childCount + 1 + in.getInt()];
+        List<LayoutGroup<Object>> groups = new ArrayList<>(objects.length - childCount - 1);
+        for (int ref = 0; ref < objects.length; ref++) {
+            if (ref <= childCount) {
+                objects[ref] = new Placeholder(ref);
+            } else {
+                LayoutGroup<Object> group = new LayoutGroup<>(null);
+                groups.add(group);
+                objects[ref] = group;
+            }
+        }
+        //group of ref is groups[ref - childCount - 1]
+        for (LayoutGroup<Object> group : groups) {
+            List<ComponentWrapper<Object>> members = group.getChildren();
+            for (int i = in.getInt(); i > 0; i--) {
+                int ref = in.getInt();
+                Object member = fromRef(ref, objects);
+                members.add(ref > childCount ? new ComponentWrapper<>(groups.get(ref - childCount - 1)) : new ComponentWrapper<>(member));
+            }
+        }
+        Edge[] edges = Edge.values();
+        RulePriority[] priorities = RulePriority.values();
+        int ruleCount = in.getInt();
+        List<Rule> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            Object anchor = fromRef(in.getInt(), objects);
+            Edge anchorEdge = edges[in.get()];
+            int offset = in.getInt();
+            Object target = fromRef(in.getInt(), objects);
+            Edge edge = edges[in.get()];
+            rules.add(new Rule(anchorEdge, anchor, offset, edge, target, priorities[in.get()]));
+        }
+        int formCount = in.getInt();
+        List<LayoutForm> forms = new ArrayList<>(formCount);
+        for (int i = 0; i < formCount; i++) {
+            LayoutForm form = new LayoutForm(in.getInt(), in.getInt(), in.get() != 0);
+            for (int row = in.getInt(); row > 0; row--) {
+                Object label = fromRef(in.getInt(), objects);
+                Object field = fromRef(in.getInt(), objects);
+                form.addRow(label, field, edges[in.get()]);
+            }
+            forms.add(form);
+        }
+        int anchorCount = in.getInt();
+        List<AnchoredToParentEdges> anchors = new ArrayList<>(anchorCount);
+        for (int i = 0; i < anchorCount; i++) {
+            Object object = fromRef(in.getInt(), objects);
+            int sides = in.get();
+            anchors.add(new AnchoredToParentEdges(object, (sides & 1) != 0, (sides & 2) != 0, (sides & 4) != 0, (sides & 8) != 0)
+                    .setMultipliers(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat()));
+        }
+        return new RuleLayoutBlueprint(objects[0], Arrays.copyOfRange(objects, 1, childCount + 1), childIds, rules, forms, anchors,
+                padding, (flags & 1) != 0, (flags & 2) != 0);
+    }
+
+    private static Object fromRef(int ref, Object[] objects) {
+        if (ref < 0 || ref >= objects.length) {
+            throw new IllegalArgumentException("Wrong reference " + ref + " in rule layout archive entry");
+        }
+        return objects[ref];
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parent or child of a blueprint read from archive or layout description
+     */
+    static final class Placeholder {
+        private final int index;
+
+        Placeholder(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String toString() {
+            return index == CompiledRuleProgram.PARENT_SLOT ? "parent" : "child" + index;
+        }
+    }
+
+    /**
+     * Stands for the parent or a child in rules of the blueprint
+     */
+    static final class Slot {
+        private final int index;
+
+        private Slot(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String toString() {
+            return index == CompiledRuleProgram.PARENT_SLOT ? "parent" : "child" + index;
+        }
+    }
+}
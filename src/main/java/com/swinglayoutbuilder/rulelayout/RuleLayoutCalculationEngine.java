@@ -2,81 +2,644 @@ package com.swinglayoutbuilder.rulelayout;
 
 import java.awt.Dimension;
 import java.awt.Insets;
-import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 public class RuleLayoutCalculationEngine {
+    private static final int MAX_AFFINE_REGIONS = 4;
     private final Insets layoutPadding = new Insets(0, 0, 0, 0);
     private final List<Rule> rules = new ArrayList<>();
-    private final Map<Object, ComponentRect> componentRectangleMap = new HashMap<>();
-    private final Set<LayoutGroup> groups = new HashSet<>();
+    private final List<LayoutForm> forms = new ArrayList<>();
+    private final ComponentSizes preferredSizes = new ComponentSizes(SizeType.PREF);
+    private final ComponentSizes minimumSizes = new ComponentSizes(SizeType.MIN);
+    private final BaselineCache baselineCache;
+    //intrinsic states do not depend on current size of the parent and calculate preferred/minimum size of the layout
+    private final CalculationState preferredState;
+    private final CalculationState minimumState;
+    private final CalculationState layoutState;
+    private CalculationState currentState;
     private final ComponentActionsWrapper componentActionsWrapper;
     private final Object parent;
     private final List<AnchoredToParentEdges> componentsAnchoredToParentEdges = new ArrayList<>();
     private int defaultWidth = -1;
     private int defaultHeight = -1;
+    private boolean firstLayout;
+    //size of the parent read before layout calculation
+    private int layoutParentWidth;
+    private int layoutParentHeight;
+    //rules are solved as linear constraints instead of executed one by one
+    private boolean solverMode;
+    private boolean ruleOptimization = true;
+    //incremented on every change of rules, children or their sizes, to drop layouts calculated for old data
+    private long inputRevision;
+    //bounds of children(by slot) calculated by current layout
+    private int[] boundsX = new int[0];
+    private int[] boundsY = new int[0];
+    private int[] boundsWidth = new int[0];
+    private int[] boundsHeight = new int[0];
+    //bounds of children(by slot) applied by previous layouts, to skip children that are not moved
+    private CompiledRuleProgram appliedProgram;
+    private int[] appliedX = new int[0];
+    private int[] appliedY = new int[0];
+    private int[] appliedWidth = new int[0];
+    private int[] appliedHeight = new int[0];
+    private boolean[] applied = new boolean[0];
+    private RuleDependencyGraph dependencyGraph;
+    private CompiledRuleProgram program;
+    private boolean childrenChanged = true;
+    private final LayoutMetrics metrics;
+    private long affineResizeCount;
+    private List<List<Rule>> ruleCycles = Collections.emptyList();
+    private List<RemovedRule> removedRules = Collections.emptyList();
+    private Consumer<List<Rule>> ruleCycleHandler;
+    private LayoutTraceRecorder traceRecorder;
+    //rules, order and compiled program are taken from the blueprint and cannot be changed
+    private RuleLayoutBlueprint blueprint;
+    //solved geometry by sizes of children, null if renderer mode is off
+    private RendererGeometryCache rendererCache;
 
     public RuleLayoutCalculationEngine(Object parent, ComponentActionsWrapper componentActionsWrapper) {
         this.parent = parent;
         this.componentActionsWrapper = componentActionsWrapper;
+        this.baselineCache = new BaselineCache(componentActionsWrapper);
+        metrics = new LayoutMetrics(baselineCache);
+        preferredState = new CalculationState(preferredSizes, baselineCache, true);
+        minimumState = new CalculationState(minimumSizes, baselineCache, true);
+        layoutState = new CalculationState(preferredSizes, baselineCache, false);
+        currentState = layoutState;
     }
 
     public Object getParent() {
         return parent;
     }
 
-    public LayoutGroup createGroup() {
-        LayoutGroup newGroup = new LayoutGroup(this);
-        groups.add(newGroup);
+    public <T> LayoutGroup<T> createGroup() {
+        LayoutGroup<T> newGroup = new LayoutGroup<>(this);
+        rulesChanged();
         return newGroup;
     }
 
     public void setComponentAnchoredToParentEdges(AnchoredToParentEdges anchoredToParentEdges) {
+        checkNotBound();
         componentsAnchoredToParentEdges.add(anchoredToParentEdges);
+        if (rendererCache != null) {
+            rendererCache.clear();
+        }
     }
 
     public void addRule(Rule... rules) {
+        checkNotBound();
         Collections.addAll(this.rules, rules);
+        rulesChanged();
+    }
+
+    /**
+     * Form is placed before rules are executed, see {@link LayoutForm}
+     */
+    public void addForm(LayoutForm form) {
+        checkNotBound();
+        forms.add(form);
+        rulesChanged();
+    }
+
+    /**
+     * Handler that receives every group of cyclically dependent rules once, when the rules are ordered before first calculation.
+     * Rules in the cycle are executed in the order they were added.
+     */
+    public void setRuleCycleHandler(Consumer<List<Rule>> ruleCycleHandler) {
+        this.ruleCycleHandler = ruleCycleHandler;
+    }
+
+    /**
+     * Groups of cyclically dependent rules found during last rules ordering
+     */
+    public List<List<Rule>> getRuleCycles() {
+        getDependencyGraph();
+        return ruleCycles;
+    }
+
+    /**
+     * Remove no-op, duplicate and overridden rules when the rules are ordered before first calculation, enabled by default.
+     * Removed rules cannot change the result, so this only saves their execution on every pass. It is not used in solver mode,
+     * where every rule is a constraint.
+     */
+    public void setRuleOptimization(boolean ruleOptimization) {
+        if (this.ruleOptimization != ruleOptimization) {
+            checkNotBound();
+            this.ruleOptimization = ruleOptimization;
+            rulesChanged();
+        }
+    }
+
+    /**
+     * Rules removed by optimization(see {@link #setRuleOptimization(boolean)}) during last rules ordering, in the order they were found
+     */
+    public List<RemovedRule> getRemovedRules() {
+        getDependencyGraph();
+        return removedRules;
+    }
+
+    void rulesChanged() {
+        checkNotBound();
+        inputRevision++;
+        dependencyGraph = null;
+        program = null;
+        forgetLayoutSizes();
+    }
+
+    /**
+     * Compiles current rules, groups, anchors and settings for slots of current children, see {@link RuleLayoutBlueprint}
+     */
+    public RuleLayoutBlueprint createBlueprint() {
+        return createBlueprint(Collections.emptyMap());
+    }
+
+    /**
+     * @param childIds stable ids of children, children that are not in the map have no id
+     */
+    public RuleLayoutBlueprint createBlueprint(Map<?, String> childIds) {
+        Object[] children = componentActionsWrapper.getChildren(parent);
+        String[] ids = new String[children.length];
+        for (int i = 0; i < children.length; i++) {
+            ids[i] = childIds.get(children[i]);
+        }
+        if (blueprint != null) {
+            if (childIds.isEmpty()) {
+                return blueprint;
+            }
+            throw new IllegalStateException("Layout bound to a blueprint cannot create blueprint with other ids");
+        }
+        return new RuleLayoutBlueprint(parent, children, ids, rules, forms, componentsAnchoredToParentEdges,
+                layoutPadding, solverMode, ruleOptimization);
+    }
+
+    /**
+     * Takes rules from the blueprint instead of own rules, the layout should not have rules yet
+     */
+    void bindBlueprint(RuleLayoutBlueprint blueprint) {
+        if (!rules.isEmpty() || !forms.isEmpty() || !componentsAnchoredToParentEdges.isEmpty()) {
+            throw new IllegalStateException("Layout with own rules cannot be bound to a blueprint");
+        }
+        this.blueprint = blueprint;
+        solverMode = blueprint.isSolverMode();
+        Insets padding = blueprint.getPadding();
+        layoutPadding.set(padding.top, padding.left, padding.bottom, padding.right);
+        dependencyGraph = blueprint.getGraph();
+        removedRules = blueprint.getRemovedRules();
+        ruleCycles = blueprint.getRuleCycles();
+        program = null;
+        inputRevision++;
+        forgetLayoutSizes();
+    }
+
+    private void checkNotBound() {
+        if (blueprint != null) {
+            throw new IllegalStateException("Rules of layout created from a blueprint cannot be changed");
+        }
+    }
+
+    /**
+     * Should be called when component is added to the parent or removed from it
+     */
+    public void childrenChanged() {
+        inputRevision++;
+        childrenChanged = true;
+        forgetLayoutSizes();
+    }
+
+    private void forgetLayoutSizes() {
+        preferredState.layoutSize = null;
+        minimumState.layoutSize = null;
+        layoutState.layoutSize = null;
+    }
+
+    /**
+     * Number of preferred/minimum size requests to the layout
+     */
+    public long getSizeRequestCount() {
+        return metrics.sizeRequests;
+    }
+
+    /**
+     * Number of preferred/minimum size requests answered from cache without running any rule
+     */
+    public long getSizeCacheHitCount() {
+        return metrics.sizeCacheHits;
+    }
+
+    /**
+     * Number of layouts after resize of the parent calculated from precompiled affine functions without running rules
+     */
+    public long getAffineResizeCount() {
+        return affineResizeCount;
+    }
+
+    /**
+     * Rules in execution order: every rule that reads edge of component is executed after rules that move this edge.
+     * The order is calculated once after rules or groups are changed.
+     */
+    List<Rule> getOrderedRules() {
+        return getDependencyGraph().getOrderedRules();
+    }
+
+    /**
+     * Program compiled for current rules and current children of the parent. Sizes of components that are still
+     * children of the parent are moved to new slots, so components are not measured again after recompilation.
+     */
+    private CompiledRuleProgram getProgram() {
+        if (program == null || childrenChanged) {
+            Object[] children = componentActionsWrapper.getChildren(parent);
+            if (program == null || !program.hasChildren(children)) {
+                if (blueprint == null) {
+                    program = new CompiledRuleProgram(parent, children, getDependencyGraph(), forms);
+                } else {
+                    program = blueprint.bind(parent, children);
+                    componentsAnchoredToParentEdges.clear();
+                    componentsAnchoredToParentEdges.addAll(blueprint.bindAnchors(children));
+                }
+                preferredSizes.setProgram(program);
+                minimumSizes.setProgram(program);
+                baselineCache.setProgram(program);
+            }
+            childrenChanged = false;
+        }
+        return program;
+    }
+
+    private RuleDependencyGraph getDependencyGraph() {
+        if (dependencyGraph == null) {
+            dependencyGraph = new RuleDependencyGraph(rules);
+            removedRules = Collections.emptyList();
+            if (ruleOptimization && !solverMode) {
+                RuleSetOptimizer optimizer = new RuleSetOptimizer(parent, rules, dependencyGraph);
+                if (!optimizer.getRemovedRules().isEmpty()) {
+                    removedRules = Collections.unmodifiableList(optimizer.getRemovedRules());
+                    dependencyGraph.removeRules(optimizer.getRemovedFlags());
+                }
+            }
+            ruleCycles = dependencyGraph.getCycles();
+            if (ruleCycleHandler != null) {
+                for (List<Rule> cycle : ruleCycles) {
+                    ruleCycleHandler.accept(cycle);
+                }
+            }
+        }
+        return dependencyGraph;
+    }
+
+    /**
+     * In solver mode rules are solved together as linear constraints with priorities, so rules can form cycles and conflict
+     * with each other(weaker rule gives way). Width and height of the parent are edit variables of the solver, so resize is
+     * solved incrementally from previous solution. Groups cannot be used in rules and forms cannot be added in solver mode.
+     */
+    public void setSolverMode(boolean solverMode) {
+        if (this.solverMode != solverMode) {
+            checkNotBound();
+            this.solverMode = solverMode;
+            //rules are optimized only for rule execution
+            rulesChanged();
+            preferredState.invalidate();
+            minimumState.invalidate();
+            layoutState.invalidate();
+        }
     }
 
     public void setPadding(int left, int top, int right, int bottom) {
         layoutPadding.set(top, left, bottom, right);
+        if (rendererCache != null) {
+            rendererCache.clear();
+        }
+        invalidate();
+    }
+
+    /**
+     * Renderer mode for containers that are laid out again for every cell of a list or table: bounds of children and preferred
+     * size of the layout are cached by size of the parent and preferred sizes(and baselines read by rules) of children, and a pass
+     * with already seen sizes only applies cached bounds without executing rules.<br>
+     * Not used while trace is recorded, and when a rule reads baseline of a child which baseline cannot be derived from its value
+     * at preferred size.
+     *
+     * @param cacheSize number of cached results, least recently used are dropped, 0 turns renderer mode off
+     */
+    public void setRendererMode(int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size should be >= 0, but was " + cacheSize);
+        }
+        rendererCache = cacheSize == 0 ? null : new RendererGeometryCache(cacheSize);
     }
 
+    /**
+     * Forget all calculated positions and cached sizes, next calculation will query all components again
+     */
     public void invalidate() {
-        componentRectangleMap.clear();
+        inputRevision++;
+        if (traceRecorder != null) {
+            traceRecorder.invalidated();
+        }
+        appliedProgram = null;
+        preferredSizes.invalidate();
+        minimumSizes.invalidate();
+        baselineCache.invalidate();
+        preferredState.invalidate();
+        minimumState.invalidate();
+        layoutState.invalidate();
+    }
+
+    /**
+     * Forget cached size of one component. Next calculation will query only this component and recalculate
+     * only rules that depend on it
+     */
+    public void invalidateComponent(Object component) {
+        inputRevision++;
+        if (traceRecorder != null && program != null && program.isChild(program.getSlot(component))) {
+            traceRecorder.componentInvalidated(program.getSlot(component));
+        }
+        preferredSizes.invalidateComponent(component);
+        minimumSizes.invalidateComponent(component);
+        baselineCache.invalidateComponent(component);
+        preferredState.invalidateComponent(component);
+        minimumState.invalidateComponent(component);
+        layoutState.invalidateComponent(component);
     }
 
+    /**
+     * Preferred size of the layout. It does not depend on current size of the parent: rules are calculated
+     * for parent with empty content area. Result is cached until rules, children or size of any child are changed.
+     */
     public Dimension getPreferredSize() {
-        runCalculations(parent, SizeType.PREF);
-        return calculateBounds(parent);
+        return getLayoutSize(preferredState);
     }
 
+    /**
+     * Minimum size of the layout, calculated the same way as preferred size but with minimum sizes of children
+     */
     public Dimension getMinimumSize() {
-        runCalculations(parent, SizeType.MIN);
-        return calculateBounds(parent);
+        return getLayoutSize(minimumState);
+    }
+
+    private Dimension getLayoutSize(CalculationState state) {
+        metrics.sizeRequests++;
+        if (state.layoutSize != null) {
+            metrics.sizeCacheHits++;
+        } else {
+            long start = System.nanoTime();
+            boolean cacheable = state == preferredState && fillRendererKey(-1, -1);
+            int[] cached = cacheable ? rendererCache.get() : null;
+            if (cached == null) {
+                runCalculations(state);
+                state.layoutSize = calculateBounds();
+                if (cacheable) {
+                    rendererCache.put(new int[]{state.layoutSize.width, state.layoutSize.height});
+                }
+            }
+            if (state == preferredState) {
+                metrics.preferredPasses++;
+            } else {
+                metrics.minimumPasses++;
+            }
+            long nanos = System.nanoTime() - start;
+            metrics.recordPassTime(nanos);
+            if (cached != null) {
+                //size calculated for other children is not kept in the state
+                metrics.rendererCacheHits++;
+                return new Dimension(cached[0], cached[1]);
+            }
+            if (traceRecorder != null) {
+                tracePass(state, nanos);
+            }
+        }
+        currentState = state;
+        return new Dimension(state.layoutSize);
     }
 
+    /**
+     * Calculates and applies bounds of children. When nothing is changed since previous layout, it does not allocate memory:
+     * bounds are prepared in buffers reused between layouts.<br>
+     * Only children which bounds differ from bounds applied by previous layout are changed, and the parent gets one repaint request
+     * for union of old and new bounds of changed children.
+     */
     public void layoutContainer() {
-        boolean firstLayout = false;
+        long start = System.nanoTime();
+        prepareLayout();
+        boolean cacheable = fillRendererKey(layoutParentWidth, layoutParentHeight);
+        int[] cached = cacheable ? rendererCache.get() : null;
+        if (cached != null) {
+            //rects of the state are not updated, changed children are still marked for the next calculated pass
+            CompiledRuleProgram program = getProgram();
+            ensureBoundsBuffers(program);
+            int childCount = program.childCount;
+            System.arraycopy(cached, 0, boundsX, 1, childCount);
+            System.arraycopy(cached, childCount, boundsY, 1, childCount);
+            System.arraycopy(cached, childCount * 2, boundsWidth, 1, childCount);
+            System.arraycopy(cached, childCount * 3, boundsHeight, 1, childCount);
+            applyBounds(program);
+            metrics.rendererCacheHits++;
+        } else {
+            runCalculations(layoutState);
+            applyLayout(layoutState);
+            if (cacheable) {
+                rendererCache.put(copyBounds(layoutState.program.childCount));
+            }
+        }
+        metrics.layoutPasses++;
+        long nanos = System.nanoTime() - start;
+        metrics.recordPassTime(nanos);
+        if (traceRecorder != null) {
+            tracePass(layoutState, nanos);
+        }
+    }
+
+    /**
+     * Records every following preferred size, minimum size and layout pass to the trace, null stops recording
+     */
+    public void setTraceRecorder(LayoutTraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
+    private void tracePass(CalculationState state, long nanos) {
+        CompiledRuleProgram program = state.program;
+        boolean layout = state == layoutState;
+        traceRecorder.startPass(layout ? "layout" : state == preferredState ? "preferred" : "minimum", program, blueprint == null ? rules : blueprint.getRules(),
+                getOrderedRules(), blueprint == null ? forms : blueprint.getForms(), componentsAnchoredToParentEdges, defaultWidth, defaultHeight,
+                layout ? layoutParentWidth : -1, layout ? layoutParentHeight : -1);
+        traceRecorder.settings(layoutPadding, solverMode);
+        traceRecorder.sizes(false, preferredSizes.widths, preferredSizes.heights, preferredSizes.known);
+        traceRecorder.sizes(true, minimumSizes.widths, minimumSizes.heights, minimumSizes.known);
+        traceRecorder.baselines(baselineCache);
+        traceRecorder.ruleTimes();
+        if (layout) {
+            for (int slot = 1; slot <= program.childCount; slot++) {
+                traceRecorder.bounds(slot, boundsX[slot], boundsY[slot], boundsWidth[slot], boundsHeight[slot]);
+            }
+        } else {
+            traceRecorder.result(state.layoutSize.width, state.layoutSize.height);
+        }
+        traceRecorder.endPass(nanos);
+    }
+
+    /**
+     * Counters of passes, executed rules and queries to components of this layout
+     */
+    public LayoutMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reads everything the layout calculation needs from components: children, their preferred sizes and baselines
+     * for preferred sizes. After that {@link #solveDetachedLayout()} can be called on other thread.
+     * Should be called on the thread that owns components.
+     */
+    void prepareDetachedLayout() {
+        mergeDetachedMetrics(layoutState);
+        prepareLayout();
+        CompiledRuleProgram program = getProgram();
+        for (int slot = 1; slot <= program.childCount; slot++) {
+            ensureSize(preferredSizes, slot);
+        }
+        for (int position = 0; position < program.ruleCount; position++) {
+            prefetchBaseLine(program, program.sourceSlot[position], program.sourceEdge[position]);
+            prefetchBaseLine(program, program.targetSlot[position], program.targetEdge[position]);
+        }
+        for (int row = 0; row < program.formLabels.length; row++) {
+            prefetchBaseLine(program, program.formLabels[row], program.formAlignments[row]);
+            prefetchBaseLine(program, program.formFields[row], program.formAlignments[row]);
+        }
+    }
+
+    private void prefetchBaseLine(CompiledRuleProgram program, int slot, int edge) {
+        if (edge == CompiledRuleProgram.BASELINE && program.isChild(slot)
+                && preferredSizes.widths[slot] >= 0 && preferredSizes.heights[slot] >= 0) {
+            baselineCache.getBaseLine(slot, preferredSizes.widths[slot], preferredSizes.heights[slot]);
+        }
+    }
+
+    /**
+     * Calculates layout using only data read by {@link #prepareDetachedLayout()}, does not touch components,
+     * so it can be called on any thread while the thread that owns components waits for it.
+     *
+     * @return false if calculation needs data that was not prepared(for example baseline for size that differs from preferred size),
+     * in such case the layout should be calculated with {@link #layoutContainer()}
+     */
+    boolean solveDetachedLayout() {
+        layoutState.detached = true;
+        try {
+            runCalculations(layoutState);
+            return true;
+        } catch (ComponentAccessException e) {
+            //calculation was interrupted in the middle, so next calculation should start from scratch
+            layoutState.invalidate();
+            return false;
+        } finally {
+            layoutState.detached = false;
+        }
+    }
+
+    /**
+     * Applies layout calculated by {@link #solveDetachedLayout()}. Should be called on the thread that owns components
+     */
+    void applyDetachedLayout() {
+        applyLayout(layoutState);
+        mergeDetachedMetrics(layoutState);
+        metrics.layoutPasses++;
+    }
+
+    /**
+     * Metrics are not thread safe, so rules evaluated on other thread are counted in the state and added on the thread that owns components
+     */
+    private void mergeDetachedMetrics(CalculationState state) {
+        metrics.rulesEvaluated += state.detachedRulesEvaluated;
+        state.detachedRulesEvaluated = 0;
+    }
+
+    /**
+     * Calculates layout in three steps: the data needed for calculation is read from components on the calling thread, the layout
+     * is calculated by solveExecutor without access to components, and the result is applied by applyExecutor, which should run
+     * tasks on the thread that owns components. If rules, children, their sizes or size of the parent are changed before the
+     * result is applied, the result is dropped.<br>
+     * Should be called on the thread that owns components.
+     *
+     * @return future that is completed with true when the layout is applied, or with false if the result was dropped
+     */
+    public CompletableFuture<Boolean> layoutContainerAsync(Executor solveExecutor, Executor applyExecutor) {
+        LayoutSnapshot snapshot = createSnapshot();
+        return CompletableFuture.supplyAsync(() -> solveSnapshot(snapshot), solveExecutor)
+                .thenApplyAsync(this::applySnapshot, applyExecutor);
+    }
+
+    private LayoutSnapshot createSnapshot() {
+        prepareDetachedLayout();
+        LayoutSnapshot snapshot = new LayoutSnapshot();
+        snapshot.revision = inputRevision;
+        snapshot.parentWidth = layoutParentWidth;
+        snapshot.parentHeight = layoutParentHeight;
+        snapshot.contentWidth = layoutParentWidth - layoutPadding.left - layoutPadding.right;
+        snapshot.contentHeight = layoutParentHeight - layoutPadding.top - layoutPadding.bottom;
+        snapshot.state = new CalculationState(preferredSizes.copy(), baselineCache.copy(), false);
+        snapshot.state.detached = true;
+        snapshot.state.setProgram(program);
+        //components that are not children of the parent are not reset before calculation, so they keep values of previous layout
+        if (layoutState.program == program) {
+            for (int slot = program.childCount + 1; slot < program.firstGroupSlot; slot++) {
+                snapshot.state.rects.copySlot(layoutState.rects, slot, slot);
+            }
+        }
+        return snapshot;
+    }
+
+    private LayoutSnapshot solveSnapshot(LayoutSnapshot snapshot) {
+        try {
+            calculateAll(snapshot.state, snapshot.contentWidth, snapshot.contentHeight);
+            snapshot.solved = true;
+        } catch (ComponentAccessException e) {
+            snapshot.solved = false;
+        }
+        return snapshot;
+    }
+
+    private boolean applySnapshot(LayoutSnapshot snapshot) {
+        mergeDetachedMetrics(snapshot.state);
+        if (snapshot.revision != inputRevision
+                || snapshot.parentWidth != componentActionsWrapper.getComponentWidth(parent)
+                || snapshot.parentHeight != componentActionsWrapper.getComponentHeight(parent)) {
+            return false;
+        }
+        if (!snapshot.solved) {
+            //inputs are the same, but some data was not in the snapshot
+            layoutContainer();
+            return true;
+        }
+        layoutParentWidth = snapshot.parentWidth;
+        layoutParentHeight = snapshot.parentHeight;
+        applyLayout(snapshot.state);
+        metrics.layoutPasses++;
+        return true;
+    }
+
+    private void prepareLayout() {
         if (defaultWidth == -1 || defaultHeight == -1) {
-            Rectangle rectangle = componentActionsWrapper.getComponentRect(parent);
-            defaultWidth = rectangle.width;
-            defaultHeight = rectangle.height;
+            defaultWidth = componentActionsWrapper.getComponentWidth(parent);
+            defaultHeight = componentActionsWrapper.getComponentHeight(parent);
             firstLayout = true;
         }
-        runCalculations(parent, SizeType.PREF);
+        layoutParentWidth = componentActionsWrapper.getComponentWidth(parent);
+        layoutParentHeight = componentActionsWrapper.getComponentHeight(parent);
+    }
 
-        Map<Object, Rectangle> realBounds = new HashMap<>();
-        for (Object component : componentActionsWrapper.getChildren(parent)) {
-            ComponentRect rect = getRect(component);
-            realBounds.put(component, new Rectangle(rect.getX() + layoutPadding.left, rect.getY() + layoutPadding.top, rect.getWidth(), rect.getHeight()));
+    private void applyLayout(CalculationState state) {
+        CompiledRuleProgram program = state.program;
+        SlotRects rects = state.rects;
+        ensureBoundsBuffers(program);
+        for (int slot = 1; slot <= program.childCount; slot++) {
+            boundsX[slot] = rects.getX(slot) + layoutPadding.left;
+            boundsY[slot] = rects.getY(slot) + layoutPadding.top;
+            boundsWidth[slot] = rects.getWidth(slot);
+            boundsHeight[slot] = rects.getHeight(slot);
         }
 
         //capture initial positions of components anchored to parent edges after first layout
@@ -85,28 +648,122 @@ public class RuleLayoutCalculationEngine {
 
                 anchor.setCapturedBounds(componentActionsWrapper.getComponentRect(anchor.getObject()));
             }
+            firstLayout = false;
         } else {
-            processParentResize(realBounds);
+            processParentResize(program);
+        }
+
+        applyBounds(program);
+    }
+
+    private void ensureBoundsBuffers(CompiledRuleProgram program) {
+        if (boundsX.length != program.childCount + 1) {
+            boundsX = new int[program.childCount + 1];
+            boundsY = new int[program.childCount + 1];
+            boundsWidth = new int[program.childCount + 1];
+            boundsHeight = new int[program.childCount + 1];
+        }
+    }
+
+    private int[] copyBounds(int childCount) {
+        int[] bounds = new int[childCount * 4];
+        System.arraycopy(boundsX, 1, bounds, 0, childCount);
+        System.arraycopy(boundsY, 1, bounds, childCount, childCount);
+        System.arraycopy(boundsWidth, 1, bounds, childCount * 2, childCount);
+        System.arraycopy(boundsHeight, 1, bounds, childCount * 3, childCount);
+        return bounds;
+    }
+
+    /**
+     * Fills key of the renderer cache for the next lookup with size of the parent and preferred sizes and baselines of children
+     *
+     * @return false if renderer mode is off or the result cannot be cached
+     */
+    private boolean fillRendererKey(int parentWidth, int parentHeight) {
+        if (rendererCache == null || traceRecorder != null) {
+            return false;
+        }
+        CompiledRuleProgram program = getProgram();
+        rendererCache.setProgram(program);
+        int[] key = rendererCache.startKey(parentWidth, parentHeight);
+        for (int slot = 1; slot <= program.childCount; slot++) {
+            ensureSize(preferredSizes, slot);
+            int index = 2 + (slot - 1) * 3;
+            key[index] = preferredSizes.widths[slot];
+            key[index + 1] = preferredSizes.heights[slot];
+            key[index + 2] = RendererGeometryCache.NO_BASELINE;
+        }
+        for (int slot : rendererCache.getBaselineSlots()) {
+            int width = preferredSizes.widths[slot];
+            int height = preferredSizes.heights[slot];
+            if (width < 0 || height < 0) {
+                return false;
+            }
+            int baseline = baselineCache.getBaseLine(slot, width, height);
+            //baseline for other sizes follows from baseline for preferred size, unless the component reports OTHER behavior
+            if (baseline >= 0 && baselineCache.getCachedKind(slot) == BaselineCache.EXACT_SIZE) {
+                return false;
+            }
+            key[2 + (slot - 1) * 3 + 2] = baseline;
         }
+        return true;
+    }
 
-        //appy rectangle to real components
-        for (Object component : componentActionsWrapper.getChildren(parent)) {
-            componentActionsWrapper.setComponentRect(component, realBounds.get(component));
+    private void applyBounds(CompiledRuleProgram program) {
+        if (appliedProgram != program) {
+            appliedProgram = program;
+            appliedX = new int[program.childCount + 1];
+            appliedY = new int[program.childCount + 1];
+            appliedWidth = new int[program.childCount + 1];
+            appliedHeight = new int[program.childCount + 1];
+            applied = new boolean[program.childCount + 1];
+        }
+        int dirtyX = Integer.MAX_VALUE, dirtyY = Integer.MAX_VALUE, dirtyX2 = Integer.MIN_VALUE, dirtyY2 = Integer.MIN_VALUE;
+        for (int slot = 1; slot <= program.childCount; slot++) {
+            int x = boundsX[slot];
+            int y = boundsY[slot];
+            int width = boundsWidth[slot];
+            int height = boundsHeight[slot];
+            if (applied[slot] && appliedX[slot] == x && appliedY[slot] == y && appliedWidth[slot] == width && appliedHeight[slot] == height) {
+                continue;
+            }
+            //region under old bounds should be repainted too
+            if (applied[slot]) {
+                dirtyX = Math.min(dirtyX, appliedX[slot]);
+                dirtyY = Math.min(dirtyY, appliedY[slot]);
+                dirtyX2 = Math.max(dirtyX2, appliedX[slot] + appliedWidth[slot]);
+                dirtyY2 = Math.max(dirtyY2, appliedY[slot] + appliedHeight[slot]);
+            }
+            dirtyX = Math.min(dirtyX, x);
+            dirtyY = Math.min(dirtyY, y);
+            dirtyX2 = Math.max(dirtyX2, x + width);
+            dirtyY2 = Math.max(dirtyY2, y + height);
+            componentActionsWrapper.setComponentBounds(program.slotObjects[slot], x, y, width, height);
+            appliedX[slot] = x;
+            appliedY[slot] = y;
+            appliedWidth[slot] = width;
+            appliedHeight[slot] = height;
+            applied[slot] = true;
+        }
+        if (dirtyX2 != Integer.MIN_VALUE) {
+            componentActionsWrapper.repaint(parent, dirtyX, dirtyY, dirtyX2 - dirtyX, dirtyY2 - dirtyY);
         }
     }
 
-    private void processParentResize(Map<Object, Rectangle> realBounds) {
-        Rectangle rectangle = componentActionsWrapper.getComponentRect(parent);
-        if (defaultWidth == rectangle.width && defaultHeight == rectangle.height) return;
-        int dw = rectangle.width - defaultWidth;
-        int dh = rectangle.height - defaultHeight;
-        for (AnchoredToParentEdges anchor : componentsAnchoredToParentEdges) {
-            //Rectangle capturedBounds = anchor.getCapturedBounds();
-            Rectangle newBounds = realBounds.get(unwrapComponentWrapper(anchor.getObject()));
-            int newX = newBounds.x;
-            int newY = newBounds.y;
-            int newX2 = newBounds.x + newBounds.width;
-            int newY2 = newBounds.y + newBounds.height;
+    private void processParentResize(CompiledRuleProgram program) {
+        if (defaultWidth == layoutParentWidth && defaultHeight == layoutParentHeight) return;
+        int dw = layoutParentWidth - defaultWidth;
+        int dh = layoutParentHeight - defaultHeight;
+        for (int i = 0; i < componentsAnchoredToParentEdges.size(); i++) {
+            AnchoredToParentEdges anchor = componentsAnchoredToParentEdges.get(i);
+            int slot = program.getSlot(anchor.getObject());
+            if (!program.isChild(slot)) {
+                continue;
+            }
+            int newX = boundsX[slot];
+            int newY = boundsY[slot];
+            int newX2 = boundsX[slot] + boundsWidth[slot];
+            int newY2 = boundsY[slot] + boundsHeight[slot];
             //if edge bound to parent LEFT OR TOP edge - nothing will change, because they does not move
             if (anchor.isLeft()) {
                 newX += dw * anchor.getLeftMultiplier();
@@ -120,64 +777,320 @@ public class RuleLayoutCalculationEngine {
             if (anchor.isBottom()) {
                 newY2 += dh * anchor.getBottomMultiplier();
             }
-            newBounds.setBounds(newX, newY, newX2 - newX, newY2 - newY);
+            boundsX[slot] = newX;
+            boundsY[slot] = newY;
+            boundsWidth[slot] = newX2 - newX;
+            boundsHeight[slot] = newY2 - newY;
         }
     }
 
-    private Dimension calculateBounds(Object parent) {
+    private Dimension calculateBounds() {
         int maxX = 0;
         int maxY = 0;
-        for (Object component : componentActionsWrapper.getChildren(parent)) {
-            ComponentRect rect = getRect(component);
-            maxX = Math.max(maxX, rect.getX2());
-            maxY = Math.max(maxY, rect.getY2());
+        SlotRects rects = currentState.rects;
+        for (int slot = 1; slot <= currentState.program.childCount; slot++) {
+            maxX = Math.max(maxX, rects.getX2(slot));
+            maxY = Math.max(maxY, rects.getY2(slot));
         }
 
-        if (componentRectangleMap.containsKey(parent)) {
-            ComponentRect rect = getRect(parent);
-            maxX = Math.max(maxX, rect.getX2());
-            maxY = Math.max(maxY, rect.getY2());
-        }
+        maxX = Math.max(maxX, rects.getX2(CompiledRuleProgram.PARENT_SLOT));
+        maxY = Math.max(maxY, rects.getY2(CompiledRuleProgram.PARENT_SLOT));
 
         maxX += layoutPadding.left + layoutPadding.right;
         maxY += layoutPadding.top + layoutPadding.bottom;
         return new Dimension(maxX, maxY);
     }
 
+    private void runCalculations(CalculationState state) {
+        currentState = state;
+        if (state.detached && (program == null || childrenChanged)) {
+            throw new ComponentAccessException();
+        }
+        CompiledRuleProgram program = getProgram();
+        int parentWidth = 0;
+        int parentHeight = 0;
+        if (!state.intrinsic) {
+            parentWidth = layoutParentWidth - layoutPadding.left - layoutPadding.right;
+            parentHeight = layoutParentHeight - layoutPadding.top - layoutPadding.bottom;
+        }
+
+        if (solverMode) {
+            if (state.program != program) {
+                state.setProgram(program);
+            }
+            solveConstraints(state, parentWidth, parentHeight);
+            return;
+        }
+        if (!state.calculated || state.program != program) {
+            if (state.program != program) {
+                state.setProgram(program);
+            }
+            calculateAll(state, parentWidth, parentHeight);
+            return;
+        }
+
+        if (state.parentWidth != parentWidth || state.parentHeight != parentHeight) {
+            state.markChanged(CompiledRuleProgram.PARENT_SLOT);
+        }
+        if (state.changedSlots.isEmpty()) {
+            return;
+        }
+        if (state.changedSlots.size() == 1 && state.changedSlots.get(0) == CompiledRuleProgram.PARENT_SLOT
+                && resizeAffine(state, parentWidth, parentHeight)) {
+            return;
+        }
+
+        //recalculate only rules downstream of changed components
+        IntList affectedRules = state.affectedRules;
+        IntList affectedForms = state.affectedForms;
+        affectedRules.clear();
+        affectedForms.clear();
+        program.collectAffectedRules(state.changedSlots, affectedRules, affectedForms);
+        for (int i = 0; i < state.changedSlots.size(); i++) {
+            int slot = state.changedSlots.get(i);
+            if (slot == CompiledRuleProgram.PARENT_SLOT) {
+                resetParentRect(state, parentWidth, parentHeight);
+            } else if (program.isChild(slot)) {
+                resetComponentRect(state, slot);
+            }
+        }
+        state.clearChangedSlots();
+        for (int i = 0; i < affectedForms.size(); i++) {
+            placeForm(state, affectedForms.get(i));
+        }
+        for (int i = 0; i < affectedRules.size(); i++) {
+            executeRule(state, affectedRules.get(i));
+        }
+    }
+
+    /**
+     * When only size of the parent is changed, rects are evaluated from affine functions of the parent size. Functions are compiled
+     * on first resize after rules or sizes of children are changed, from the size of the previous calculation. Functions are valid
+     * only in some region of sizes(for example only for even widths if something is centered), so if the size of the previous
+     * calculation was outside of all compiled regions, one more region is compiled for it.
+     *
+     * @return false if the layout is not affine or the new size is outside of compiled regions
+     */
+    private boolean resizeAffine(CalculationState state, int parentWidth, int parentHeight) {
+        if (state.affineFailed) {
+            return false;
+        }
+        List<AffineLayout> affineLayouts = state.affineLayouts;
+        if (state.affineRegionMissing && affineLayouts.size() < MAX_AFFINE_REGIONS) {
+            ComponentSizes sizes = state.sizes;
+            AffineLayout affineLayout = AffineLayout.compile(state.program, sizes.widths, sizes.heights,
+                    (slot, width, height) -> getBaseLine(state, slot, width, height), state.parentWidth, state.parentHeight);
+            if (affineLayout == null || !matchesRects(state, affineLayout)) {
+                state.affineFailed = true;
+                return false;
+            }
+            affineLayouts.add(affineLayout);
+        }
+        boolean evaluated = false;
+        for (int i = 0; i < affineLayouts.size() && !evaluated; i++) {
+            evaluated = affineLayouts.get(i).evaluate(parentWidth, parentHeight, state.rects);
+        }
+        state.affineRegionMissing = !evaluated;
+        if (!evaluated) {
+            return false;
+        }
+        affineResizeCount++;
+        state.parentWidth = parentWidth;
+        state.parentHeight = parentHeight;
+        state.clearChangedSlots();
+        return true;
+    }
+
+    /**
+     * Check that compiled functions give the same rects as the rules for the size they were compiled for
+     */
+    private boolean matchesRects(CalculationState state, AffineLayout affineLayout) {
+        SlotRects rects = state.rects;
+        SlotRects evaluated = new SlotRects(rects.size());
+        if (!affineLayout.evaluate(state.parentWidth, state.parentHeight, evaluated)) {
+            return false;
+        }
+        for (int slot = 0; slot < rects.size(); slot++) {
+            if (rects.getX(slot) != evaluated.getX(slot) || rects.getY(slot) != evaluated.getY(slot)
+                    || rects.getWidth(slot) != evaluated.getWidth(slot) || rects.getHeight(slot) != evaluated.getHeight(slot)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculates all rules from scratch, uses only the state and data that does not change after program is compiled
+     */
+    private void calculateAll(CalculationState state, int parentWidth, int parentHeight) {
+        CompiledRuleProgram program = state.program;
+        state.groupBounds.invalidateAll();
+        for (int slot = 1; slot <= program.childCount; slot++) {
+            resetComponentRect(state, slot);
+        }
+        resetParentRect(state, parentWidth, parentHeight);
+        for (int form = 0; form < program.getFormCount(); form++) {
+            placeForm(state, form);
+        }
+        for (int position = 0; position < program.ruleCount; position++) {
+            executeRule(state, position);
+        }
+        state.calculated = true;
+        state.clearChangedSlots();
+    }
+
+    /**
+     * Solves rules as constraints. Constraint system is built once for the program, later only changed preferred sizes
+     * and size of the parent are suggested to the solver
+     */
+    private void solveConstraints(CalculationState state, int parentWidth, int parentHeight) {
+        CompiledRuleProgram program = state.program;
+        ComponentSizes sizes = state.sizes;
+        RuleConstraintSystem constraints = state.calculated ? state.constraints : null;
+        if (constraints != null) {
+            if (state.changedSlots.isEmpty() && state.parentWidth == parentWidth && state.parentHeight == parentHeight) {
+                return;
+            }
+            for (int i = 0; i < state.changedSlots.size() && constraints != null; i++) {
+                int slot = state.changedSlots.get(i);
+                if (!program.isChild(slot)) {
+                    continue;
+                }
+                ensureStateSize(state, slot);
+                int width = sizes.widths[slot];
+                int height = sizes.heights[slot];
+                if (constraints.usesBaseline(slot)
+                        && getBaseLine(state, slot, width, height) != constraints.getBaseline(slot)) {
+                    constraints = null;
+                } else {
+                    constraints.suggestSize(slot, width, height);
+                }
+            }
+        }
+        if (constraints == null) {
+            int[] baselines = new int[program.getSlotCount()];
+            boolean[] baselineSlots = RuleConstraintSystem.findBaselineSlots(program);
+            for (int slot = 1; slot <= program.childCount; slot++) {
+                ensureStateSize(state, slot);
+                if (baselineSlots[slot]) {
+                    baselines[slot] = getBaseLine(state, slot, sizes.widths[slot], sizes.heights[slot]);
+                }
+            }
+            constraints = new RuleConstraintSystem(program, sizes.widths, sizes.heights, baselines, baselineSlots, parentWidth, parentHeight);
+            state.constraints = constraints;
+        } else {
+            constraints.suggestParentSize(parentWidth, parentHeight);
+        }
+        constraints.storeRects(state.rects);
+        state.parentWidth = parentWidth;
+        state.parentHeight = parentHeight;
+        state.calculated = true;
+        state.clearChangedSlots();
+    }
+
+    private void ensureStateSize(CalculationState state, int slot) {
+        if (state.detached && !state.sizes.known[slot]) {
+            throw new ComponentAccessException();
+        }
+        ensureSize(state.sizes, slot);
+    }
+
+    private void resetComponentRect(CalculationState state, int slot) {
+        ComponentSizes sizes = state.sizes;
+        ensureStateSize(state, slot);
+        SlotRects rects = state.rects;
+        int oldX = rects.getX(slot), oldY = rects.getY(slot), oldX2 = rects.getX2(slot), oldY2 = rects.getY2(slot);
+        rects.reset(slot, 0, 0, sizes.widths[slot], sizes.heights[slot]);
+        state.groupBounds.componentChanged(slot, oldX, oldY, oldX2, oldY2);
+    }
 
-    private void runCalculations(Object parent, SizeType sizeType) {
-        for (Object component : componentActionsWrapper.getChildren(parent)) {
-            ComponentRect rect = getRect(component);
+    private void ensureSize(ComponentSizes sizes, int slot) {
+        if (!sizes.known[slot]) {
+            Object component = sizes.program.slotObjects[slot];
             Dimension sizeDimension;
-            if (sizeType == SizeType.MIN) {
+            if (sizes.sizeType == SizeType.MIN) {
+                metrics.minimumSizeQueries++;
                 sizeDimension = componentActionsWrapper.getMinimumSize(component);
-            } else if (sizeType == SizeType.PREF) {
+            } else if (sizes.sizeType == SizeType.PREF) {
+                metrics.preferredSizeQueries++;
                 sizeDimension = componentActionsWrapper.getPreferredSize(component);
             } else {
-                throw new RuntimeException("Size type is not implemented " + sizeType);
+                throw new RuntimeException("Size type is not implemented " + sizes.sizeType);
             }
-
-            rect.reset(0, 0, sizeDimension.width, sizeDimension.height);
+            sizes.widths[slot] = sizeDimension.width;
+            sizes.heights[slot] = sizeDimension.height;
+            sizes.known[slot] = true;
         }
+    }
 
-        ComponentRect parentComponentRect = getRect(parent);
-        Rectangle realParentRect = componentActionsWrapper.getComponentRect(parent);
-        parentComponentRect.reset(0, 0, (int) realParentRect.getWidth() - layoutPadding.left - layoutPadding.right, (int) realParentRect.getHeight() - layoutPadding.top - layoutPadding.bottom);
-        parentComponentRect.fixX1Y1Position();
-        for (Rule rule : rules) {
-            ComponentRect anchorComponentRect = getRect(rule.getAnchorComponent());
-            ComponentRect componentRect = getRect(rule.getComponent());
-            if (rule.getComponent() instanceof LayoutGroup) {
-                int position = getPosition(anchorComponentRect, rule.getAnchorComponent(), rule.getAnchorEdge());
-                setPosition(componentRect, rule.getComponent(), rule.getEdge(), position + rule.getOffset());
+    private void resetParentRect(CalculationState state, int parentWidth, int parentHeight) {
+        SlotRects rects = state.rects;
+        int slot = CompiledRuleProgram.PARENT_SLOT;
+        int oldX = rects.getX(slot), oldY = rects.getY(slot), oldX2 = rects.getX2(slot), oldY2 = rects.getY2(slot);
+        rects.reset(slot, 0, 0, parentWidth, parentHeight);
+        rects.fixX1Y1Position(slot);
+        state.groupBounds.componentChanged(slot, oldX, oldY, oldX2, oldY2);
+        state.parentWidth = parentWidth;
+        state.parentHeight = parentHeight;
+    }
+
+    /**
+     * Places rows of the form as rules of {@link LayoutForm} would place them: right edge of the labels column is found once,
+     * rows are moved under the previous row by the running bottom of the form
+     */
+    private void placeForm(CalculationState state, int form) {
+        CompiledRuleProgram program = state.program;
+        SlotRects rects = state.rects;
+        int start = program.formRowStart[form];
+        int end = program.formRowStart[form + 1];
+        int labelsLeft = Integer.MAX_VALUE;
+        int labelsRight = Integer.MIN_VALUE;
+        for (int row = start; row < end; row++) {
+            labelsLeft = Math.min(labelsLeft, rects.getX(program.formLabels[row]));
+            labelsRight = Math.max(labelsRight, rects.getX2(program.formLabels[row]));
+        }
+        int fieldsLeft = labelsRight + program.formDistances[form];
+        int previousBottom = 0;
+        for (int row = start; row < end; row++) {
+            int label = program.formLabels[row];
+            int field = program.formFields[row];
+            int alignment = program.formAlignments[row];
+            if (program.formLabelsLeft[form]) {
+                setPosition(state, label, CompiledRuleProgram.LEFT, labelsLeft);
             } else {
-                int position = getPosition(anchorComponentRect, rule.getAnchorComponent(), rule.getAnchorEdge());
-                setPosition(componentRect, rule.getComponent(), rule.getEdge(), position + rule.getOffset());
+                setPosition(state, label, CompiledRuleProgram.RIGHT, labelsRight);
+            }
+            setPosition(state, field, CompiledRuleProgram.LEFT, fieldsLeft);
+            setPosition(state, label, alignment, getPosition(state, field, alignment));
+            int top = Math.min(rects.getY(label), rects.getY(field));
+            int bottom = Math.max(rects.getY2(label), rects.getY2(field));
+            //first row is not moved
+            if (row != start) {
+                int dy = previousBottom + program.formRowsGaps[form] - top;
+                moveSlot(state, label, 0, dy);
+                moveSlot(state, field, 0, dy);
+                bottom += dy;
             }
+            previousBottom = bottom;
         }
     }
 
-    private Object unwrapComponentWrapper(Object potentialComponentWrapper) {
+    private void executeRule(CalculationState state, int position) {
+        CompiledRuleProgram program = state.program;
+        if (state.detached) {
+            state.detachedRulesEvaluated++;
+        } else {
+            metrics.rulesEvaluated++;
+        }
+        long start = traceRecorder == null || state.detached ? 0 : System.nanoTime();
+        int value = getPosition(state, program.sourceSlot[position], program.sourceEdge[position]) + program.offset[position];
+        setPosition(state, program.targetSlot[position], program.targetEdge[position], value);
+        if (start != 0) {
+            traceRecorder.ruleExecuted(position, System.nanoTime() - start);
+        }
+    }
+
+    static Object unwrapComponentWrapper(Object potentialComponentWrapper) {
         if (potentialComponentWrapper instanceof ComponentWrapper) {
             ComponentWrapper wraper = (ComponentWrapper) potentialComponentWrapper;
             if (wraper.isGroup()) {
@@ -189,126 +1102,354 @@ public class RuleLayoutCalculationEngine {
         return potentialComponentWrapper;
     }
 
+    /**
+     * Copy of rect of the component/group from the last calculation
+     */
     ComponentRect getRect(Object component) {
-        component = unwrapComponentWrapper(component);
-        if (component instanceof LayoutGroup && groups.contains(component)) {
-            LayoutGroup group = (LayoutGroup) component;
-            return group.getRect();
+        CompiledRuleProgram program = currentState.program;
+        int slot = program == null ? -1 : program.getSlot(component);
+        if (slot == -1) {
+            component = unwrapComponentWrapper(component);
+            if (component instanceof LayoutGroup) {
+                return ((LayoutGroup) component).getRect();
+            }
+            return new ComponentRect();
+        }
+        if (program.isGroup(slot)) {
+            currentState.groupBounds.storeRect(slot);
+        }
+        return currentState.rects.toComponentRect(slot);
+    }
+
+    /**
+     * Moves calculated rect of the component, or all components of the group, by dx and dy
+     */
+    void moveRect(Object component, int dx, int dy) {
+        CompiledRuleProgram program = currentState.program;
+        int slot = program == null ? -1 : program.getSlot(component);
+        if (slot == -1) {
+            component = unwrapComponentWrapper(component);
+            if (component instanceof LayoutGroup) {
+                ((LayoutGroup) component).moveChildren(dx, dy);
+            }
+            return;
         }
-        ComponentRect rect = componentRectangleMap.get(component);
-        if (rect == null) {
-            rect = new ComponentRect();
-            componentRectangleMap.put(component, rect);
+        moveSlot(currentState, slot, dx, dy);
+    }
+
+    private void moveSlot(CalculationState state, int slot, int dx, int dy) {
+        if (state.program.isGroup(slot)) {
+            state.groupBounds.moveGroup(slot, dx, dy);
+        } else {
+            SlotRects rects = state.rects;
+            int oldX = rects.getX(slot), oldY = rects.getY(slot);
+            rects.moveX(slot, oldX + dx);
+            rects.moveY(slot, oldY + dy);
+            state.groupBounds.componentChanged(slot, oldX, oldY, oldX + rects.getWidth(slot), oldY + rects.getHeight(slot));
         }
-        return rect;
     }
 
-    private int getPosition(ComponentRect rect, Object component, Edge edge) {
+    private int getPosition(CalculationState state, int slot, int edge) {
+        CompiledRuleProgram program = state.program;
+        SlotRects rects = state.rects;
+        if (program.isGroup(slot)) {
+            state.groupBounds.storeRect(slot);
+        }
         switch (edge) {
-            case LEFT:
-                return rect.getX();
-            case RIGHT:
-                return rect.getX2();
-            case TOP:
-                return rect.getY();
-            case BOTTOM:
-                return rect.getY2();
-            case WIDTH:
-                return rect.getWidth();
-            case HEIGHT:
-                return rect.getHeight();
-            case HOR_CENTER:
-                return rect.getX() + rect.getWidth() / 2;
-            case VER_CENTER:
-                return rect.getY() + rect.getHeight() / 2;
-            case BASELINE:
-                return componentActionsWrapper.getBaseLine(component, rect.getWidth(), rect.getHeight()) + rect.getY();
+            case CompiledRuleProgram.LEFT:
+                return rects.getX(slot);
+            case CompiledRuleProgram.RIGHT:
+                return rects.getX2(slot);
+            case CompiledRuleProgram.TOP:
+                return rects.getY(slot);
+            case CompiledRuleProgram.BOTTOM:
+                return rects.getY2(slot);
+            case CompiledRuleProgram.WIDTH:
+                return rects.getWidth(slot);
+            case CompiledRuleProgram.HEIGHT:
+                return rects.getHeight(slot);
+            case CompiledRuleProgram.HOR_CENTER:
+                return rects.getX(slot) + rects.getWidth(slot) / 2;
+            case CompiledRuleProgram.VER_CENTER:
+                return rects.getY(slot) + rects.getHeight(slot) / 2;
+            case CompiledRuleProgram.BASELINE:
+                return getBaseLine(state, slot, rects.getWidth(slot), rects.getHeight(slot)) + rects.getY(slot);
             default:
                 throw new RuntimeException("Unknown edge " + edge);
         }
     }
 
-    private void setPosition(ComponentRect rect, Object component, Edge edge, int value) {
-        component = unwrapComponentWrapper(component);
-        if (component instanceof LayoutGroup) {
+    private int getBaseLine(CalculationState state, int slot, int width, int height) {
+        if (state.program.isGroup(slot)) {
+            throw new IllegalArgumentException("Cannot get base line from group");
+        }
+        if (state.detached && !state.baselines.isCached(slot, width, height)) {
+            throw new ComponentAccessException();
+        }
+        return state.baselines.getBaseLine(slot, width, height);
+    }
+
+    private void setPosition(CalculationState state, int slot, int edge, int value) {
+        CompiledRuleProgram program = state.program;
+        SlotRects rects = state.rects;
+        if (program.isGroup(slot)) {
+            state.groupBounds.storeRect(slot);
             int diffX = 0;
             int diffY = 0;
             switch (edge) {
-                case LEFT: {
-                    diffX = value - rect.getX();
+                case CompiledRuleProgram.LEFT: {
+                    diffX = value - rects.getX(slot);
                     break;
                 }
-                case TOP: {
-                    diffY = value - rect.getY();
+                case CompiledRuleProgram.TOP: {
+                    diffY = value - rects.getY(slot);
                     break;
                 }
-                case RIGHT: {
-                    diffX = value - rect.getX2();
+                case CompiledRuleProgram.RIGHT: {
+                    diffX = value - rects.getX2(slot);
                     break;
                 }
-                case BOTTOM: {
-                    diffY = value - rect.getY2();
+                case CompiledRuleProgram.BOTTOM: {
+                    diffY = value - rects.getY2(slot);
                     break;
                 }
-                case HOR_CENTER: {
-                    diffX = value - (rect.getX() + ((rect.getX2() - rect.getX()) / 2));
+                case CompiledRuleProgram.HOR_CENTER: {
+                    diffX = value - (rects.getX(slot) + ((rects.getX2(slot) - rects.getX(slot)) / 2));
                     break;
                 }
-                case VER_CENTER: {
-                    diffY = value - (rect.getY() + ((rect.getY2() - rect.getY()) / 2));
+                case CompiledRuleProgram.VER_CENTER: {
+                    diffY = value - (rects.getY(slot) + ((rects.getY2(slot) - rects.getY(slot)) / 2));
                     break;
                 }
             }
-
-
-            ((LayoutGroup) component).moveChildren(diffX, diffY);
+            state.groupBounds.moveGroup(slot, diffX, diffY);
         } else {
+            int oldX = rects.getX(slot), oldY = rects.getY(slot), oldX2 = rects.getX2(slot), oldY2 = rects.getY2(slot);
             switch (edge) {
-                case LEFT: {
-                    rect.setX(value);
+                case CompiledRuleProgram.LEFT: {
+                    rects.setX(slot, value);
                     break;
                 }
-                case RIGHT: {
-                    rect.setX2(value);
+                case CompiledRuleProgram.RIGHT: {
+                    rects.setX2(slot, value);
                     break;
                 }
-                case TOP: {
-                    rect.setY(value);
+                case CompiledRuleProgram.TOP: {
+                    rects.setY(slot, value);
                     break;
                 }
-                case BOTTOM: {
-                    rect.setY2(value);
+                case CompiledRuleProgram.BOTTOM: {
+                    rects.setY2(slot, value);
                     break;
                 }
-                case WIDTH: {
-                    rect.setWidth(value);
+                case CompiledRuleProgram.WIDTH: {
+                    rects.setWidth(slot, value);
                     break;
                 }
-                case HEIGHT: {
-                    rect.setHeight(value);
+                case CompiledRuleProgram.HEIGHT: {
+                    rects.setHeight(slot, value);
                     break;
                 }
-                case HOR_CENTER: {
-                    rect.moveX(value - rect.getWidth() / 2);
+                case CompiledRuleProgram.HOR_CENTER: {
+                    rects.moveX(slot, value - rects.getWidth(slot) / 2);
                     break;
                 }
-                case VER_CENTER: {
-                    rect.moveY(value - rect.getHeight() / 2);
+                case CompiledRuleProgram.VER_CENTER: {
+                    rects.moveY(slot, value - rects.getHeight(slot) / 2);
                     break;
                 }
-                case BASELINE: {
-                    int baseLine = componentActionsWrapper.getBaseLine(component, rect.getWidth(), rect.getHeight()) + rect.getY();
+                case CompiledRuleProgram.BASELINE: {
+                    int baseLine = getBaseLine(state, slot, rects.getWidth(slot), rects.getHeight(slot)) + rects.getY(slot);
                     int diff = value - baseLine;
-                    rect.moveY(rect.getY() + diff);
+                    rects.moveY(slot, rects.getY(slot) + diff);
                     break;
                 }
                 default:
                     throw new RuntimeException("Unknown edge " + edge);
             }
+            state.groupBounds.componentChanged(slot, oldX, oldY, oldX2, oldY2);
+        }
+    }
+
+    /**
+     * Thrown when layout calculated on other thread needs data from components that was not prepared
+     */
+    private static class ComponentAccessException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private ComponentAccessException() {
+            super(null, null, false, false);
         }
     }
 
+    /**
+     * Everything needed to calculate layout on other thread, and the result of calculation
+     */
+    private static class LayoutSnapshot {
+        private long revision;
+        private int parentWidth;
+        private int parentHeight;
+        private int contentWidth;
+        private int contentHeight;
+        private CalculationState state;
+        private boolean solved;
+    }
+
     private enum SizeType {
         MIN, PREF
     }
+
+    /**
+     * Cached sizes of children of one kind, indexed by slot of current compiled program
+     */
+    private static class ComponentSizes {
+        private final SizeType sizeType;
+        private CompiledRuleProgram program;
+        private int[] widths = new int[0];
+        private int[] heights = new int[0];
+        private boolean[] known = new boolean[0];
+
+        private ComponentSizes(SizeType sizeType) {
+            this.sizeType = sizeType;
+        }
+
+        /**
+         * Moves sizes of components that are still children of the parent to their new slots
+         */
+        private void setProgram(CompiledRuleProgram newProgram) {
+            int slotCount = newProgram.getSlotCount();
+            int[] newWidths = new int[slotCount];
+            int[] newHeights = new int[slotCount];
+            boolean[] newKnown = new boolean[slotCount];
+            for (int slot = 1; slot <= newProgram.childCount; slot++) {
+                int oldSlot = program == null ? -1 : program.getSlot(newProgram.slotObjects[slot]);
+                if (oldSlot != -1 && program.isChild(oldSlot)) {
+                    newWidths[slot] = widths[oldSlot];
+                    newHeights[slot] = heights[oldSlot];
+                    newKnown[slot] = known[oldSlot];
+                }
+            }
+            program = newProgram;
+            widths = newWidths;
+            heights = newHeights;
+            known = newKnown;
+        }
+
+        private void invalidate() {
+            Arrays.fill(known, false);
+        }
+
+        private ComponentSizes copy() {
+            ComponentSizes copy = new ComponentSizes(sizeType);
+            copy.program = program;
+            copy.widths = widths.clone();
+            copy.heights = heights.clone();
+            copy.known = known.clone();
+            return copy;
+        }
+
+        private void invalidateComponent(Object component) {
+            int slot = program == null ? -1 : program.getSlot(component);
+            if (program != null && program.isChild(slot)) {
+                known[slot] = false;
+            }
+        }
+    }
+
+    /**
+     * Calculated rects of components, indexed by slot of compiled program.
+     * Kept between calculations to recalculate only changed parts
+     */
+    private static class CalculationState {
+        private final IntList changedSlots = new IntList();
+        private final IntList affectedRules = new IntList();
+        private final IntList affectedForms = new IntList();
+        private final ComponentSizes sizes;
+        private final BaselineCache baselines;
+        private final boolean intrinsic;
+        //layout is calculated on other thread, components should not be accessed
+        private boolean detached;
+        //rules evaluated while detached, not added to metrics yet
+        private long detachedRulesEvaluated;
+        private CompiledRuleProgram program;
+        private SlotRects rects = new SlotRects(0);
+        private GroupBounds groupBounds;
+        private boolean[] changed = new boolean[0];
+        private int parentWidth;
+        private int parentHeight;
+        private boolean calculated;
+        //constraints of the program in solver mode
+        private RuleConstraintSystem constraints;
+        //rects as functions of the parent size for different regions of sizes, compiled on resize
+        private final List<AffineLayout> affineLayouts = new ArrayList<>();
+        //current rects are calculated for size outside of compiled regions
+        private boolean affineRegionMissing = true;
+        //rules are not affine
+        private boolean affineFailed;
+        //preferred/minimum size of the layout calculated from current rects, null if rects are changed after calculation
+        private Dimension layoutSize;
+
+        private CalculationState(ComponentSizes sizes, BaselineCache baselines, boolean intrinsic) {
+            this.sizes = sizes;
+            this.baselines = baselines;
+            this.intrinsic = intrinsic;
+        }
+
+        private void setProgram(CompiledRuleProgram newProgram) {
+            int slotCount = newProgram.getSlotCount();
+            SlotRects newRects = new SlotRects(slotCount);
+            for (int slot = 0; slot < slotCount; slot++) {
+                int oldSlot = program == null ? -1 : program.getSlot(newProgram.slotObjects[slot]);
+                if (oldSlot != -1 && !program.isGroup(oldSlot)) {
+                    newRects.copySlot(rects, oldSlot, slot);
+                }
+            }
+            program = newProgram;
+            rects = newRects;
+            groupBounds = new GroupBounds(newProgram, newRects);
+            changed = new boolean[slotCount];
+            changedSlots.clear();
+            layoutSize = null;
+            constraints = null;
+            forgetAffineLayout();
+        }
+
+        private void invalidate() {
+            calculated = false;
+            clearChangedSlots();
+            layoutSize = null;
+            forgetAffineLayout();
+        }
+
+        private void forgetAffineLayout() {
+            affineLayouts.clear();
+            affineRegionMissing = true;
+            affineFailed = false;
+        }
+
+        private void invalidateComponent(Object component) {
+            int slot = program == null ? -1 : program.getSlot(component);
+            if (program != null && program.isChild(slot)) {
+                markChanged(slot);
+            }
+        }
+
+        private void markChanged(int slot) {
+            if (slot != CompiledRuleProgram.PARENT_SLOT) {
+                forgetAffineLayout();
+            }
+            if (!changed[slot]) {
+                changed[slot] = true;
+                changedSlots.add(slot);
+            }
+            layoutSize = null;
+        }
+
+        private void clearChangedSlots() {
+            for (int i = 0; i < changedSlots.size(); i++) {
+                changed[changedSlots.get(i)] = false;
+            }
+            changedSlots.clear();
+        }
+    }
 }
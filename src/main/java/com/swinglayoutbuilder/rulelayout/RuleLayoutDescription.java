@@ -0,0 +1,313 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.awt.Insets;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Text description of a rule layout, read in one pass straight into {@link RuleLayoutBlueprint}, without builder calls.
+ * Components are referenced by ids, the parent by id "parent". Every id should be declared before it is used in rules.
+ * <pre>
+ * rulelayout 1
+ * # comment
+ * padding &lt;left&gt; &lt;top&gt; &lt;right&gt; &lt;bottom&gt;
+ * solver                                      solve rules as constraints, see {@link RuleLayout#setSolverMode(boolean)}
+ * optimization off                            keep no-op and overridden rules
+ * child &lt;id&gt;...                             children in the order they are added to the container
+ * group &lt;id&gt; &lt;member id&gt;...
+ * &lt;id&gt;.&lt;EDGE&gt; = &lt;id&gt;.&lt;EDGE&gt; [+|- &lt;offset&gt;] [required|strong|medium|weak]   rule as printed by {@link Rule#toString()}, strong by default
+ * anchor &lt;id&gt; left|top|right|bottom... [&lt;left&gt; &lt;top&gt; &lt;right&gt; &lt;bottom&gt; multipliers]
+ * form &lt;label to field distance&gt; [right] [gap &lt;rows gap&gt;]   the same {@link LayoutForm} and group ids as RuleLayoutBuilder.templateForm
+ * row &lt;label id&gt; &lt;field id&gt; [baseline|top|bottom|center]   declares label and field as children if they are not declared
+ * end
+ * </pre>
+ */
+public final class RuleLayoutDescription {
+    static final String HEADER = "rulelayout";
+    static final int VERSION = 1;
+    private static final String PARENT = "parent";
+
+    private final Object parent = new RuleLayoutBlueprint.Placeholder(CompiledRuleProgram.PARENT_SLOT);
+    private final Map<String, Object> objects = new HashMap<>();
+    //declared groups, so a group is added to other group without casts
+    private final Map<Object, LayoutGroup<Object>> groups = new IdentityHashMap<>();
+    private final List<Object> children = new ArrayList<>();
+    private final List<String> childIds = new ArrayList<>();
+    private final List<Rule> rules = new ArrayList<>();
+    private final List<LayoutForm> forms = new ArrayList<>();
+    private final List<AnchoredToParentEdges> anchors = new ArrayList<>();
+    private final Insets padding = new Insets(0, 0, 0, 0);
+    private boolean solverMode;
+    private boolean ruleOptimization = true;
+    private int formCount;
+    //form which rows are read now
+    private Form form;
+
+    private RuleLayoutDescription() {
+        objects.put(PARENT, parent);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the description is not valid
+     */
+    public static RuleLayoutBlueprint read(Reader reader) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String header = in.readLine();
+        if (header == null || !header.startsWith(HEADER + " ")) {
+            throw new IllegalArgumentException("Not a rule layout description");
+        }
+        int version = Integer.parseInt(header.substring(HEADER.length() + 1).trim());
+        if (version > VERSION) {
+            throw new IllegalArgumentException("Unsupported rule layout description version " + version);
+        }
+        RuleLayoutDescription description = new RuleLayoutDescription();
+        String line;
+        int lineNumber = 1;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            try {
+                description.execute(trimmed.split("\\s+"));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Wrong line " + lineNumber + " of rule layout description: " + line, e);
+            }
+        }
+        if (description.form != null) {
+            throw new IllegalArgumentException("Form is not closed by end");
+        }
+        return description.toBlueprint();
+    }
+
+    private void execute(String[] tokens) {
+        if (form != null && !tokens[0].equals("row") && !tokens[0].equals("end")) {
+            throw new IllegalArgumentException("Only rows can be declared in form");
+        }
+        switch (tokens[0]) {
+            case "padding":
+                padding.set(Integer.parseInt(tokens[2]), Integer.parseInt(tokens[1]), Integer.parseInt(tokens[4]), Integer.parseInt(tokens[3]));
+                break;
+            case "solver":
+                solverMode = true;
+                break;
+            case "optimization":
+                ruleOptimization = !tokens[1].equals("off");
+                break;
+            case "child":
+                for (int i = 1; i < tokens.length; i++) {
+                    declareChild(tokens[i]);
+                }
+                break;
+            case "group":
+                declareGroup(tokens[1], 2, tokens);
+                break;
+            case "anchor":
+                readAnchor(tokens);
+                break;
+            case "form":
+                readForm(tokens);
+                break;
+            case "row":
+                readRow(tokens);
+                break;
+            case "end":
+                if (form == null) {
+                    throw new IllegalArgumentException("There is no form to end");
+                }
+                form.finish();
+                form = null;
+                break;
+            default:
+                readRule(tokens);
+        }
+    }
+
+    private Object declareChild(String id) {
+        Object child = new RuleLayoutBlueprint.Placeholder(children.size() + 1);
+        declare(id, child);
+        children.add(child);
+        childIds.add(id);
+        return child;
+    }
+
+    private LayoutGroup<Object> declareGroup(String id, int firstMember, String... members) {
+        LayoutGroup<Object> group = new LayoutGroup<>(null);
+        for (int i = firstMember; i < members.length; i++) {
+            addMember(group, get(members[i]));
+        }
+        declare(id, group);
+        groups.put(group, group);
+        return group;
+    }
+
+    private void addMember(LayoutGroup<Object> group, Object member) {
+        LayoutGroup<Object> memberGroup = groups.get(member);
+        group.addComponent(memberGroup != null ? new ComponentWrapper<>(memberGroup) : new ComponentWrapper<>(member));
+    }
+
+    private void declare(String id, Object object) {
+        if (objects.putIfAbsent(id, object) != null) {
+            throw new IllegalArgumentException("Component/group with id [" + id + "] is already declared");
+        }
+    }
+
+    private Object get(String id) {
+        Object object = objects.get(id);
+        if (object == null) {
+            throw new IllegalArgumentException("Cannot find component with id=" + id);
+        }
+        return object;
+    }
+
+    /**
+     * id.EDGE = id.EDGE [+|- offset] [priority]
+     */
+    private void readRule(String[] tokens) {
+        if (tokens.length < 3 || !tokens[1].equals("=")) {
+            throw new IllegalArgumentException("Unknown record " + tokens[0]);
+        }
+        int offset = 0;
+        int next = 3;
+        if (tokens.length > 4 && (tokens[3].equals("+") || tokens[3].equals("-"))) {
+            offset = Integer.parseInt(tokens[4]);
+            offset = tokens[3].equals("-") ? -offset : offset;
+            next = 5;
+        }
+        RulePriority priority = RulePriority.STRONG;
+        if (next < tokens.length) {
+            priority = RulePriority.valueOf(tokens[next++].toUpperCase());
+        }
+        if (next != tokens.length) {
+            throw new IllegalArgumentException("Unexpected " + tokens[next]);
+        }
+        int target = tokens[0].lastIndexOf('.');
+        int anchor = tokens[2].lastIndexOf('.');
+        rules.add(new Rule(Edge.valueOf(tokens[2].substring(anchor + 1)), get(tokens[2].substring(0, anchor)), offset,
+                Edge.valueOf(tokens[0].substring(target + 1)), get(tokens[0].substring(0, target)), priority));
+    }
+
+    private void readAnchor(String[] tokens) {
+        Object object = get(tokens[1]);
+        if (!(object instanceof RuleLayoutBlueprint.Placeholder) || object == parent) {
+            throw new IllegalArgumentException("Only children can be anchored to parent edges");
+        }
+        boolean left = false, top = false, right = false, bottom = false;
+        int i = 2;
+        for (; i < tokens.length && Character.isLetter(tokens[i].charAt(0)); i++) {
+            switch (tokens[i]) {
+                case "left":
+                    left = true;
+                    break;
+                case "top":
+                    top = true;
+                    break;
+                case "right":
+                    right = true;
+                    break;
+                case "bottom":
+                    bottom = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown edge " + tokens[i]);
+            }
+        }
+        AnchoredToParentEdges anchored = new AnchoredToParentEdges(object, left, top, right, bottom);
+        if (i < tokens.length) {
+            anchored.setMultipliers(Float.parseFloat(tokens[i]), Float.parseFloat(tokens[i + 1]), Float.parseFloat(tokens[i + 2]),
+                    Float.parseFloat(tokens[i + 3]));
+        }
+        anchors.add(anchored);
+    }
+
+    private void readForm(String[] tokens) {
+        boolean labelsAlignedLeft = true;
+        int rowsGap = 10;
+        for (int i = 2; i < tokens.length; i++) {
+            if (tokens[i].equals("right")) {
+                labelsAlignedLeft = false;
+            } else if (tokens[i].equals("gap")) {
+                rowsGap = Integer.parseInt(tokens[++i]);
+            } else {
+                throw new IllegalArgumentException("Unexpected " + tokens[i]);
+            }
+        }
+        form = new Form(formCount == 0 ? "form" : "form" + formCount, new LayoutForm(Integer.parseInt(tokens[1]), rowsGap, labelsAlignedLeft));
+        formCount++;
+    }
+
+    private void readRow(String[] tokens) {
+        if (form == null) {
+            throw new IllegalArgumentException("Row should be declared in form");
+        }
+        Object label = objects.containsKey(tokens[1]) ? get(tokens[1]) : declareChild(tokens[1]);
+        Object field = objects.containsKey(tokens[2]) ? get(tokens[2]) : declareChild(tokens[2]);
+        Edge alignment = Edge.BASELINE;
+        if (tokens.length > 3) {
+            switch (tokens[3]) {
+                case "top":
+                    alignment = Edge.TOP;
+                    break;
+                case "bottom":
+                    alignment = Edge.BOTTOM;
+                    break;
+                case "center":
+                    alignment = Edge.VER_CENTER;
+                    break;
+                case "baseline":
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown alignment " + tokens[3]);
+            }
+        }
+        form.addRow(label, field, alignment);
+    }
+
+    private RuleLayoutBlueprint toBlueprint() {
+        return new RuleLayoutBlueprint(parent, children.toArray(), childIds.toArray(new String[0]), rules, forms, anchors, padding,
+                solverMode, ruleOptimization);
+    }
+
+    /**
+     * Groups of a form, the form is added when it is finished, see RuleLayoutBuilder.FormTemplate
+     */
+    private final class Form {
+        private final String idPrefix;
+        private final LayoutForm layoutForm;
+        private LayoutGroup<Object> formGroup;
+        private LayoutGroup<Object> labelsGroup;
+        private LayoutGroup<Object> fieldsGroup;
+
+        private Form(String idPrefix, LayoutForm layoutForm) {
+            this.idPrefix = idPrefix;
+            this.layoutForm = layoutForm;
+        }
+
+        private void addRow(Object label, Object field, Edge alignment) {
+            LayoutGroup<Object> rowGroup = declareGroup(idPrefix + "RowGroup" + layoutForm.getRowCount(), 0);
+            if (formGroup == null) {
+                formGroup = declareGroup(idPrefix + "Group", 0);
+                labelsGroup = declareGroup(idPrefix + "LabelsGroup", 0);
+                fieldsGroup = declareGroup(idPrefix + "FieldsGroup", 0);
+            }
+            addMember(formGroup, label);
+            addMember(labelsGroup, label);
+            addMember(rowGroup, label);
+            addMember(formGroup, field);
+            addMember(fieldsGroup, field);
+            addMember(rowGroup, field);
+            layoutForm.addRow(label, field, alignment);
+        }
+
+        private void finish() {
+            forms.add(layoutForm);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Blueprints of {@link RuleLayoutDescription}s by SHA-256 hash of their content, so a description that is not changed is read
+ * only once. With a directory, blueprints are also stored there as {@link RuleLayoutArchive} files named by the hash and survive
+ * restarts of the application, files written by an incompatible version are replaced.
+ */
+public final class RuleLayoutDescriptionCache {
+    private final Path directory;
+    private final Map<String, RuleLayoutBlueprint> blueprints = new ConcurrentHashMap<>();
+    private final AtomicLong readCount = new AtomicLong();
+
+    /**
+     * Cache in memory only
+     */
+    public RuleLayoutDescriptionCache() {
+        this(null);
+    }
+
+    public RuleLayoutDescriptionCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public RuleLayoutBlueprint get(Path file) throws IOException {
+        return get(Files.readAllBytes(file));
+    }
+
+    /**
+     * @param content description in UTF-8
+     */
+    public RuleLayoutBlueprint get(byte[] content) throws IOException {
+        String hash = hash(content);
+        RuleLayoutBlueprint blueprint = blueprints.get(hash);
+        if (blueprint != null) {
+            return blueprint;
+        }
+        Path compiled = directory == null ? null : directory.resolve(hash + ".rlba");
+        if (compiled != null && Files.exists(compiled)) {
+            try {
+                blueprint = RuleLayoutArchive.open(compiled).getBlueprint(hash);
+            } catch (IllegalArgumentException e) {
+                //written by other version, read the description again
+            }
+        }
+        if (blueprint == null) {
+            blueprint = RuleLayoutDescription.read(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+            readCount.incrementAndGet();
+            if (compiled != null) {
+                Path temp = Files.createTempFile(directory, hash, ".tmp");
+                RuleLayoutArchive.write(temp, Collections.singletonMap(hash, blueprint));
+                Files.move(temp, compiled, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        RuleLayoutBlueprint previous = blueprints.putIfAbsent(hash, blueprint);
+        return previous == null ? blueprint : previous;
+    }
+
+    /**
+     * Number of descriptions read by this cache, descriptions found in memory or in the directory are not counted
+     */
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    public void clear() {
+        blueprints.clear();
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+}
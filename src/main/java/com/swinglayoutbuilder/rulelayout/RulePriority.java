@@ -0,0 +1,23 @@
+package com.swinglayoutbuilder.rulelayout;
+
+/**
+ * Priority of the rule in solver mode. Required rules are always satisfied, other rules are satisfied as much as possible,
+ * rules with higher priority first. Preferred sizes of components are kept with priority between MEDIUM and WEAK,
+ * so only WEAK rules give way to preferred sizes.
+ */
+public enum RulePriority {
+    REQUIRED(SimplexSolver.REQUIRED),
+    STRONG(1_000_000),
+    MEDIUM(1_000),
+    WEAK(1);
+
+    private final double strength;
+
+    RulePriority(double strength) {
+        this.strength = strength;
+    }
+
+    double getStrength() {
+        return strength;
+    }
+}
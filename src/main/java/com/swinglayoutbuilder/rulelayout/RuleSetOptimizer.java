@@ -0,0 +1,279 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes rules that cannot change the result of rule execution: no-op rules, duplicates and rules overridden by a later rule
+ * that moves the same edge. Only cases where the result is exactly the same are removed:
+ * <ul>
+ * <li>rules are compared in execution order and other rules keep this order, see {@link RuleDependencyGraph#removeRules}</li>
+ * <li>rules in dependency cycles are never removed</li>
+ * <li>the later rule must not read the component it moves, otherwise it would read position set by the earlier rule</li>
+ * <li>setting left/top edge flips negative width/height of the component(on both axes), so left/top rules are removed only
+ * from components whose size is not changed by any rule</li>
+ * <li>right/bottom rule is no-op only if no rule moves left/width or top/height edge, which depends on whether right/bottom was set</li>
+ * <li>rules that read baseline are not removed, reading baseline of a group or of a component with negative size fails</li>
+ * </ul>
+ * Rules are optimized only for rule execution, in solver mode every rule is a constraint with priority.
+ */
+final class RuleSetOptimizer {
+    private static final int EDGE_COUNT = Edge.values().length;
+
+    private final Object parent;
+    private final List<Rule> rules;
+    private final RuleDependencyGraph graph;
+    private final boolean[] removed;
+    private final List<RemovedRule> removedRules = new ArrayList<>();
+    /**
+     * Bit mask of edges moved by rules per component, groups are not included
+     */
+    private final Map<Object, Integer> movedEdges = new IdentityHashMap<>();
+
+    RuleSetOptimizer(Object parent, List<Rule> rules, RuleDependencyGraph graph) {
+        this.parent = RuleLayoutCalculationEngine.unwrapComponentWrapper(parent);
+        this.rules = rules;
+        this.graph = graph;
+        removed = new boolean[rules.size()];
+        for (Rule rule : rules) {
+            Object target = RuleLayoutCalculationEngine.unwrapComponentWrapper(rule.getComponent());
+            if (!(target instanceof LayoutGroup)) {
+                movedEdges.merge(target, 1 << rule.getEdge().ordinal(), (a, b) -> a | b);
+            }
+        }
+        removeNoOpRules();
+        removeDuplicateAndOverriddenRules();
+    }
+
+    List<RemovedRule> getRemovedRules() {
+        return removedRules;
+    }
+
+    /**
+     * Removed flags of rules by index in insertion order
+     */
+    boolean[] getRemovedFlags() {
+        return removed;
+    }
+
+    private void removeNoOpRules() {
+        for (int i = 0; i < rules.size(); i++) {
+            if (!graph.isInCycle(i) && isNoOp(rules.get(i))) {
+                remove(i, RemovedRule.Reason.NO_OP, null);
+            }
+        }
+    }
+
+    private boolean isNoOp(Rule rule) {
+        Object target = RuleLayoutCalculationEngine.unwrapComponentWrapper(rule.getComponent());
+        Object anchor = RuleLayoutCalculationEngine.unwrapComponentWrapper(rule.getAnchorComponent());
+        Edge edge = rule.getEdge();
+        if (readsBaseline(rule)) {
+            return false;
+        }
+        if (target instanceof LayoutGroup && RuleDependencyGraph.groupMoveAxes(edge) == 0) {
+            //group is not resized, the rule only reads the anchor
+            return true;
+        }
+        if (anchor != target || rule.getAnchorEdge() != edge || rule.getOffset() != 0) {
+            return false;
+        }
+        if (target instanceof LayoutGroup) {
+            return true;
+        }
+        switch (edge) {
+            case LEFT:
+            case TOP:
+                return !mayNormalize(target, edge);
+            case RIGHT:
+                return !movesAny(target, Edge.LEFT, Edge.WIDTH);
+            case BOTTOM:
+                return !movesAny(target, Edge.TOP, Edge.HEIGHT);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Rules are compared in execution order, which is kept after removal. Later rule that moves the same edge of the same
+     * component or group makes the earlier rule dead, if no rule executed in between reads or moves the edge.
+     * Duplicate is removed if no rule executed in between moves the edge or the anchor.
+     */
+    private void removeDuplicateAndOverriddenRules() {
+        int[] order = graph.getOrder();
+        int[] positions = new int[order.length];
+        for (int position = 0; position < order.length; position++) {
+            positions[order[position]] = position;
+        }
+        int[] lastWriter = new int[graph.getNodeCount()];
+        int[] lastUser = new int[graph.getNodeCount()];
+        Arrays.fill(lastWriter, -1);
+        Arrays.fill(lastUser, -1);
+        Map<Object, int[]> lastRuleOfEdge = new IdentityHashMap<>();
+        boolean[] marked = new boolean[graph.getNodeCount()];
+        for (int position = 0; position < order.length; position++) {
+            int i = order[position];
+            if (removed[i] || graph.isInCycle(i)) {
+                markUsed(i, lastWriter, lastUser);
+                continue;
+            }
+            Rule rule = rules.get(i);
+            Object target = RuleLayoutCalculationEngine.unwrapComponentWrapper(rule.getComponent());
+            int[] written = graph.getWrittenNodes(i);
+            int[] lastRules = lastRuleOfEdge.get(target);
+            if (lastRules == null) {
+                lastRules = new int[EDGE_COUNT];
+                Arrays.fill(lastRules, -1);
+                lastRuleOfEdge.put(target, lastRules);
+            }
+            int previous = lastRules[rule.getEdge().ordinal()];
+            if (previous != -1 && written.length > 0 && canOverride(target, rule.getEdge()) && !readsWrittenNodes(i, written, marked)) {
+                Rule previousRule = rules.get(previous);
+                if (isSameRule(previousRule, rule) && allEqual(lastWriter, written, previous)
+                        && notMovedAfter(graph.getAnchorNodes(i), lastWriter, positions, previous)) {
+                    remove(i, RemovedRule.Reason.DUPLICATE, previousRule);
+                    continue;
+                }
+                if (allEqual(lastUser, written, previous) && groupsNotReadAfter(written, lastUser, positions, previous)
+                        && !readsBaseline(previousRule)) {
+                    remove(previous, RemovedRule.Reason.OVERRIDDEN, rule);
+                }
+            }
+            markUsed(i, lastWriter, lastUser);
+            lastRules[rule.getEdge().ordinal()] = i;
+        }
+    }
+
+    private void markUsed(int rule, int[] lastWriter, int[] lastUser) {
+        for (int node : graph.getReadNodes(rule)) {
+            lastUser[node] = rule;
+        }
+        int[] written = graph.getWrittenNodes(rule);
+        for (int node : written) {
+            markWritten(node, rule, lastWriter, lastUser);
+        }
+        Object target = RuleLayoutCalculationEngine.unwrapComponentWrapper(rules.get(rule).getComponent());
+        if (written.length > 0 && mayNormalize(target, rules.get(rule).getEdge())) {
+            //flipping of negative size reads and moves both axes
+            int object = written[0] >> 1;
+            markWritten(object * 2, rule, lastWriter, lastUser);
+            markWritten(object * 2 + 1, rule, lastWriter, lastUser);
+        }
+    }
+
+    /**
+     * Moving a member also moves groups that contain it
+     */
+    private void markWritten(int node, int rule, int[] lastWriter, int[] lastUser) {
+        lastWriter[node] = rule;
+        lastUser[node] = rule;
+        for (int groupNode : graph.getGroupNodes(node)) {
+            lastWriter[groupNode] = rule;
+        }
+    }
+
+    private static boolean allEqual(int[] values, int[] indexes, int expected) {
+        for (int index : indexes) {
+            if (values[index] != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * None of the nodes was moved after the rule was executed
+     */
+    private static boolean notMovedAfter(int[] nodes, int[] lastWriter, int[] positions, int rule) {
+        for (int node : nodes) {
+            if (lastWriter[node] != -1 && positions[lastWriter[node]] > positions[rule]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * No group that contains one of the nodes was read after the rule was executed
+     */
+    private boolean groupsNotReadAfter(int[] nodes, int[] lastUser, int[] positions, int rule) {
+        for (int node : nodes) {
+            for (int groupNode : graph.getGroupNodes(node)) {
+                if (lastUser[groupNode] != -1 && positions[lastUser[groupNode]] > positions[rule]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean canOverride(Object target, Edge edge) {
+        return !mayNormalize(target, edge);
+    }
+
+    /**
+     * Setting left/top edge flips negative width and height of the component
+     */
+    private boolean mayNormalize(Object target, Edge edge) {
+        return (edge == Edge.LEFT || edge == Edge.TOP) && !(target instanceof LayoutGroup) && (target == parent || isResized(target));
+    }
+
+    private boolean readsWrittenNodes(int rule, int[] written, boolean[] marked) {
+        for (int node : written) {
+            marked[node] = true;
+            for (int groupNode : graph.getGroupNodes(node)) {
+                marked[groupNode] = true;
+            }
+        }
+        boolean reads = false;
+        for (int node : graph.getAnchorNodes(rule)) {
+            reads |= marked[node];
+        }
+        for (int node : written) {
+            marked[node] = false;
+            for (int groupNode : graph.getGroupNodes(node)) {
+                marked[groupNode] = false;
+            }
+        }
+        return reads;
+    }
+
+    /**
+     * Reading baseline fails for groups and for components with negative size, such rule is not removed
+     * so the error is not hidden
+     */
+    private static boolean readsBaseline(Rule rule) {
+        return rule.getAnchorEdge() == Edge.BASELINE;
+    }
+
+    private static boolean isSameRule(Rule a, Rule b) {
+        return a.getEdge() == b.getEdge() && a.getAnchorEdge() == b.getAnchorEdge() && a.getOffset() == b.getOffset()
+                && RuleLayoutCalculationEngine.unwrapComponentWrapper(a.getComponent()) == RuleLayoutCalculationEngine.unwrapComponentWrapper(b.getComponent())
+                && RuleLayoutCalculationEngine.unwrapComponentWrapper(a.getAnchorComponent()) == RuleLayoutCalculationEngine.unwrapComponentWrapper(b.getAnchorComponent());
+    }
+
+    /**
+     * Size of the component can be changed by a rule, so it can become negative
+     */
+    private boolean isResized(Object component) {
+        return movesAny(component, Edge.RIGHT, Edge.BOTTOM, Edge.WIDTH, Edge.HEIGHT);
+    }
+
+    private boolean movesAny(Object component, Edge... edges) {
+        int mask = movedEdges.getOrDefault(component, 0);
+        for (Edge edge : edges) {
+            if ((mask & 1 << edge.ordinal()) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void remove(int rule, RemovedRule.Reason reason, Rule cause) {
+        removed[rule] = true;
+        removedRules.add(new RemovedRule(rules.get(rule), reason, cause));
+    }
+}
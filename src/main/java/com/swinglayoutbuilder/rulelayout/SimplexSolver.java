@@ -0,0 +1,476 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental simplex solver of linear equalities and inequalities with strengths, as described in
+ * "The Cassowary Linear Arithmetic Constraint Solving Algorithm" (Badros, Borning, Stuckey).<br>
+ * Required constraints must be satisfied, other constraints are satisfied as much as possible, stronger first.
+ * Values of edit variables are changed with {@link #suggestValue(Variable, double)}, which reuses current solution
+ * and needs only few pivots of dual simplex.
+ */
+final class SimplexSolver {
+    static final double REQUIRED = 1_001_001_000;
+    private static final double EPSILON = 1.0e-8;
+
+    static final int EQ = 0;
+    static final int LE = 1;
+    static final int GE = 2;
+
+    private static final int EXTERNAL = 0;
+    private static final int SLACK = 1;
+    private static final int ERROR = 2;
+    private static final int DUMMY = 3;
+
+    private final Map<Symbol, Row> rows = new HashMap<>();
+    private final Map<Variable, EditInfo> edits = new HashMap<>();
+    private final List<Variable> variables = new ArrayList<>();
+    private final List<Symbol> infeasibleRows = new ArrayList<>();
+    private final Row objective = new Row(0);
+    private Row artificial;
+    private int symbolCount;
+
+    Variable createVariable() {
+        Variable variable = new Variable(newSymbol(EXTERNAL));
+        variables.add(variable);
+        return variable;
+    }
+
+    /**
+     * Adds constraint (expression op 0), expression is given as pairs of variables and coefficients plus constant
+     *
+     * @throws IllegalStateException if required constraint conflicts with other required constraints
+     */
+    void addConstraint(Expression expression, int operator, double strength) {
+        addConstraint(expression, operator, strength, null);
+    }
+
+    /**
+     * Makes variable editable with {@link #suggestValue(Variable, double)}, strength should be less than required
+     */
+    void addEditVariable(Variable variable, double strength, double value) {
+        if (edits.containsKey(variable)) {
+            throw new IllegalArgumentException("Variable is already editable");
+        }
+        if (strength >= REQUIRED) {
+            throw new IllegalArgumentException("Edit variable cannot be required");
+        }
+        EditInfo info = new EditInfo();
+        addConstraint(new Expression().add(variable, 1), EQ, strength, info);
+        edits.put(variable, info);
+        suggestValue(variable, value);
+    }
+
+    void suggestValue(Variable variable, double value) {
+        EditInfo info = edits.get(variable);
+        if (info == null) {
+            throw new IllegalArgumentException("Variable is not editable");
+        }
+        double delta = value - info.constant;
+        if (delta == 0) {
+            return;
+        }
+        info.constant = value;
+        Row row = rows.get(info.marker);
+        if (row != null) {
+            if (row.add(-delta) < 0) {
+                infeasibleRows.add(info.marker);
+            }
+        } else if ((row = rows.get(info.other)) != null) {
+            if (row.add(delta) < 0) {
+                infeasibleRows.add(info.other);
+            }
+        } else {
+            for (Map.Entry<Symbol, Row> entry : rows.entrySet()) {
+                double coefficient = entry.getValue().coefficientFor(info.marker);
+                if (coefficient != 0 && entry.getValue().add(delta * coefficient) < 0 && entry.getKey().type != EXTERNAL) {
+                    infeasibleRows.add(entry.getKey());
+                }
+            }
+        }
+        dualOptimize();
+    }
+
+    /**
+     * Copies current solution to {@link Variable#value}
+     */
+    void updateVariables() {
+        for (Variable variable : variables) {
+            Row row = rows.get(variable.symbol);
+            variable.value = row == null ? 0 : row.constant;
+        }
+    }
+
+    private Symbol newSymbol(int type) {
+        return new Symbol(symbolCount++, type);
+    }
+
+    private void addConstraint(Expression expression, int operator, double strength, EditInfo info) {
+        Tag tag = info == null ? new Tag() : info;
+        Row row = createRow(expression, operator, strength, tag);
+        Symbol subject = chooseSubject(row, tag);
+        if (subject == null && allDummies(row)) {
+            if (!nearZero(row.constant)) {
+                throw new IllegalStateException("Required constraint cannot be satisfied");
+            }
+            subject = tag.marker;
+        }
+        if (subject == null) {
+            if (!addWithArtificialVariable(row)) {
+                throw new IllegalStateException("Required constraint cannot be satisfied");
+            }
+        } else {
+            row.solveFor(subject);
+            substitute(subject, row);
+            rows.put(subject, row);
+        }
+        optimize(objective);
+    }
+
+    private Row createRow(Expression expression, int operator, double strength, Tag tag) {
+        Row row = new Row(expression.constant);
+        for (int i = 0; i < expression.size; i++) {
+            double coefficient = expression.coefficients[i];
+            if (nearZero(coefficient)) {
+                continue;
+            }
+            Symbol symbol = expression.variables[i].symbol;
+            Row basicRow = rows.get(symbol);
+            if (basicRow != null) {
+                row.insert(basicRow, coefficient);
+            } else {
+                row.insert(symbol, coefficient);
+            }
+        }
+        if (operator == LE || operator == GE) {
+            double coefficient = operator == LE ? 1 : -1;
+            Symbol slack = newSymbol(SLACK);
+            tag.marker = slack;
+            row.insert(slack, coefficient);
+            if (strength < REQUIRED) {
+                Symbol error = newSymbol(ERROR);
+                tag.other = error;
+                row.insert(error, -coefficient);
+                objective.insert(error, strength);
+            }
+        } else if (strength < REQUIRED) {
+            Symbol plus = newSymbol(ERROR);
+            Symbol minus = newSymbol(ERROR);
+            tag.marker = plus;
+            tag.other = minus;
+            row.insert(plus, -1);
+            row.insert(minus, 1);
+            objective.insert(plus, strength);
+            objective.insert(minus, strength);
+        } else {
+            Symbol dummy = newSymbol(DUMMY);
+            tag.marker = dummy;
+            row.insert(dummy, 1);
+        }
+        if (row.constant < 0) {
+            row.reverseSign();
+        }
+        return row;
+    }
+
+    private static Symbol chooseSubject(Row row, Tag tag) {
+        for (Symbol symbol : row.cells.keySet()) {
+            if (symbol.type == EXTERNAL) {
+                return symbol;
+            }
+        }
+        if ((tag.marker.type == SLACK || tag.marker.type == ERROR) && row.coefficientFor(tag.marker) < 0) {
+            return tag.marker;
+        }
+        if (tag.other != null && (tag.other.type == SLACK || tag.other.type == ERROR) && row.coefficientFor(tag.other) < 0) {
+            return tag.other;
+        }
+        return null;
+    }
+
+    private static boolean allDummies(Row row) {
+        for (Symbol symbol : row.cells.keySet()) {
+            if (symbol.type != DUMMY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean addWithArtificialVariable(Row row) {
+        Symbol artificialSymbol = newSymbol(SLACK);
+        rows.put(artificialSymbol, new Row(row));
+        artificial = new Row(row);
+        optimize(artificial);
+        boolean success = nearZero(artificial.constant);
+        artificial = null;
+
+        Row artificialRow = rows.remove(artificialSymbol);
+        if (artificialRow != null) {
+            if (artificialRow.cells.isEmpty()) {
+                return success;
+            }
+            Symbol entering = anyPivotableSymbol(artificialRow);
+            if (entering == null) {
+                return false;
+            }
+            artificialRow.solveFor(artificialSymbol, entering);
+            substitute(entering, artificialRow);
+            rows.put(entering, artificialRow);
+        }
+        for (Row basicRow : rows.values()) {
+            basicRow.remove(artificialSymbol);
+        }
+        objective.remove(artificialSymbol);
+        return success;
+    }
+
+    private void substitute(Symbol symbol, Row row) {
+        for (Map.Entry<Symbol, Row> entry : rows.entrySet()) {
+            Row basicRow = entry.getValue();
+            basicRow.substitute(symbol, row);
+            if (entry.getKey().type != EXTERNAL && basicRow.constant < 0) {
+                infeasibleRows.add(entry.getKey());
+            }
+        }
+        objective.substitute(symbol, row);
+        if (artificial != null) {
+            artificial.substitute(symbol, row);
+        }
+    }
+
+    private void optimize(Row objective) {
+        while (true) {
+            Symbol entering = getEnteringSymbol(objective);
+            if (entering == null) {
+                return;
+            }
+            Symbol leaving = getLeavingSymbol(entering);
+            if (leaving == null) {
+                throw new IllegalStateException("Objective of constraint solver is unbounded");
+            }
+            Row row = rows.remove(leaving);
+            row.solveFor(leaving, entering);
+            substitute(entering, row);
+            rows.put(entering, row);
+        }
+    }
+
+    private void dualOptimize() {
+        while (!infeasibleRows.isEmpty()) {
+            Symbol leaving = infeasibleRows.remove(infeasibleRows.size() - 1);
+            Row row = rows.get(leaving);
+            if (row != null && !nearZero(row.constant) && row.constant < 0) {
+                Symbol entering = getDualEnteringSymbol(row);
+                if (entering == null) {
+                    throw new IllegalStateException("Dual optimization of constraint solver failed");
+                }
+                rows.remove(leaving);
+                row.solveFor(leaving, entering);
+                substitute(entering, row);
+                rows.put(entering, row);
+            }
+        }
+    }
+
+    private static Symbol getEnteringSymbol(Row objective) {
+        for (Map.Entry<Symbol, Double> cell : objective.cells.entrySet()) {
+            if (cell.getKey().type != DUMMY && cell.getValue() < 0) {
+                return cell.getKey();
+            }
+        }
+        return null;
+    }
+
+    private Symbol getDualEnteringSymbol(Row row) {
+        Symbol entering = null;
+        double ratio = Double.MAX_VALUE;
+        for (Map.Entry<Symbol, Double> cell : row.cells.entrySet()) {
+            if (cell.getValue() > 0 && cell.getKey().type != DUMMY) {
+                double candidateRatio = objective.coefficientFor(cell.getKey()) / cell.getValue();
+                if (candidateRatio < ratio) {
+                    ratio = candidateRatio;
+                    entering = cell.getKey();
+                }
+            }
+        }
+        return entering;
+    }
+
+    private Symbol getLeavingSymbol(Symbol entering) {
+        Symbol leaving = null;
+        double ratio = Double.MAX_VALUE;
+        for (Map.Entry<Symbol, Row> entry : rows.entrySet()) {
+            if (entry.getKey().type != EXTERNAL) {
+                double coefficient = entry.getValue().coefficientFor(entering);
+                if (coefficient < 0) {
+                    double candidateRatio = -entry.getValue().constant / coefficient;
+                    if (candidateRatio < ratio) {
+                        ratio = candidateRatio;
+                        leaving = entry.getKey();
+                    }
+                }
+            }
+        }
+        return leaving;
+    }
+
+    private static Symbol anyPivotableSymbol(Row row) {
+        for (Symbol symbol : row.cells.keySet()) {
+            if (symbol.type == SLACK || symbol.type == ERROR) {
+                return symbol;
+            }
+        }
+        return null;
+    }
+
+    private static boolean nearZero(double value) {
+        return value < 0 ? -value < EPSILON : value < EPSILON;
+    }
+
+    static final class Variable {
+        private final Symbol symbol;
+        double value;
+
+        private Variable(Symbol symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    /**
+     * Sum of variables with coefficients plus constant
+     */
+    static final class Expression {
+        private Variable[] variables = new Variable[4];
+        private double[] coefficients = new double[4];
+        private int size;
+        private double constant;
+
+        Expression add(Variable variable, double coefficient) {
+            if (size == variables.length) {
+                variables = Arrays.copyOf(variables, size * 2);
+                coefficients = Arrays.copyOf(coefficients, size * 2);
+            }
+            variables[size] = variable;
+            coefficients[size] = coefficient;
+            size++;
+            return this;
+        }
+
+        Expression add(double value) {
+            constant += value;
+            return this;
+        }
+    }
+
+    private static final class Symbol {
+        private final int id;
+        private final int type;
+
+        private Symbol(int id, int type) {
+            this.id = id;
+            this.type = type;
+        }
+
+        //ids make iteration order of hash maps, and so the chosen solution, the same in every run
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+
+    private static class Tag {
+        Symbol marker;
+        Symbol other;
+    }
+
+    private static final class EditInfo extends Tag {
+        double constant;
+    }
+
+    /**
+     * Row of the tableau: constant + sum of symbols with coefficients
+     */
+    private static final class Row {
+        private final Map<Symbol, Double> cells;
+        private double constant;
+
+        private Row(double constant) {
+            this.cells = new HashMap<>();
+            this.constant = constant;
+        }
+
+        private Row(Row other) {
+            this.cells = new HashMap<>(other.cells);
+            this.constant = other.constant;
+        }
+
+        private double add(double value) {
+            constant += value;
+            return constant;
+        }
+
+        private void insert(Symbol symbol, double coefficient) {
+            Double existing = cells.get(symbol);
+            double value = existing == null ? coefficient : existing + coefficient;
+            if (nearZero(value)) {
+                cells.remove(symbol);
+            } else {
+                cells.put(symbol, value);
+            }
+        }
+
+        private void insert(Row other, double coefficient) {
+            constant += other.constant * coefficient;
+            for (Map.Entry<Symbol, Double> cell : other.cells.entrySet()) {
+                insert(cell.getKey(), cell.getValue() * coefficient);
+            }
+        }
+
+        private void remove(Symbol symbol) {
+            cells.remove(symbol);
+        }
+
+        private void reverseSign() {
+            constant = -constant;
+            for (Map.Entry<Symbol, Double> cell : cells.entrySet()) {
+                cell.setValue(-cell.getValue());
+            }
+        }
+
+        /**
+         * Solves row for symbol, so row becomes expression for symbol
+         */
+        private void solveFor(Symbol symbol) {
+            double coefficient = -1.0 / cells.remove(symbol);
+            constant *= coefficient;
+            for (Map.Entry<Symbol, Double> cell : cells.entrySet()) {
+                cell.setValue(cell.getValue() * coefficient);
+            }
+        }
+
+        /**
+         * Row is expression for lhs, makes it expression for rhs
+         */
+        private void solveFor(Symbol lhs, Symbol rhs) {
+            insert(lhs, -1.0);
+            solveFor(rhs);
+        }
+
+        private double coefficientFor(Symbol symbol) {
+            Double value = cells.get(symbol);
+            return value == null ? 0 : value;
+        }
+
+        private void substitute(Symbol symbol, Row row) {
+            Double coefficient = cells.remove(symbol);
+            if (coefficient != null) {
+                insert(row, coefficient);
+            }
+        }
+    }
+}
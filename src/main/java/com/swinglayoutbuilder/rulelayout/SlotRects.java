@@ -0,0 +1,160 @@
+package com.swinglayoutbuilder.rulelayout;
+
+/**
+ * Rectangles of all slots of compiled program stored in parallel arrays.<br>
+ * Behaves like array of {@link ComponentRect}, but without object per component. Which edges were set by rules is
+ * stored as bitmask per slot.
+ */
+final class SlotRects {
+    private static final byte X1_SET = 1;
+    private static final byte Y1_SET = 1 << 1;
+    private static final byte X2_SET = 1 << 2;
+    private static final byte Y2_SET = 1 << 3;
+
+    private final int[] x;
+    private final int[] y;
+    private final int[] w;
+    private final int[] h;
+    private final byte[] flags;
+
+    SlotRects(int slotCount) {
+        x = new int[slotCount];
+        y = new int[slotCount];
+        w = new int[slotCount];
+        h = new int[slotCount];
+        flags = new byte[slotCount];
+    }
+
+    int size() {
+        return x.length;
+    }
+
+    void copySlot(SlotRects source, int sourceSlot, int slot) {
+        x[slot] = source.x[sourceSlot];
+        y[slot] = source.y[sourceSlot];
+        w[slot] = source.w[sourceSlot];
+        h[slot] = source.h[sourceSlot];
+        flags[slot] = source.flags[sourceSlot];
+    }
+
+    void reset(int slot, int x, int y, int width, int height) {
+        this.x[slot] = x;
+        this.y[slot] = y;
+        this.w[slot] = width;
+        this.h[slot] = height;
+        flags[slot] = 0;
+    }
+
+    /**
+     * Changes rect without changing which edges were set by rules
+     */
+    void setBounds(int slot, int x, int y, int width, int height) {
+        this.x[slot] = x;
+        this.y[slot] = y;
+        this.w[slot] = width;
+        this.h[slot] = height;
+    }
+
+    void fixX1Y1Position(int slot) {
+        flags[slot] |= X1_SET | Y1_SET;
+    }
+
+    int getX(int slot) {
+        return x[slot];
+    }
+
+    int getY(int slot) {
+        return y[slot];
+    }
+
+    int getWidth(int slot) {
+        return w[slot];
+    }
+
+    int getHeight(int slot) {
+        return h[slot];
+    }
+
+    int getX2(int slot) {
+        return x[slot] + w[slot];
+    }
+
+    int getY2(int slot) {
+        return y[slot] + h[slot];
+    }
+
+    void setX(int slot, int value) {
+        if ((flags[slot] & X2_SET) != 0) {
+            w[slot] = getX2(slot) - value;
+        }
+        x[slot] = value;
+        flags[slot] |= X1_SET;
+        normalize(slot);
+    }
+
+    void setY(int slot, int value) {
+        if ((flags[slot] & Y2_SET) != 0) {
+            h[slot] = getY2(slot) - value;
+        }
+        y[slot] = value;
+        flags[slot] |= Y1_SET;
+        normalize(slot);
+    }
+
+    void setWidth(int slot, int value) {
+        if ((flags[slot] & X2_SET) != 0) {
+            x[slot] = getX2(slot) - value;
+        }
+        w[slot] = value;
+    }
+
+    void setHeight(int slot, int value) {
+        if ((flags[slot] & Y2_SET) != 0) {
+            y[slot] = getY2(slot) - value;
+        }
+        h[slot] = value;
+    }
+
+    void setX2(int slot, int value) {
+        if ((flags[slot] & X1_SET) != 0) {
+            w[slot] = value - x[slot];
+        } else {
+            x[slot] = value - w[slot];
+        }
+        flags[slot] |= X2_SET;
+    }
+
+    void setY2(int slot, int value) {
+        if ((flags[slot] & Y1_SET) != 0) {
+            h[slot] = value - y[slot];
+        } else {
+            y[slot] = value - h[slot];
+        }
+        flags[slot] |= Y2_SET;
+    }
+
+    void moveX(int slot, int value) {
+        x[slot] = value;
+    }
+
+    void moveY(int slot, int value) {
+        y[slot] = value;
+    }
+
+    private void normalize(int slot) {
+        if (w[slot] < 0) {
+            w[slot] = -w[slot];
+            x[slot] = x[slot] - w[slot];
+        }
+        if (h[slot] < 0) {
+            h[slot] = -h[slot];
+            y[slot] = y[slot] - h[slot];
+        }
+    }
+
+    ComponentRect toComponentRect(int slot) {
+        ComponentRect rect = new ComponentRect();
+        rect.reset(x[slot], y[slot], w[slot], h[slot]);
+        return rect;
+    }
+}
@@ -0,0 +1,391 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeListener;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.LayoutManager2;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Rule layout for big scrollable panels. Components are registered with suppliers, rules are calculated for {@link LayoutNode}s
+ * that stand for them, and a component is created, measured and added to the parent only when its node intersects the visible
+ * part of the parent(plus margin, see {@link #setViewportMargin(int)}). Nodes use estimated sizes until their component is
+ * measured, measured sizes stay cached when the component leaves the visible part and is removed from the parent.<br>
+ * So only visible components exist and are queried by Swing. Rules are still calculated for all nodes, but only over cached
+ * sizes, which are much cheaper than components. Components added to the parent directly are not laid out.
+ */
+@SuppressWarnings("UnusedReturnValue")
+public class VirtualRuleLayout implements LayoutManager2 {
+    //measured sizes can move other nodes into the visible part, which are measured in the next round
+    private static final int MAX_MEASURE_ROUNDS = 4;
+
+    private final Container parent;
+    private final LayoutNode root = new LayoutNode("virtualRoot");
+    private final HeadlessRuleLayout layout = new HeadlessRuleLayout(root);
+    private final List<VirtualNode> nodes = new ArrayList<>();
+    private List<VirtualNode> realizedNodes = new ArrayList<>();
+    private final ChangeListener viewportListener = e -> onScroll();
+    private JViewport viewport;
+    private int viewportMargin = 100;
+    //indexes of nodes sorted by top edge, to find visible nodes without scanning all of them
+    private int[] nodesByY = new int[0];
+    private int maxNodeHeight;
+    private boolean indexValid;
+    //components are added and removed by this layout
+    private boolean updatingChildren;
+    private long realizedComponentCount;
+
+    public VirtualRuleLayout(Container parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Registers component that is created by supplier when it becomes visible. Supplier can be called several times,
+     * if the component leaves visible part and comes back.
+     *
+     * @return node that stands for the component in rules
+     */
+    public LayoutNode addComponent(Supplier<? extends Component> supplier, int estimatedWidth, int estimatedHeight) {
+        VirtualNode node = new VirtualNode(nodes.size(), supplier, estimatedWidth, estimatedHeight);
+        nodes.add(node);
+        root.add(node);
+        indexValid = false;
+        return node;
+    }
+
+    /**
+     * Component of the node, null if the node is not visible now
+     */
+    public Component getComponent(LayoutNode node) {
+        return ((VirtualNode) node).component;
+    }
+
+    /**
+     * Number of components that exist now
+     */
+    public int getRealizedComponentCount() {
+        return realizedNodes.size();
+    }
+
+    /**
+     * Number of components created by suppliers since the layout was created
+     */
+    public long getCreatedComponentCount() {
+        return realizedComponentCount;
+    }
+
+    public LayoutGroup<LayoutNode> createGroup() {
+        return layout.createGroup();
+    }
+
+    /**
+     * Rules reference nodes returned by {@link #addComponent}, groups and the parent container
+     */
+    public VirtualRuleLayout addRule(Rule... rules) {
+        for (Rule rule : rules) {
+            if (isParent(rule.getAnchorComponent()) || isParent(rule.getComponent())) {
+                rule = new Rule(rule.getAnchorEdge(), toNode(rule.getAnchorComponent()), rule.getOffset(),
+                        rule.getEdge(), toNode(rule.getComponent()), rule.getPriority());
+            }
+            layout.addRule(rule);
+        }
+        indexValid = false;
+        return this;
+    }
+
+    private boolean isParent(Object component) {
+        return RuleLayoutCalculationEngine.unwrapComponentWrapper(component) == parent;
+    }
+
+    private Object toNode(Object component) {
+        return isParent(component) ? root : component;
+    }
+
+    public VirtualRuleLayout setPadding(int left, int top, int right, int bottom) {
+        layout.setPadding(left, top, right, bottom);
+        indexValid = false;
+        return this;
+    }
+
+    /**
+     * Distance around the visible part of the parent, in which components are created in advance, so they are ready when scrolled in
+     */
+    public VirtualRuleLayout setViewportMargin(int viewportMargin) {
+        if (viewportMargin < 0) {
+            throw new IllegalArgumentException("Viewport margin should be >= 0, but was " + viewportMargin);
+        }
+        this.viewportMargin = viewportMargin;
+        return this;
+    }
+
+    public LayoutMetrics getMetrics() {
+        return layout.getMetrics();
+    }
+
+    @Override
+    public void addLayoutComponent(Component comp, Object constraints) {
+    }
+
+    @Override
+    public void addLayoutComponent(String name, Component comp) {
+    }
+
+    @Override
+    public void removeLayoutComponent(Component comp) {
+        if (updatingChildren) {
+            return;
+        }
+        //component removed by user is created again when it is visible
+        for (VirtualNode node : realizedNodes) {
+            if (node.component == comp) {
+                node.component = null;
+            }
+        }
+    }
+
+    @Override
+    public float getLayoutAlignmentX(Container target) {
+        return 0;
+    }
+
+    @Override
+    public float getLayoutAlignmentY(Container target) {
+        return 0;
+    }
+
+    /**
+     * Invalid visible components are measured again on next layout
+     */
+    @Override
+    public void invalidateLayout(Container target) {
+        for (VirtualNode node : realizedNodes) {
+            if (node.component != null && !node.component.isValid()) {
+                node.measured = false;
+            }
+        }
+    }
+
+    @Override
+    public Dimension maximumLayoutSize(Container target) {
+        checkParent(target);
+        return layout.getPreferredSize();
+    }
+
+    @Override
+    public Dimension preferredLayoutSize(Container target) {
+        checkParent(target);
+        return layout.getPreferredSize();
+    }
+
+    @Override
+    public Dimension minimumLayoutSize(Container target) {
+        checkParent(target);
+        return layout.getMinimumSize();
+    }
+
+    @Override
+    public void layoutContainer(Container target) {
+        checkParent(target);
+        attachViewport();
+        Dimension preferredSize = layout.getPreferredSize();
+        root.setSize(parent.getWidth(), parent.getHeight());
+        for (int round = 0; round < MAX_MEASURE_ROUNDS; round++) {
+            layout.layout();
+            indexValid = false;
+            if (!updateRealizedNodes()) {
+                break;
+            }
+        }
+        if (!preferredSize.equals(layout.getPreferredSize())) {
+            //measured sizes changed size of the parent, scroll pane should know it, but the parent is being validated now
+            SwingUtilities.invokeLater(parent::revalidate);
+        }
+    }
+
+    private void onScroll() {
+        long created = realizedComponentCount;
+        int realized = realizedNodes.size();
+        boolean sizeChanged = updateRealizedNodes();
+        if (sizeChanged || created != realizedComponentCount || realized != realizedNodes.size()) {
+            //new components should be validated, changed sizes move other nodes
+            parent.revalidate();
+            parent.repaint();
+        }
+    }
+
+    /**
+     * Creates components of nodes that became visible, removes components of nodes that are not visible anymore,
+     * and sets bounds of visible components
+     *
+     * @return true if measured size of some node differs from its cached size, so the layout should be calculated again
+     */
+    private boolean updateRealizedNodes() {
+        Rectangle visible = parent instanceof JComponent ? ((JComponent) parent).getVisibleRect() : new Rectangle(parent.getSize());
+        visible.grow(viewportMargin, viewportMargin);
+        List<VirtualNode> stillRealized = new ArrayList<>(realizedNodes.size());
+        updatingChildren = true;
+        try {
+            for (VirtualNode node : realizedNodes) {
+                if (node.component != null && intersects(node, visible)) {
+                    stillRealized.add(node);
+                    node.realized = true;
+                } else {
+                    release(node);
+                }
+            }
+            realizedNodes = stillRealized;
+            indexNodes();
+            int first = firstNodeBelow(visible.y - maxNodeHeight);
+            for (int i = first; i < nodesByY.length; i++) {
+                VirtualNode node = nodes.get(nodesByY[i]);
+                if (node.getY() >= visible.y + visible.height) {
+                    break;
+                }
+                if (!node.realized && intersects(node, visible)) {
+                    realize(node);
+                }
+            }
+        } finally {
+            updatingChildren = false;
+        }
+        boolean sizeChanged = false;
+        for (VirtualNode node : realizedNodes) {
+            node.realized = false;
+            if (!node.measured) {
+                sizeChanged |= measure(node);
+            }
+            node.component.setBounds(node.getX(), node.getY(), node.getWidth(), node.getHeight());
+        }
+        return sizeChanged;
+    }
+
+    private void realize(VirtualNode node) {
+        Component component = node.supplier.get();
+        if (component == null) {
+            throw new IllegalStateException("Supplier of node " + node.getName() + " returned null");
+        }
+        node.component = component;
+        node.measured = false;
+        parent.add(component);
+        realizedNodes.add(node);
+        realizedComponentCount++;
+    }
+
+    private void release(VirtualNode node) {
+        if (node.component != null && node.component.getParent() == parent) {
+            parent.remove(node.component);
+        }
+        node.component = null;
+        node.realized = false;
+    }
+
+    /**
+     * Copies sizes and baseline of the component to its node
+     *
+     * @return true if the node got different size or baseline
+     */
+    private boolean measure(VirtualNode node) {
+        Component component = node.component;
+        node.measured = true;
+        boolean changed = false;
+        Dimension preferred = component.getPreferredSize();
+        if (preferred.width != node.getPreferredWidth() || preferred.height != node.getPreferredHeight()) {
+            node.setPreferredSize(preferred.width, preferred.height);
+            changed = true;
+        }
+        Dimension minimum = component.getMinimumSize();
+        if (minimum.width != node.getMinimumWidth() || minimum.height != node.getMinimumHeight()) {
+            node.setMinimumSize(minimum.width, minimum.height);
+            changed = true;
+        }
+        int baseline = component.getBaseline(preferred.width, preferred.height);
+        Component.BaselineResizeBehavior behavior = component.getBaselineResizeBehavior();
+        if (baseline != node.getBaseline(preferred.width, preferred.height) || behavior != node.getBaselineResizeBehavior()) {
+            node.setBaseline(baseline, behavior);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static boolean intersects(LayoutNode node, Rectangle area) {
+        //empty nodes are realized too, their components can still be visible
+        return node.getX() <= area.x + area.width && node.getX() + node.getWidth() >= area.x
+                && node.getY() <= area.y + area.height && node.getY() + node.getHeight() >= area.y;
+    }
+
+    private void indexNodes() {
+        if (indexValid && nodesByY.length == nodes.size()) {
+            return;
+        }
+        Integer[] order = new Integer[nodes.size()];
+        maxNodeHeight = 0;
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            maxNodeHeight = Math.max(maxNodeHeight, nodes.get(i).getHeight());
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(nodes.get(a).getY(), nodes.get(b).getY()));
+        nodesByY = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            nodesByY[i] = order[i];
+        }
+        indexValid = true;
+    }
+
+    /**
+     * Position in {@link #nodesByY} of the first node with top edge not above y
+     */
+    private int firstNodeBelow(int y) {
+        int low = 0;
+        int high = nodesByY.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (nodes.get(nodesByY[middle]).getY() < y) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void attachViewport() {
+        JViewport newViewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, parent);
+        if (newViewport != viewport) {
+            if (viewport != null) {
+                viewport.removeChangeListener(viewportListener);
+            }
+            viewport = newViewport;
+            if (viewport != null) {
+                viewport.addChangeListener(viewportListener);
+            }
+        }
+    }
+
+    private void checkParent(Container container) {
+        if (container != parent) {
+            throw new IllegalStateException("One instance of VirtualRuleLayout cannot be assigned to several containers");
+        }
+    }
+
+    private static final class VirtualNode extends LayoutNode {
+        private final Supplier<? extends Component> supplier;
+        private Component component;
+        //component is measured after it was created or invalidated
+        private boolean measured;
+        //marks nodes kept realized during update
+        private boolean realized;
+
+        private VirtualNode(int index, Supplier<? extends Component> supplier, int estimatedWidth, int estimatedHeight) {
+            super("virtual" + index, estimatedWidth, estimatedHeight);
+            this.supplier = supplier;
+        }
+    }
+}
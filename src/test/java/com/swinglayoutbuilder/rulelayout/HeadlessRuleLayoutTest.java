@@ -0,0 +1,277 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import org.junit.Test;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HeadlessRuleLayoutTest {
+    @Test
+    public void nodesAreLaidOutWithoutAwtComponents() {
+        LayoutNode parent = new LayoutNode("parent");
+        HeadlessRuleLayout layout = new HeadlessRuleLayout(parent);
+        LayoutNode label = new LayoutNode("label", 40, 16).setBaseline(12, Component.BaselineResizeBehavior.CONSTANT_ASCENT);
+        LayoutNode field = new LayoutNode("field", 100, 24).setBaseline(16, Component.BaselineResizeBehavior.CENTER_OFFSET);
+        parent.add(label).add(field);
+        layout.setPadding(5, 5, 5, 5);
+        layout.addRule(new Rule(Edge.RIGHT, label, 4, Edge.LEFT, field));
+        layout.addRule(new Rule(Edge.BASELINE, field, 0, Edge.BASELINE, label));
+
+        assertEquals(new Dimension(154, 34), layout.getPreferredSize());
+        parent.setSize(300, 200);
+        layout.layout();
+        assertEquals(new Rectangle(5, 9, 40, 16), label.getBounds());
+        assertEquals(new Rectangle(49, 5, 100, 24), field.getBounds());
+    }
+
+    @Test
+    public void changedNodeIsLaidOutAgain() {
+        LayoutNode parent = new LayoutNode("parent");
+        HeadlessRuleLayout layout = new HeadlessRuleLayout(parent);
+        LayoutNode first = new LayoutNode("first", 50, 20);
+        LayoutNode second = new LayoutNode("second", 30, 20);
+        parent.add(first).add(second);
+        layout.addRule(new Rule(Edge.BOTTOM, first, 10, Edge.TOP, second));
+        parent.setSize(200, 100);
+        layout.layout();
+        assertEquals(new Rectangle(0, 30, 30, 20), second.getBounds());
+
+        first.setPreferredSize(50, 40);
+        LayoutNode third = new LayoutNode("third", 10, 10);
+        parent.add(third);
+        layout.addRule(new Rule(Edge.RIGHT, second, 0, Edge.LEFT, third));
+        layout.layout();
+        assertEquals(new Rectangle(0, 50, 30, 20), second.getBounds());
+        assertEquals(new Rectangle(30, 0, 10, 10), third.getBounds());
+        assertEquals(new Dimension(50, 70), layout.getPreferredSize());
+    }
+
+    @Test
+    public void asyncLayoutIsAppliedOnlyIfNodesAreNotChanged() {
+        LayoutNode parent = new LayoutNode("parent");
+        HeadlessRuleLayout layout = new HeadlessRuleLayout(parent);
+        LayoutNode first = new LayoutNode("first", 50, 20);
+        LayoutNode second = new LayoutNode("second", 30, 20);
+        parent.add(first).add(second);
+        layout.addRule(new Rule(Edge.BOTTOM, first, 10, Edge.TOP, second));
+        parent.setSize(200, 100);
+        Queue<Runnable> solveTasks = new ArrayDeque<>();
+        Queue<Runnable> applyTasks = new ArrayDeque<>();
+
+        CompletableFuture<Boolean> applied = layout.layoutAsync(solveTasks::add, applyTasks::add);
+        runAll(solveTasks);
+        assertEquals(new Rectangle(0, 0, 0, 0), second.getBounds());
+        //metrics are changed only on the thread that applies the layout
+        assertEquals(0, layout.getMetrics().getRulesEvaluated());
+        runAll(applyTasks);
+        assertTrue(applied.join());
+        assertEquals(new Rectangle(0, 30, 30, 20), second.getBounds());
+        assertEquals(1, layout.getMetrics().getRulesEvaluated());
+        assertEquals(1, layout.getMetrics().getLayoutPasses());
+
+        CompletableFuture<Boolean> stale = layout.layoutAsync(solveTasks::add, applyTasks::add);
+        runAll(solveTasks);
+        first.setPreferredSize(50, 40);
+        runAll(applyTasks);
+        assertFalse(stale.join());
+        assertEquals(new Rectangle(0, 30, 30, 20), second.getBounds());
+
+        CompletableFuture<Boolean> resized = layout.layoutAsync(solveTasks::add, applyTasks::add);
+        runAll(solveTasks);
+        parent.setSize(300, 100);
+        runAll(applyTasks);
+        assertFalse(resized.join());
+
+        layout.layout();
+        assertEquals(new Rectangle(0, 50, 30, 20), second.getBounds());
+    }
+
+    @Test
+    public void resizeIsCalculatedFromAffineFunctionsOfParentSize() {
+        LayoutNode parent = new LayoutNode("parent");
+        HeadlessRuleLayout layout = new HeadlessRuleLayout(parent);
+        LayoutNode title = new LayoutNode("title", 41, 20);
+        LayoutNode field = new LayoutNode("field", 100, 24);
+        parent.add(title).add(field);
+        layout.addRule(new Rule(Edge.HOR_CENTER, parent, 0, Edge.HOR_CENTER, title));
+        layout.addRule(new Rule(Edge.BOTTOM, title, 5, Edge.TOP, field));
+        layout.addRule(new Rule(Edge.LEFT, parent, 10, Edge.LEFT, field));
+        layout.addRule(new Rule(Edge.RIGHT, parent, -10, Edge.RIGHT, field));
+        parent.setSize(300, 100);
+        layout.layout();
+
+        for (int width = 200; width <= 260; width++) {
+            parent.setSize(width, 100);
+            layout.layout();
+            assertEquals(new Rectangle(width / 2 - 20, 0, 41, 20), title.getBounds());
+            assertEquals(new Rectangle(10, 25, width - 20, 24), field.getBounds());
+        }
+        //odd and even widths are two regions of affine functions
+        assertTrue(layout.getEngine().getAffineResizeCount() >= 59);
+
+        title.setPreferredSize(40, 30);
+        parent.setSize(201, 100);
+        layout.layout();
+        assertEquals(new Rectangle(80, 0, 40, 30), title.getBounds());
+        assertEquals(new Rectangle(10, 35, 181, 24), field.getBounds());
+    }
+
+    @Test
+    public void solverModeSatisfiesCyclicAndConflictingRules() {
+        LayoutNode parent = new LayoutNode("parent");
+        HeadlessRuleLayout layout = new HeadlessRuleLayout(parent);
+        LayoutNode left = new LayoutNode("left", 50, 20);
+        LayoutNode center = new LayoutNode("center", 40, 20);
+        LayoutNode right = new LayoutNode("right", 50, 20);
+        parent.add(left).add(center).add(right);
+        layout.setSolverMode(true);
+        layout.addRule(new Rule(Edge.HOR_CENTER, parent, 0, Edge.HOR_CENTER, center));
+        //siblings depend on the centered component and it depends on them
+        layout.addRule(new Rule(Edge.LEFT, center, -10, Edge.RIGHT, left));
+        layout.addRule(new Rule(Edge.RIGHT, center, 10, Edge.LEFT, right));
+        layout.addRule(new Rule(Edge.RIGHT, left, 10, Edge.LEFT, center));
+        layout.addRule(new Rule(Edge.LEFT, right, -10, Edge.RIGHT, center));
+        //conflicts with centering and gives way
+        layout.addRule(new Rule(Edge.LEFT, parent, 0, Edge.LEFT, center, RulePriority.WEAK));
+
+        parent.setSize(300, 100);
+        layout.layout();
+        assertEquals(new Rectangle(70, 0, 50, 20), left.getBounds());
+        assertEquals(new Rectangle(130, 0, 40, 20), center.getBounds());
+        assertEquals(new Rectangle(180, 0, 50, 20), right.getBounds());
+
+        parent.setSize(400, 100);
+        layout.layout();
+        assertEquals(new Rectangle(120, 0, 50, 20), left.getBounds());
+        assertEquals(new Rectangle(180, 0, 40, 20), center.getBounds());
+        assertEquals(new Rectangle(230, 0, 50, 20), right.getBounds());
+    }
+
+    @Test
+    public void solverModeStretchesComponentBetweenRules() {
+        LayoutNode parent = new LayoutNode("parent");
+        HeadlessRuleLayout layout = new HeadlessRuleLayout(parent);
+        LayoutNode label = new LayoutNode("label", 40, 16).setBaseline(12, Component.BaselineResizeBehavior.CONSTANT_ASCENT);
+        LayoutNode field = new LayoutNode("field", 100, 24).setBaseline(16, Component.BaselineResizeBehavior.CONSTANT_ASCENT);
+        parent.add(label).add(field);
+        layout.setSolverMode(true);
+        layout.addRule(new Rule(Edge.LEFT, parent, 0, Edge.LEFT, label));
+        layout.addRule(new Rule(Edge.RIGHT, label, 5, Edge.LEFT, field));
+        layout.addRule(new Rule(Edge.RIGHT, parent, 0, Edge.RIGHT, field));
+        layout.addRule(new Rule(Edge.BASELINE, field, 0, Edge.BASELINE, label, RulePriority.REQUIRED));
+
+        parent.setSize(300, 100);
+        layout.layout();
+        assertEquals(new Rectangle(0, 4, 40, 16), label.getBounds());
+        assertEquals(new Rectangle(45, 0, 255, 24), field.getBounds());
+
+        for (int width = 200; width <= 400; width += 10) {
+            parent.setSize(width, 100);
+            layout.layout();
+            assertEquals(new Rectangle(45, 0, width - 45, 24), field.getBounds());
+        }
+        label.setPreferredSize(60, 16);
+        layout.layout();
+        assertEquals(new Rectangle(65, 0, 335, 24), field.getBounds());
+    }
+
+    @Test
+    public void recordedTraceIsReplayedWithSameResult() throws IOException {
+        LayoutNode parent = new LayoutNode("parent");
+        HeadlessRuleLayout layout = new HeadlessRuleLayout(parent);
+        LayoutNode label = new LayoutNode("label", 40, 16).setBaseline(12, Component.BaselineResizeBehavior.CONSTANT_ASCENT);
+        LayoutNode field = new LayoutNode("field", 100, 24).setBaseline(16, Component.BaselineResizeBehavior.CENTER_OFFSET);
+        parent.add(label).add(field);
+        LayoutGroup<LayoutNode> group = layout.createGroup();
+        group.addComponent(new ComponentWrapper<>(label));
+        group.addComponent(new ComponentWrapper<>(field));
+        layout.setPadding(5, 5, 5, 5);
+        layout.addRule(new Rule(Edge.RIGHT, label, 4, Edge.LEFT, field));
+        layout.addRule(new Rule(Edge.BASELINE, field, 0, Edge.BASELINE, label));
+        layout.addRule(new Rule(Edge.VER_CENTER, parent, 0, Edge.VER_CENTER, new ComponentWrapper<>(group)));
+        layout.setComponentEdgeAnchoredToParentMovingEdge(field, false, false, true, false, 1, 1, 1, 1);
+        StringWriter trace = new StringWriter();
+        layout.setTraceRecorder(new LayoutTraceRecorder(trace));
+
+        layout.getPreferredSize();
+        parent.setSize(300, 200);
+        layout.layout();
+        field.setPreferredSize(120, 30);
+        layout.layout();
+        parent.setSize(400, 100);
+        layout.layout();
+        layout.getMinimumSize();
+
+        LayoutTraceReplayer.Result result = LayoutTraceReplayer.read(new StringReader(trace.toString())).replay();
+        assertEquals(5, result.getPassCount());
+        assertEquals(Collections.emptyList(), result.getMismatches());
+
+        String changedTrace = trace.toString().replaceFirst("result 154 22", "result 150 22");
+        result = LayoutTraceReplayer.read(new StringReader(changedTrace)).replay();
+        assertEquals(Collections.singletonList("pass 1 preferred: expected 150x22 but was 154x22"), result.getMismatches());
+    }
+
+    @Test
+    public void deadDuplicateAndNoOpRulesAreRemoved() {
+        Rectangle[] optimized = layoutWithRedundantRules(true);
+        Rectangle[] notOptimized = layoutWithRedundantRules(false);
+        assertEquals(notOptimized[0], optimized[0]);
+        assertEquals(notOptimized[1], optimized[1]);
+        assertEquals(new Rectangle(10, 0, 40, 16), optimized[0]);
+        assertEquals(new Rectangle(54, 0, 100, 24), optimized[1]);
+    }
+
+    private Rectangle[] layoutWithRedundantRules(boolean optimization) {
+        LayoutNode parent = new LayoutNode("parent");
+        HeadlessRuleLayout layout = new HeadlessRuleLayout(parent).setRuleOptimization(optimization);
+        LayoutNode label = new LayoutNode("label", 40, 16);
+        LayoutNode field = new LayoutNode("field", 100, 24);
+        parent.add(label).add(field);
+        Rule overridden = new Rule(Edge.LEFT, parent, 0, Edge.LEFT, label);
+        Rule placeField = new Rule(Edge.RIGHT, label, 4, Edge.LEFT, field);
+        Rule duplicate = new Rule(Edge.RIGHT, label, 4, Edge.LEFT, field);
+        Rule placeLabel = new Rule(Edge.LEFT, parent, 10, Edge.LEFT, label);
+        Rule noOp = new Rule(Edge.HOR_CENTER, label, 0, Edge.HOR_CENTER, label);
+        layout.addRule(overridden, placeField, duplicate, placeLabel, noOp);
+        parent.setSize(300, 200);
+        layout.layout();
+
+        if (optimization) {
+            List<RemovedRule> removed = layout.getRemovedRules();
+            assertEquals(3, removed.size());
+            assertRemoved(removed.get(0), noOp, RemovedRule.Reason.NO_OP, null);
+            assertRemoved(removed.get(1), overridden, RemovedRule.Reason.OVERRIDDEN, placeLabel);
+            assertRemoved(removed.get(2), duplicate, RemovedRule.Reason.DUPLICATE, placeField);
+            assertEquals(2, layout.getMetrics().getRulesEvaluated());
+        } else {
+            assertEquals(Collections.emptyList(), layout.getRemovedRules());
+        }
+        return new Rectangle[]{label.getBounds(), field.getBounds()};
+    }
+
+    private void assertRemoved(RemovedRule removedRule, Rule rule, RemovedRule.Reason reason, Rule cause) {
+        assertSame(rule, removedRule.getRule());
+        assertEquals(reason, removedRule.getReason());
+        assertSame(cause, removedRule.getCause());
+    }
+
+    private void runAll(Queue<Runnable> tasks) {
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import org.junit.Test;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelLayoutValidatorTest {
+    @Test
+    public void parallelValidationGivesTheSameBoundsAsSwingValidation() {
+        JPanel serial = createForms(6);
+        serial.setSize(600, 400);
+        layoutTree(serial);
+
+        JPanel parallel = createForms(6);
+        parallel.setSize(600, 400);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            new ParallelLayoutValidator(pool).validate(parallel);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertTrue(parallelComponentsAreLaidOut(parallel));
+        List<Component> serialComponents = collect(serial, new ArrayList<>());
+        List<Component> parallelComponents = collect(parallel, new ArrayList<>());
+        assertEquals(serialComponents.size(), parallelComponents.size());
+        for (int i = 0; i < serialComponents.size(); i++) {
+            assertEquals(serialComponents.get(i).getBounds(), parallelComponents.get(i).getBounds());
+        }
+    }
+
+    @Test
+    public void displayableTreeIsLaidOutOncePerContainer() {
+        JPanel serial = createForms(4);
+        serial.addNotify();
+        serial.setSize(600, 400);
+        serial.validate();
+
+        JPanel parallel = createForms(4);
+        parallel.addNotify();
+        parallel.setSize(600, 400);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            new ParallelLayoutValidator(pool).validate(parallel);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertTrue(parallel.isValid());
+        for (int i = -1; i < parallel.getComponentCount(); i++) {
+            Container container = i < 0 ? parallel : (Container) parallel.getComponent(i);
+            Container serialContainer = i < 0 ? serial : (Container) serial.getComponent(i);
+            LayoutMetrics metrics = ((RuleLayout) container.getLayout()).getMetrics();
+            assertTrue(container.isValid());
+            assertEquals(1, metrics.getLayoutPasses());
+            assertEquals(((RuleLayout) serialContainer.getLayout()).getMetrics().getRulesEvaluated(), metrics.getRulesEvaluated());
+            assertEquals(serialContainer.getBounds(), container.getBounds());
+        }
+    }
+
+    private JPanel createForms(int count) {
+        JPanel root = new JPanel();
+        RuleLayout rootLayout = new RuleLayout(root);
+        root.setLayout(rootLayout);
+        Component previous = null;
+        for (int i = 0; i < count; i++) {
+            JPanel form = new JPanel();
+            RuleLayout layout = new RuleLayout(form);
+            form.setLayout(layout);
+            Component previousField = null;
+            for (int row = 0; row < 5; row++) {
+                JLabel label = new JLabel("Label " + i + "." + row);
+                JTextField field = new JTextField("Field " + row, 10 + row);
+                form.add(label);
+                form.add(field);
+                layout.addRule(new Rule(Edge.RIGHT, label, 5, Edge.LEFT, field));
+                layout.addRule(new Rule(Edge.BASELINE, field, 0, Edge.BASELINE, label));
+                if (previousField != null) {
+                    layout.addRule(new Rule(Edge.BOTTOM, previousField, 5, Edge.TOP, field));
+                }
+                previousField = field;
+            }
+            root.add(form);
+            rootLayout.setPreferredSize(form, new Dimension(280, 150));
+            if (previous != null) {
+                rootLayout.addRule(new Rule(i % 2 == 0 ? Edge.BOTTOM : Edge.RIGHT, previous, 5, i % 2 == 0 ? Edge.TOP : Edge.LEFT, form));
+            }
+            previous = form;
+        }
+        return root;
+    }
+
+    //the same order as Container.validateTree uses, which works only for displayable components
+    private void layoutTree(Container container) {
+        container.doLayout();
+        for (Component child : container.getComponents()) {
+            if (child instanceof Container) {
+                layoutTree((Container) child);
+            }
+        }
+    }
+
+    private boolean parallelComponentsAreLaidOut(JPanel root) {
+        for (Component component : collect(root, new ArrayList<>())) {
+            if (component.getWidth() == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<Component> collect(Component component, List<Component> result) {
+        result.add(component);
+        if (component instanceof JPanel) {
+            for (Component child : ((JPanel) component).getComponents()) {
+                collect(child, result);
+            }
+        }
+        return result;
+    }
+}
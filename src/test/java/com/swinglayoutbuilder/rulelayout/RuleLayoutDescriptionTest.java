@@ -0,0 +1,88 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import com.swinglayoutbuilder.RuleLayoutBuilder;
+import com.swinglayoutbuilder.SwingLayoutBuilder;
+import org.junit.Test;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import java.awt.Component;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RuleLayoutDescriptionTest {
+    private static final String DESCRIPTION = "rulelayout 1\n"
+            + "# person dialog\n"
+            + "form 5\n"
+            + "row nameLabel name\n"
+            + "row ageLabel age top\n"
+            + "end\n"
+            + "child ok\n"
+            + "ok.TOP = formGroup.BOTTOM + 10\n"
+            + "ok.RIGHT = formFieldsGroup.RIGHT + 0\n";
+
+    @Test
+    public void layoutDescriptionGivesTheSameLayoutAsBuilder() throws Exception {
+        JPanel template = new JPanel();
+        Component[] templateChildren = {new JLabel("Name:"), new JTextField(10), new JLabel("Age:"), new JTextField(3), new JButton("OK")};
+        List<RuleLayoutBuilder.FormTemplate<Component>.Row> rows = new ArrayList<>();
+        new SwingLayoutBuilder(template).ruleLayout()
+                .templateForm(5, (form, builder) -> {
+                    rows.add(form.addRow("Name:", templateChildren[1]));
+                    rows.add(form.addRow("Age:", templateChildren[3]).setLabelToFieldVerticalAlignment(RuleLayoutBuilder.FormRowAlignment.TOP));
+                })
+                .add("ok", templateChildren[4]).moveToId(Edge.TOP, "formGroup", Edge.BOTTOM, 10).moveToId(Edge.RIGHT, "formFieldsGroup", Edge.RIGHT);
+        templateChildren[0] = rows.get(0).getLabel().getComponent();
+        templateChildren[2] = rows.get(1).getLabel().getComponent();
+        RuleLayoutBlueprint blueprint = new RuleLayoutDescriptionCache().get(DESCRIPTION.getBytes(StandardCharsets.UTF_8));
+
+        Map<String, Component> components = new HashMap<>();
+        components.put("nameLabel", new JLabel("Name:"));
+        components.put("name", new JTextField(10));
+        components.put("ageLabel", new JLabel("Age:"));
+        components.put("age", new JTextField(3));
+        components.put("ok", new JButton("OK"));
+        JPanel panel = new JPanel();
+        blueprint.createLayout(panel, components);
+        assertEquals(template.getPreferredSize(), panel.getPreferredSize());
+        template.setSize(300, 200);
+        template.doLayout();
+        panel.setSize(300, 200);
+        panel.doLayout();
+        for (int i = 0; i < templateChildren.length; i++) {
+            assertEquals(templateChildren[i].getBounds(), panel.getComponent(i).getBounds());
+        }
+    }
+
+    @Test
+    public void descriptionIsCachedByContent() throws Exception {
+        RuleLayoutDescriptionCache cache = new RuleLayoutDescriptionCache();
+        RuleLayoutBlueprint blueprint = cache.get(DESCRIPTION.getBytes(StandardCharsets.UTF_8));
+        assertTrue(blueprint == cache.get(DESCRIPTION.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(1, cache.getReadCount());
+
+        Path directory = Files.createTempDirectory("layouts");
+        directory.toFile().deleteOnExit();
+        new RuleLayoutDescriptionCache(directory).get(DESCRIPTION.getBytes(StandardCharsets.UTF_8));
+        RuleLayoutDescriptionCache restartedCache = new RuleLayoutDescriptionCache(directory);
+        RuleLayoutBlueprint restarted = restartedCache.get(DESCRIPTION.getBytes(StandardCharsets.UTF_8));
+        assertEquals(blueprint.getRules().toString(), restarted.getRules().toString());
+        assertEquals(1, restarted.getForms().size());
+        assertEquals(Edge.TOP, restarted.getForms().get(0).getAlignment(1));
+        assertEquals(0, restartedCache.getReadCount());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            files.forEach(file -> file.toFile().deleteOnExit());
+        }
+    }
+}
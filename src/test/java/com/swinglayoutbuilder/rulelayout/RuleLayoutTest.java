@@ -0,0 +1,675 @@
+package com.swinglayoutbuilder.rulelayout;
+
+import com.sun.management.ThreadMXBean;
+import com.swinglayoutbuilder.RuleLayoutBuilder;
+import com.swinglayoutbuilder.SwingLayoutBuilder;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.JViewport;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RuleLayoutTest {
+    @Test
+    public void rulesAreExecutedAfterRulesTheyDependOn() {
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent);
+        parent.setLayout(layout);
+        Component first = addBlock(parent, 50, 20);
+        Component second = addBlock(parent, 30, 20);
+        //second component reads edge of first component before first component is moved
+        layout.addRule(new Rule(Edge.RIGHT, first, 5, Edge.LEFT, second));
+        layout.addRule(new Rule(Edge.LEFT, parent, 10, Edge.LEFT, first));
+        parent.setSize(200, 100);
+        layout.layoutContainer(parent);
+
+        assertEquals(new Rectangle(10, 0, 50, 20), first.getBounds());
+        assertEquals(new Rectangle(65, 0, 30, 20), second.getBounds());
+    }
+
+    @Test
+    public void laterRuleOverwritesPreviousRule() {
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent);
+        parent.setLayout(layout);
+        Component block = addBlock(parent, 50, 20);
+        layout.addRule(new Rule(Edge.LEFT, parent, 1, Edge.LEFT, block));
+        layout.addRule(new Rule(Edge.LEFT, parent, 10, Edge.LEFT, block));
+        parent.setSize(200, 100);
+        layout.layoutContainer(parent);
+
+        assertEquals(10, block.getX());
+    }
+
+    @Test
+    public void cyclesAreReportedOnce() {
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent);
+        parent.setLayout(layout);
+        Component first = addBlock(parent, 50, 20);
+        Component second = addBlock(parent, 30, 20);
+        List<List<Rule>> cycles = new ArrayList<>();
+        layout.setRuleCycleHandler(cycles::add);
+        layout.addRule(new Rule(Edge.RIGHT, first, 0, Edge.LEFT, second));
+        layout.addRule(new Rule(Edge.LEFT, second, 0, Edge.RIGHT, first));
+        parent.setSize(200, 100);
+        layout.layoutContainer(parent);
+        layout.layoutContainer(parent);
+        layout.preferredLayoutSize(parent);
+
+        assertEquals(1, cycles.size());
+        assertEquals(2, cycles.get(0).size());
+    }
+
+    @Test
+    public void onlyChangedComponentIsMeasuredAgain() {
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent);
+        parent.setLayout(layout);
+        CountingBlock first = addBlock(parent, 50, 20);
+        CountingBlock second = addBlock(parent, 30, 20);
+        CountingBlock third = addBlock(parent, 30, 20);
+        layout.addRule(new Rule(Edge.RIGHT, first, 5, Edge.LEFT, second));
+        parent.setSize(200, 100);
+        layout.layoutContainer(parent);
+        layout.layoutContainer(parent);
+        assertEquals(1, second.preferredSizeQueries);
+        assertEquals(1, third.preferredSizeQueries);
+
+        first.setPreferredSize(new Dimension(70, 20));
+        layout.layoutContainer(parent);
+        assertEquals(new Rectangle(0, 0, 70, 20), first.getBounds());
+        assertEquals(new Rectangle(75, 0, 30, 20), second.getBounds());
+        assertEquals(1, second.preferredSizeQueries);
+        assertEquals(1, third.preferredSizeQueries);
+    }
+
+    @Test
+    public void childrenChangedBeforeValidationAreMeasuredAgain() {
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent);
+        parent.setLayout(layout);
+        CountingBlock first = addBlock(parent, 50, 20);
+        CountingBlock second = addBlock(parent, 30, 20);
+        CountingBlock third = addBlock(parent, 30, 20);
+        layout.addRule(new Rule(Edge.RIGHT, first, 5, Edge.LEFT, second));
+        layout.addRule(new Rule(Edge.RIGHT, second, 5, Edge.LEFT, third));
+        parent.setSize(200, 100);
+        parent.addNotify();
+        parent.validate();
+        assertEquals(new Rectangle(90, 0, 30, 20), third.getBounds());
+
+        //only the first change invalidates the parent, the second child is invalidated while the parent is already invalid
+        first.contentSize = new Dimension(60, 20);
+        first.invalidate();
+        second.contentSize = new Dimension(40, 20);
+        second.invalidate();
+        parent.validate();
+        assertEquals(new Rectangle(0, 0, 60, 20), first.getBounds());
+        assertEquals(new Rectangle(65, 0, 40, 20), second.getBounds());
+        assertEquals(new Rectangle(110, 0, 30, 20), third.getBounds());
+        assertEquals(1, third.preferredSizeQueries);
+
+        //resize of the parent does not change sizes of children
+        parent.setSize(300, 100);
+        parent.validate();
+        assertEquals(1, third.preferredSizeQueries);
+
+        //invalidation of the parent itself recalculates everything
+        parent.invalidate();
+        parent.validate();
+        assertEquals(2, third.preferredSizeQueries);
+
+        //explicit invalidation after resize is not taken for the resize
+        parent.setSize(400, 100);
+        parent.invalidate();
+        parent.validate();
+        assertEquals(3, third.preferredSizeQueries);
+    }
+
+    @Test
+    public void preferredSizeDoesNotDependOnParentSizeAndIsCached() {
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent);
+        parent.setLayout(layout);
+        CountingBlock first = addBlock(parent, 50, 20);
+        CountingBlock second = addBlock(parent, 30, 20);
+        layout.addRule(new Rule(Edge.RIGHT, first, 5, Edge.LEFT, second));
+        layout.setPadding(2, 2, 2, 2);
+
+        parent.setSize(300, 200);
+        assertEquals(new Dimension(89, 24), layout.preferredLayoutSize(parent));
+        parent.setSize(400, 300);
+        assertEquals(new Dimension(89, 24), layout.preferredLayoutSize(parent));
+        assertEquals(2, layout.getSizeRequestCount());
+        assertEquals(1, layout.getSizeCacheHitCount());
+        assertEquals(1, first.preferredSizeQueries);
+
+        first.setPreferredSize(new Dimension(70, 20));
+        assertEquals(new Dimension(109, 24), layout.preferredLayoutSize(parent));
+        assertEquals(1, layout.getSizeCacheHitCount());
+        assertEquals(1, second.preferredSizeQueries);
+    }
+
+    @Test
+    public void groupsFollowMovedComponentsAndNestedGroups() {
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent);
+        parent.setLayout(layout);
+        Component first = addBlock(parent, 50, 20);
+        Component second = addBlock(parent, 30, 20);
+        Component third = addBlock(parent, 30, 40);
+        LayoutGroup<Component> inner = layout.createGroup();
+        inner.addComponent(new ComponentWrapper<>(first));
+        inner.addComponent(new ComponentWrapper<>(second));
+        LayoutGroup<Component> outer = layout.createGroup();
+        outer.addComponent(new ComponentWrapper<>(inner));
+        outer.addComponent(new ComponentWrapper<>(third));
+        layout.addRule(new Rule(Edge.RIGHT, first, 10, Edge.LEFT, second));
+        layout.addRule(new Rule(Edge.BOTTOM, first, 0, Edge.TOP, third));
+        layout.addRule(new Rule(Edge.LEFT, parent, 5, Edge.LEFT, outer));
+        layout.addRule(new Rule(Edge.RIGHT, inner, 0, Edge.LEFT, third));
+        parent.setSize(300, 200);
+        layout.layoutContainer(parent);
+
+        assertEquals(new Rectangle(5, 0, 50, 20), first.getBounds());
+        assertEquals(new Rectangle(65, 0, 30, 20), second.getBounds());
+        assertEquals(new Rectangle(95, 20, 30, 40), third.getBounds());
+    }
+
+    @Test
+    public void baselineIsReusedWhileItCannotChange() {
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent);
+        parent.setLayout(layout);
+        CountingLabel label = new CountingLabel("Label");
+        label.setVerticalAlignment(SwingConstants.TOP);
+        parent.add(label);
+        CountingLabel field = new CountingLabel("Field");
+        parent.add(field);
+        //label is stretched when parent is resized, so its baseline is requested for different heights
+        layout.addRule(new Rule(Edge.TOP, parent, 0, Edge.TOP, label));
+        layout.addRule(new Rule(Edge.BOTTOM, parent, 0, Edge.BOTTOM, label));
+        layout.addRule(new Rule(Edge.BASELINE, field, 0, Edge.BASELINE, label));
+        parent.setSize(300, 200);
+        layout.layoutContainer(parent);
+        parent.setSize(300, 250);
+        layout.layoutContainer(parent);
+        layout.preferredLayoutSize(parent);
+
+        assertEquals(1, label.baselineQueries);
+        assertEquals(1, field.baselineQueries);
+        assertEquals(field.getY() + field.getBaseline(field.getWidth(), field.getHeight()),
+                label.getY() + label.getBaseline(label.getWidth(), label.getHeight()));
+
+        label.setText("Other label");
+        layout.layoutContainer(parent);
+        assertEquals(3, label.baselineQueries);
+        assertEquals(2, field.baselineQueries);
+    }
+
+    @Test
+    public void onlyMovedComponentsGetNewBounds() {
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent);
+        parent.setLayout(layout);
+        CountingBlock first = addBlock(parent, 50, 20);
+        CountingBlock second = addBlock(parent, 30, 20);
+        CountingBlock third = addBlock(parent, 30, 20);
+        layout.addRule(new Rule(Edge.RIGHT, first, 5, Edge.LEFT, second));
+        layout.addRule(new Rule(Edge.BOTTOM, first, 5, Edge.TOP, third));
+        parent.setSize(200, 100);
+        layout.layoutContainer(parent);
+        layout.layoutContainer(parent);
+        assertEquals(1, third.boundsChanges);
+
+        first.setPreferredSize(new Dimension(70, 20));
+        layout.layoutContainer(parent);
+        assertEquals(2, first.boundsChanges);
+        assertEquals(2, second.boundsChanges);
+        assertEquals(1, third.boundsChanges);
+        assertEquals(new Rectangle(75, 0, 30, 20), second.getBounds());
+    }
+
+    @Test
+    public void layoutsAreCoalescedToOnePerFrame() throws Exception {
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent);
+        parent.setLayout(layout);
+        CountingBlock block = addBlock(parent, 50, 20);
+        layout.addRule(new Rule(Edge.RIGHT, parent, -10, Edge.RIGHT, block));
+        SwingUtilities.invokeAndWait(() -> {
+            layout.setFrameCoalescing(10);
+            parent.setSize(200, 100);
+            layout.layoutContainer(parent);
+            assertEquals(new Rectangle(140, 0, 50, 20), block.getBounds());
+            parent.setSize(300, 100);
+            layout.layoutContainer(parent);
+            parent.setSize(400, 100);
+            layout.layoutContainer(parent);
+            assertEquals(new Rectangle(140, 0, 50, 20), block.getBounds());
+        });
+
+        long deadline = System.currentTimeMillis() + 5000;
+        Rectangle[] bounds = new Rectangle[1];
+        do {
+            Thread.sleep(20);
+            SwingUtilities.invokeAndWait(() -> bounds[0] = block.getBounds());
+        } while (bounds[0].x == 140 && System.currentTimeMillis() < deadline);
+        assertEquals(new Rectangle(340, 0, 50, 20), bounds[0]);
+        assertEquals(2, block.boundsChanges);
+    }
+
+    @Test
+    public void repeatedLayoutsDoNotAllocate() {
+        //allocated bytes are counted only by HotSpot based JVMs
+        if (!(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean)) {
+            return;
+        }
+        ThreadMXBean allocations = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!allocations.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent);
+        parent.setLayout(layout);
+        LayoutGroup<Component> column = layout.createGroup();
+        Component previous = parent;
+        for (int i = 0; i < 50; i++) {
+            JLabel label = new JLabel("label " + i);
+            parent.add(label);
+            Component field = addBlock(parent, 40 + i, 20);
+            column.addComponent(new ComponentWrapper<>(field));
+            layout.addRule(new Rule(i == 0 ? Edge.TOP : Edge.BOTTOM, previous, 2, Edge.TOP, field));
+            layout.addRule(new Rule(Edge.RIGHT, label, 5, Edge.LEFT, field));
+            layout.addRule(new Rule(Edge.BASELINE, field, 0, Edge.BASELINE, label));
+            previous = field;
+        }
+        layout.addRule(new Rule(Edge.RIGHT, column, 5, Edge.LEFT, addBlock(parent, 30, 20)));
+        long threadId = Thread.currentThread().getId();
+        //sizes of the parent alternate, so every layout runs the rules that depend on the parent
+        for (int i = 0; i < 2000; i++) {
+            parent.setSize(400 + i % 2, 2000);
+            layout.layoutContainer(parent);
+        }
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10000; i++) {
+            parent.setSize(400 + i % 2, 2000);
+            layout.layoutContainer(parent);
+        }
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+        //one object per layout would be at least 160000 bytes, the rest is noise of the JIT compiler
+        assertTrue("Allocated " + allocated + " bytes", allocated < 10000);
+    }
+
+    @Test
+    public void frameTickDoesNotInvalidateTheContainer() throws Exception {
+        JPanel outer = new JPanel(null);
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent);
+        parent.setLayout(layout);
+        outer.add(parent);
+        CountingBlock block = addBlock(parent, 50, 20);
+        layout.addRule(new Rule(Edge.LEFT, parent, 10, Edge.LEFT, block));
+        layout.addRule(new Rule(Edge.RIGHT, parent, -10, Edge.RIGHT, block));
+        SwingUtilities.invokeAndWait(() -> {
+            outer.addNotify();
+            layout.setFrameCoalescing(10);
+            parent.setSize(300, 100);
+            outer.validate();
+            //coalesced to one layout on the next frame tick
+            parent.setSize(400, 100);
+            outer.validate();
+            parent.setSize(300, 100);
+            outer.validate();
+        });
+
+        long deadline = System.currentTimeMillis() + 5000;
+        long[] passes = new long[1];
+        do {
+            Thread.sleep(20);
+            SwingUtilities.invokeAndWait(() -> passes[0] = layout.getMetrics().getLayoutPasses());
+        } while (passes[0] < 2 && System.currentTimeMillis() < deadline);
+        SwingUtilities.invokeAndWait(() -> {
+            assertEquals(2, layout.getMetrics().getLayoutPasses());
+            assertEquals(new Rectangle(10, 0, 280, 20), block.getBounds());
+            assertTrue(parent.isValid());
+            assertTrue(outer.isValid());
+            assertEquals(1, block.preferredSizeQueries);
+        });
+    }
+
+    @Test
+    public void metricsAreCountedAndVisibleThroughJmx() throws Exception {
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent);
+        parent.setLayout(layout);
+        Component first = addBlock(parent, 50, 20);
+        Component second = addBlock(parent, 30, 20);
+        layout.addRule(new Rule(Edge.RIGHT, first, 5, Edge.LEFT, second));
+        layout.registerMetrics("metrics test panel");
+        parent.setSize(200, 100);
+        layout.layoutContainer(parent);
+        layout.preferredLayoutSize(parent);
+        layout.preferredLayoutSize(parent);
+
+        LayoutMetrics metrics = layout.getMetrics();
+        assertEquals(1, metrics.getLayoutPasses());
+        assertEquals(1, metrics.getPreferredPasses());
+        assertEquals(2, metrics.getRulesEvaluated());
+        assertEquals(2, metrics.getPreferredSizeQueries());
+        assertEquals(0.5, metrics.getSizeCacheHitRate(), 0);
+        long histogramPasses = 0;
+        for (long count : metrics.getPassTimeHistogram()) {
+            histogramPasses += count;
+        }
+        assertEquals(2, histogramPasses);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String[] reports = (String[]) server.getAttribute(new ObjectName(LayoutMetricsRegistry.OBJECT_NAME), "ContainerReports");
+        boolean found = false;
+        for (String report : reports) {
+            found |= report.startsWith("metrics test panel: passes[preferred:1 minimum:0 layout:1]");
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void archivedBlueprintIsBoundToComponentsById() throws Exception {
+        JPanel template = new JPanel();
+        Component[] templateChildren = {new JLabel("Name:"), new JTextField(10), new JButton("OK")};
+        RuleLayoutBuilder<Component> builder = new SwingLayoutBuilder(template).ruleLayout()
+                .add("name", templateChildren[0])
+                .add("field", templateChildren[1]).moveToId(Edge.LEFT, "name", Edge.RIGHT, 5).moveToId(Edge.BASELINE, "name", Edge.BASELINE)
+                .add("ok", templateChildren[2]).moveToId(Edge.TOP, "field", Edge.BOTTOM, 10).moveToId(Edge.RIGHT, "field", Edge.RIGHT)
+                .anchorComponentIdEdgesToParentMovingEdges("ok", true, false, true, false);
+        Path file = Files.createTempFile("layouts", ".rlba");
+        file.toFile().deleteOnExit();
+        RuleLayoutArchive.write(file, Collections.singletonMap("dialog", builder.createBlueprint()));
+
+        RuleLayoutArchive archive = RuleLayoutArchive.open(file);
+        assertEquals(Collections.singleton("dialog"), archive.getNames());
+        Map<String, Component> components = new HashMap<>();
+        components.put("ok", new JButton("OK"));
+        components.put("field", new JTextField(10));
+        components.put("name", new JLabel("Name:"));
+        JPanel panel = new JPanel();
+        archive.getBlueprint("dialog").createLayout(panel, components);
+        assertEquals(components.get("name"), panel.getComponent(0));
+        assertEquals(template.getPreferredSize(), panel.getPreferredSize());
+        for (Dimension size : new Dimension[]{new Dimension(300, 100), new Dimension(400, 150)}) {
+            template.setSize(size);
+            template.doLayout();
+            panel.setSize(size);
+            panel.doLayout();
+            for (int i = 0; i < templateChildren.length; i++) {
+                assertEquals(templateChildren[i].getBounds(), panel.getComponent(i).getBounds());
+            }
+        }
+    }
+
+    @Test
+    public void rendererModeReusesBoundsForSeenSizesOfChildren() {
+        JPanel parent = new JPanel();
+        RuleLayout layout = new RuleLayout(parent).setRendererMode(8);
+        List<Component> children = addRendererRow(parent, layout);
+        LayoutMetrics metrics = layout.getMetrics();
+        long rules = 0;
+        //the third combination was already seen, the last one is new
+        int[] nameWidths = {50, 70, 50, 90};
+        for (int i = 0; i < nameWidths.length; i++) {
+            JPanel expectedParent = new JPanel();
+            RuleLayout expectedLayout = new RuleLayout(expectedParent);
+            List<Component> expectedChildren = addRendererRow(expectedParent, expectedLayout);
+            expectedChildren.get(0).setPreferredSize(new Dimension(nameWidths[i], 20));
+            expectedLayout.layoutContainer(expectedParent);
+
+            children.get(0).setPreferredSize(new Dimension(nameWidths[i], 20));
+            layout.layoutContainer(parent);
+            assertEquals(expectedChildren.get(0).getBounds(), children.get(0).getBounds());
+            assertEquals(expectedChildren.get(1).getBounds(), children.get(1).getBounds());
+            assertEquals(expectedLayout.preferredLayoutSize(expectedParent), layout.preferredLayoutSize(parent));
+            if (i == 2) {
+                assertEquals(rules, metrics.getRulesEvaluated());
+            }
+            rules = metrics.getRulesEvaluated();
+        }
+        assertEquals(2, metrics.getRendererCacheHits());
+        assertEquals(4, metrics.getLayoutPasses());
+        assertEquals(4, metrics.getPreferredPasses());
+    }
+
+    @Test
+    public void virtualLayoutCreatesOnlyVisibleComponents() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            JPanel content = new JPanel();
+            VirtualRuleLayout layout = new VirtualRuleLayout(content).setViewportMargin(0);
+            content.setLayout(layout);
+            JViewport viewport = new JViewport();
+            viewport.setSize(200, 100);
+            viewport.setView(content);
+            LayoutNode[] nodes = new LayoutNode[1000];
+            for (int i = 0; i < nodes.length; i++) {
+                //estimated height is 20, created blocks are 30 high
+                nodes[i] = layout.addComponent(() -> {
+                    CountingBlock block = new CountingBlock();
+                    block.setPreferredSize(new Dimension(100, 30));
+                    block.setMinimumSize(new Dimension(100, 30));
+                    return block;
+                }, 100, 20);
+                layout.addRule(i == 0 ? new Rule(Edge.TOP, content, 0, Edge.TOP, nodes[i]) : new Rule(Edge.BOTTOM, nodes[i - 1], 0, Edge.TOP, nodes[i]));
+            }
+            assertEquals(new Dimension(100, 20000), layout.preferredLayoutSize(content));
+            content.setSize(200, 20000);
+            layout.layoutContainer(content);
+            assertEquals(4, layout.getRealizedComponentCount());
+            assertEquals(4, content.getComponentCount());
+            assertEquals(new Rectangle(0, 90, 100, 30), layout.getComponent(nodes[3]).getBounds());
+            assertEquals(null, layout.getComponent(nodes[4]));
+
+            viewport.setViewPosition(new Point(0, 1000));
+            layout.layoutContainer(content);
+            assertEquals(null, layout.getComponent(nodes[0]));
+            assertEquals(4, content.getComponentCount());
+            for (LayoutNode node : nodes) {
+                Component component = layout.getComponent(node);
+                if (component != null) {
+                    assertEquals(node.getBounds(), component.getBounds());
+                    assertTrue(node.getY() >= 1000 - 30 && node.getY() <= 1100);
+                }
+            }
+            //measured sizes of removed components are kept
+            assertEquals(new Dimension(100, 20000 + 10 * (int) layout.getCreatedComponentCount()), layout.preferredLayoutSize(content));
+            assertTrue(layout.getCreatedComponentCount() < 20);
+        });
+    }
+
+    @Test
+    public void templateFormsHaveStableGroupIdsAndAlignedColumns() {
+        JPanel parent = new JPanel();
+        List<RuleLayoutBuilder.FormTemplate<Component>.Row> rows = new ArrayList<>();
+        new SwingLayoutBuilder(parent).ruleLayout()
+                .templateForm(5, (template, builder) -> {
+                    template.setAlignLabelsLeft(false);
+                    rows.add(template.addRow("Name:", new JTextField(10)));
+                    rows.add(template.addRow("Street and house:", new JTextField(20)));
+                    rows.add(template.addRow("Age:", new JTextField(3)));
+                })
+                .templateForm(5, (template, builder) -> rows.add(template.addRow("Comment:", new JTextField(30))))
+                .moveIdToId("form1Group", Edge.TOP, "formGroup", Edge.BOTTOM, 10)
+                .finish();
+        parent.setSize(parent.getPreferredSize());
+        parent.doLayout();
+
+        Component firstLabel = rows.get(0).getLabel().getComponent();
+        int labelsRight = firstLabel.getX() + firstLabel.getWidth();
+        for (int i = 0; i < 3; i++) {
+            Component label = rows.get(i).getLabel().getComponent();
+            Component field = rows.get(i).getField().getComponent();
+            assertEquals(labelsRight, label.getX() + label.getWidth());
+            assertEquals(labelsRight + 5, field.getX());
+        }
+        Component lastField = rows.get(2).getField().getComponent();
+        Component secondFormField = rows.get(3).getField().getComponent();
+        assertEquals(lastField.getY() + lastField.getHeight() + 10, secondFormField.getY());
+    }
+
+    @Test
+    public void templateFormsHaveNoRuleCycles() {
+        JPanel parent = new JPanel();
+        List<List<Rule>> cycles = new ArrayList<>();
+        new SwingLayoutBuilder(parent).ruleLayout()
+                .ruleCycleHandler(cycles::add)
+                .templateForm(5, (template, builder) -> {
+                    template.addRow("Name:", new JTextField(10));
+                    template.addRow("Age:", new JTextField(3)).setLabelToFieldVerticalAlignment(RuleLayoutBuilder.FormRowAlignment.TOP);
+                })
+                .templateForm(5, (template, builder) -> {
+                    template.setAlignLabelsLeft(false);
+                    template.addRow("Comment:", new JTextField(30));
+                    template.addRow("Tags:", new JTextField(20));
+                })
+                .moveIdToId("form1Group", Edge.TOP, "formGroup", Edge.BOTTOM, 10)
+                .finish();
+        parent.setSize(parent.getPreferredSize());
+        parent.doLayout();
+        assertTrue(cycles.isEmpty());
+    }
+
+    @Test
+    public void ruleForOneRowOfTemplateFormDoesNotMoveOtherRows() {
+        JPanel parent = new JPanel();
+        List<RuleLayoutBuilder.FormTemplate<Component>.Row> rows = new ArrayList<>();
+        RuleLayoutBuilder<Component> builder = new SwingLayoutBuilder(parent).ruleLayout()
+                .templateForm(5, (template, formBuilder) -> {
+                    template.setAlignLabelsLeft(false);
+                    rows.add(template.addRow("Name:", new JTextField(10)));
+                    rows.add(template.addRow("Street and house:", new JTextField(20)));
+                    rows.add(template.addRow("Age:", new JTextField(3)));
+                });
+        builder.move(rows.get(1).getField(), Edge.LEFT, "formLabelsGroup", Edge.RIGHT, 40).finish();
+        parent.setSize(parent.getPreferredSize());
+        parent.doLayout();
+
+        Component secondLabel = rows.get(1).getLabel().getComponent();
+        int labelsRight = secondLabel.getX() + secondLabel.getWidth();
+        assertEquals(labelsRight + 5, rows.get(0).getField().getComponent().getX());
+        assertEquals(labelsRight + 40, rows.get(1).getField().getComponent().getX());
+        assertEquals(labelsRight + 5, rows.get(2).getField().getComponent().getX());
+    }
+
+    @Test
+    public void blueprintLayoutGivesTheSameBoundsAsOwnRules() {
+        JPanel template = new JPanel();
+        RuleLayout templateLayout = new RuleLayout(template);
+        template.setLayout(templateLayout);
+        Component[] templateChildren = addBlueprintChildren(template);
+        LayoutGroup<Component> group = templateLayout.createGroup();
+        group.addComponent(new ComponentWrapper<>(templateChildren[1]));
+        group.addComponent(new ComponentWrapper<>(templateChildren[2]));
+        templateLayout.addRule(new Rule(Edge.RIGHT, templateChildren[0], 5, Edge.LEFT, templateChildren[1]))
+                .addRule(new Rule(Edge.BOTTOM, templateChildren[1], 5, Edge.TOP, templateChildren[2]))
+                .addRule(new Rule(Edge.RIGHT, template, -10, Edge.RIGHT, group))
+                .setPadding(3, 4, 0, 0);
+        RuleLayoutBlueprint blueprint = templateLayout.createBlueprint();
+        template.setSize(300, 200);
+        templateLayout.layoutContainer(template);
+
+        for (int i = 0; i < 2; i++) {
+            JPanel panel = new JPanel();
+            RuleLayout layout = blueprint.createLayout(panel);
+            Component[] children = addBlueprintChildren(panel);
+            assertEquals(templateLayout.preferredLayoutSize(template), layout.preferredLayoutSize(panel));
+            panel.setSize(300, 200);
+            layout.layoutContainer(panel);
+            for (int child = 0; child < children.length; child++) {
+                assertEquals(templateChildren[child].getBounds(), children[child].getBounds());
+            }
+        }
+        assertEquals("child2.LEFT = child1.RIGHT + 5", blueprint.getRules().get(0).toString());
+    }
+
+    private Component[] addBlueprintChildren(JPanel parent) {
+        return new Component[]{addBlock(parent, 40, 20), addBlock(parent, 60, 30), addBlock(parent, 20, 10)};
+    }
+
+    private CountingBlock addBlock(JPanel parent, int width, int height) {
+        CountingBlock block = new CountingBlock();
+        block.setPreferredSize(new Dimension(width, height));
+        block.setMinimumSize(new Dimension(width, height));
+        parent.add(block);
+        return block;
+    }
+
+    private List<Component> addRendererRow(JPanel parent, RuleLayout layout) {
+        parent.setLayout(layout);
+        Component name = addBlock(parent, 50, 20);
+        Component value = addBlock(parent, 30, 20);
+        layout.addRule(new Rule(Edge.RIGHT, name, 5, Edge.LEFT, value));
+        layout.addRule(new Rule(Edge.RIGHT, parent, 0, Edge.RIGHT, value));
+        parent.setSize(200, 20);
+        List<Component> children = new ArrayList<>();
+        children.add(name);
+        children.add(value);
+        return children;
+    }
+
+    private static class CountingLabel extends JLabel {
+        private static final long serialVersionUID = 1L;
+
+        private int baselineQueries;
+
+        CountingLabel(String text) {
+            super(text);
+        }
+
+        @Override
+        public int getBaseline(int width, int height) {
+            baselineQueries++;
+            return super.getBaseline(width, height);
+        }
+    }
+
+    private static class CountingBlock extends JPanel {
+        private static final long serialVersionUID = 1L;
+
+        private int preferredSizeQueries;
+        private int boundsChanges;
+        //size that is changed without property change event, like content of custom component
+        private Dimension contentSize;
+
+        @Override
+        public void setBounds(int x, int y, int width, int height) {
+            boundsChanges++;
+            super.setBounds(x, y, width, height);
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            preferredSizeQueries++;
+            return contentSize != null ? contentSize : super.getPreferredSize();
+        }
+    }
+}